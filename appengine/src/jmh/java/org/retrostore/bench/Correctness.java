@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the operations of a benchmark thread that returned wrong data or failed. JMH reports the
+ * count next to the scores, so a faster cache that is wrong under contention does not go
+ * unnoticed.
+ *
+ * <p>JMH only reports aux counters in {@code Throughput} and {@code AverageTime} mode. The
+ * contention benchmarks also run in {@code SampleTime} mode for the tail latency, but the failures
+ * of the same code only show up in their {@code Throughput} results.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class Correctness {
+  public long failures;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    failures = 0;
+  }
+}
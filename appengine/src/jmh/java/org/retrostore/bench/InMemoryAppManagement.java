@@ -0,0 +1,251 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import org.retrostore.data.app.AppManagement;
+import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.data.app.Author;
+import org.retrostore.data.app.MediaImage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stands in for the datastore-backed app management in benchmarks, keeping everything in memory.
+ *
+ * <p>Every call that would go to the datastore is counted, so that benchmarks of caching layers
+ * can report how many calls get through to the backend.
+ */
+public class InMemoryAppManagement implements AppManagement {
+  private final Map<String, AppStoreItem> mApps = new ConcurrentHashMap<>();
+  private final Map<Long, Author> mAuthors = new ConcurrentHashMap<>();
+  private final Map<Long, MediaImage> mMedia = new ConcurrentHashMap<>();
+  /**
+   * Search results by query. They are computed once per query, so that benchmarks measure what
+   * is done with the results rather than this stand-in for the search service.
+   */
+  private final Map<String, List<String>> mSearchResults = new ConcurrentHashMap<>();
+  private final AtomicLong mNextId = new AtomicLong(1_000_000);
+  private final AtomicLong mCatalogGeneration = new AtomicLong();
+  private final LongAdder mNumBackendCalls = new LongAdder();
+
+  public InMemoryAppManagement(SyntheticCatalog catalog) {
+    for (AppStoreItem app : catalog.apps) {
+      mApps.put(app.id, app);
+    }
+    for (Author author : catalog.authors) {
+      mAuthors.put(author.id, author);
+    }
+  }
+
+  /** The number of calls that would have gone to the datastore or search service so far. */
+  public long getNumBackendCalls() {
+    return mNumBackendCalls.sum();
+  }
+
+  @Override
+  public void addOrChangeApp(AppStoreItem app) {
+    mNumBackendCalls.increment();
+    mApps.put(app.id, app);
+    mCatalogGeneration.incrementAndGet();
+  }
+
+  @Override
+  public void addOrChangeApps(List<AppStoreItem> apps) {
+    mNumBackendCalls.increment();
+    for (AppStoreItem app : apps) {
+      mApps.put(app.id, app);
+    }
+    mCatalogGeneration.incrementAndGet();
+  }
+
+  @Override
+  public void updateMediaFormats(List<AppStoreItem> apps) {
+    addOrChangeApps(apps);
+  }
+
+  @Override
+  public Optional<AppStoreItem> getAppById(String id) {
+    mNumBackendCalls.increment();
+    return Optional.ofNullable(mApps.get(id));
+  }
+
+  @Override
+  public boolean addScreenshot(String appId, String blobKey) {
+    Optional<AppStoreItem> app = getAppById(appId);
+    app.ifPresent(a -> {
+      a.screenshotsBlobKeys.add(blobKey);
+      addOrChangeApp(a);
+    });
+    return app.isPresent();
+  }
+
+  @Override
+  public boolean removeScreenshot(String appId, String blobKey) {
+    Optional<AppStoreItem> app = getAppById(appId);
+    if (!app.isPresent() || !app.get().screenshotsBlobKeys.remove(blobKey)) {
+      return false;
+    }
+    addOrChangeApp(app.get());
+    return true;
+  }
+
+  @Override
+  public long addMediaImage(String appId, String filename, byte[] data) {
+    mNumBackendCalls.increment();
+    MediaImage mediaImage = new MediaImage();
+    mediaImage.id = mNextId.getAndIncrement();
+    mediaImage.appId = appId;
+    mediaImage.filename = filename;
+    mediaImage.data = data;
+    mMedia.put(mediaImage.id, mediaImage);
+    return mediaImage.id;
+  }
+
+  @Override
+  public Map<String, Long> addMediaImages(String appId, Map<String, byte[]> images) {
+    Map<String, Long> ids = new HashMap<>();
+    for (Map.Entry<String, byte[]> image : images.entrySet()) {
+      ids.put(image.getKey(), addMediaImage(appId, image.getKey(), image.getValue()));
+    }
+    return ids;
+  }
+
+  @Override
+  public Map<Long, MediaImage> getMediaImagesForApp(String appId) {
+    mNumBackendCalls.increment();
+    Map<Long, MediaImage> media = new HashMap<>();
+    for (MediaImage mediaImage : mMedia.values()) {
+      if (appId.equals(mediaImage.appId)) {
+        media.put(mediaImage.id, mediaImage);
+      }
+    }
+    return media;
+  }
+
+  @Override
+  public void deleteMediaImage(long mediaId) {
+    mNumBackendCalls.increment();
+    mMedia.remove(mediaId);
+  }
+
+  @Override
+  public void deleteMediaImages(Collection<Long> mediaIds) {
+    mNumBackendCalls.increment();
+    for (long mediaId : mediaIds) {
+      mMedia.remove(mediaId);
+    }
+  }
+
+  @Override
+  public long[] deleteMediaImagesForApp(String appId) {
+    Map<Long, MediaImage> media = getMediaImagesForApp(appId);
+    deleteMediaImages(media.keySet());
+    return media.keySet().stream().mapToLong(Long::longValue).toArray();
+  }
+
+  @Override
+  public List<AppStoreItem> getAllApps() {
+    mNumBackendCalls.increment();
+    return new ArrayList<>(mApps.values());
+  }
+
+  @Override
+  public List<String> searchApps(String query) {
+    mNumBackendCalls.increment();
+    return mSearchResults.computeIfAbsent(query, q -> {
+      String lowerCase = q.toLowerCase(Locale.US);
+      List<String> ids = new ArrayList<>();
+      for (AppStoreItem app : mApps.values()) {
+        if (app.listing.name.toLowerCase(Locale.US).contains(lowerCase)) {
+          ids.add(app.id);
+        }
+      }
+      return ids;
+    });
+  }
+
+  @Override
+  public void removeApp(String id) {
+    mNumBackendCalls.increment();
+    mApps.remove(id);
+    mCatalogGeneration.incrementAndGet();
+  }
+
+  @Override
+  public long ensureAuthorExists(String name) {
+    mNumBackendCalls.increment();
+    for (Author author : mAuthors.values()) {
+      if (author.name.equals(name)) {
+        return author.id;
+      }
+    }
+    Author author = new Author(name);
+    author.id = mNextId.getAndIncrement();
+    mAuthors.put(author.id, author);
+    mCatalogGeneration.incrementAndGet();
+    return author.id;
+  }
+
+  @Override
+  public Map<String, Long> ensureAuthorsExist(Set<String> names) {
+    Map<String, Long> ids = new HashMap<>();
+    for (String name : names) {
+      ids.put(name, ensureAuthorExists(name));
+    }
+    return ids;
+  }
+
+  @Override
+  public List<Author> listAuthors() {
+    mNumBackendCalls.increment();
+    return new ArrayList<>(mAuthors.values());
+  }
+
+  @Override
+  public Optional<Author> getAuthorById(long id) {
+    mNumBackendCalls.increment();
+    return Optional.ofNullable(mAuthors.get(id));
+  }
+
+  @Override
+  public Map<Long, Author> getAuthorsById(Collection<Long> ids) {
+    mNumBackendCalls.increment();
+    Map<Long, Author> authors = new HashMap<>();
+    for (long id : ids) {
+      Author author = mAuthors.get(id);
+      if (author != null) {
+        authors.put(id, author);
+      }
+    }
+    return authors;
+  }
+
+  @Override
+  public long getCatalogGeneration() {
+    return mCatalogGeneration.get();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import org.retrostore.resources.ImageServiceWrapper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stands in for the Images service in benchmarks. Serving URLs are made up from the key, and the
+ * number of calls is counted so that benchmarks can check how often the service would be hit.
+ */
+public class InMemoryImageService implements ImageServiceWrapper {
+  private final LongAdder mNumCalls = new LongAdder();
+
+  @Override
+  public Optional<String> getServingUrl(String blobKey, int imageSize) {
+    mNumCalls.increment();
+    return Optional.of(servingUrl(blobKey, imageSize));
+  }
+
+  @Override
+  public Optional<String> getServingUrl(String blobKey) {
+    return getServingUrl(blobKey, DEFAULT_SCREENSHOT_SIZE);
+  }
+
+  @Override
+  public Map<String, String> getServingUrls(Collection<String> blobKeys, int imageSize) {
+    Map<String, String> urls = new HashMap<>();
+    for (String blobKey : blobKeys) {
+      getServingUrl(blobKey, imageSize).ifPresent(url -> urls.put(blobKey, url));
+    }
+    return urls;
+  }
+
+  /** The number of serving URLs that were requested so far. */
+  public long getNumCalls() {
+    return mNumCalls.sum();
+  }
+
+  /** The URL this service returns for the given image, so benchmarks can check results. */
+  public static String servingUrl(String blobKey, int imageSize) {
+    return String.format("https://lh3.example.com/%s=s%d", blobKey, imageSize);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import org.retrostore.resources.MemcacheWrapper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stands in for memcache in benchmarks. Items never expire and are not copied, unlike with the
+ * real service, so only the cost of the caches in front of it is measured.
+ */
+public class InMemoryMemcache implements MemcacheWrapper {
+  private final Map<String, Object> mItems = new ConcurrentHashMap<>();
+  private final LongAdder mNumCalls = new LongAdder();
+
+  @Override
+  public Optional<byte[]> get(String key) {
+    return getObject(key).filter(item -> item instanceof byte[]).map(item -> (byte[]) item);
+  }
+
+  @Override
+  public Optional<String> getString(String key) {
+    return getObject(key).filter(item -> item instanceof String).map(item -> (String) item);
+  }
+
+  @Override
+  public Optional<Object> getObject(String key) {
+    mNumCalls.increment();
+    return Optional.ofNullable(mItems.get(key));
+  }
+
+  @Override
+  public Map<String, Object> getAll(Collection<String> keys) {
+    mNumCalls.increment();
+    Map<String, Object> items = new HashMap<>();
+    for (String key : keys) {
+      Object item = mItems.get(key);
+      if (item != null) {
+        items.put(key, item);
+      }
+    }
+    return items;
+  }
+
+  @Override
+  public void put(String key, Object data) {
+    mNumCalls.increment();
+    if (data != null) {
+      mItems.put(key, data);
+    }
+  }
+
+  @Override
+  public void putAll(Map<String, ?> items) {
+    mNumCalls.increment();
+    for (Map.Entry<String, ?> item : items.entrySet()) {
+      if (item.getValue() != null) {
+        mItems.put(item.getKey(), item.getValue());
+      }
+    }
+  }
+
+  @Override
+  public Optional<Long> increment(String key, long delta, long initialValue) {
+    mNumCalls.increment();
+    return Optional.of((Long) mItems.compute(
+        key, (k, value) -> (value instanceof Long ? (Long) value : initialValue) + delta));
+  }
+
+  /** The number of calls that would have gone to memcache so far. */
+  public long getNumCalls() {
+    return mNumCalls.sum();
+  }
+}
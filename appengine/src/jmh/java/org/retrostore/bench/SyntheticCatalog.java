@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.data.app.Author;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A catalog of made-up apps and authors for benchmarks. The same seed always creates the same
+ * catalog, so runs can be compared.
+ *
+ * <p>Apps look roughly like the real ones: names made of a few words, a description of a few
+ * hundred characters, a handful of screenshots and media images of the usual types.
+ */
+public class SyntheticCatalog {
+  private static final String[] WORDS = {
+      "Adventure", "Alien", "Attack", "Basic", "Battle", "Castle", "Chess", "Cosmic", "Dungeon",
+      "Editor", "Empire", "Escape", "Galaxy", "Ghost", "Invaders", "Island", "Java", "Journey",
+      "Kingdom", "Labyrinth", "Lunar", "Maze", "Meteor", "Monster", "Mystery", "Ninja", "Orbit",
+      "Pirate", "Planet", "Puzzle", "Quest", "Raider", "Robot", "Scott", "Space", "Star", "Tower",
+      "Trek", "Utility", "Voyage", "Warrior", "Wizard", "Word", "Xenon", "Zork"};
+  private static final int APPS_PER_AUTHOR = 10;
+
+  public final List<AppStoreItem> apps;
+  public final List<Author> authors;
+
+  private SyntheticCatalog(List<AppStoreItem> apps, List<Author> authors) {
+    this.apps = apps;
+    this.authors = authors;
+  }
+
+  /**
+   * Creates a catalog with the given number of apps.
+   *
+   * @param numApps the number of apps to create.
+   * @param seed    the seed for all random choices.
+   */
+  public static SyntheticCatalog create(int numApps, long seed) {
+    Random random = new Random(seed);
+    List<Author> authors = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, numApps / APPS_PER_AUTHOR); ++i) {
+      Author author = new Author(words(random, 2));
+      author.id = (long) i + 1;
+      authors.add(author);
+    }
+
+    List<AppStoreItem> apps = new ArrayList<>(numApps);
+    long nextMediaId = 1;
+    AppStoreItem.Model[] models = AppStoreItem.Model.values();
+    for (int i = 0; i < numApps; ++i) {
+      AppStoreItem app = new AppStoreItem(String.format("app-%08d", i));
+      app.listing.name = words(random, 1 + random.nextInt(3));
+      app.listing.versionString = String.format("%d.%d", 1 + random.nextInt(3), random.nextInt(10));
+      app.listing.description = sentence(random, 20 + random.nextInt(40));
+      app.listing.authorId = authors.get(random.nextInt(authors.size())).id;
+      app.listing.releaseYear = 1977 + random.nextInt(15);
+      app.listing.firstPublishTime = 1_500_000_000_000L + random.nextInt(1_000_000_000);
+      app.listing.lastUpdateTime = app.listing.firstPublishTime;
+      app.listing.categories.add(AppStoreItem.ListingCategory.GAME);
+      app.trs80Extension.model = models[random.nextInt(models.length)];
+
+      Set<String> formats = new HashSet<>();
+      int numDisks = random.nextInt(10) < 7 ? 1 + random.nextInt(2) : 0;
+      for (int disk = 0; disk < numDisks; ++disk) {
+        app.trs80Extension.disk[disk] = nextMediaId++;
+        formats.add(random.nextBoolean() ? "dmk" : "dsk");
+      }
+      if (random.nextInt(10) < 2) {
+        app.trs80Extension.command = nextMediaId++;
+        formats.add("cmd");
+      }
+      if (random.nextInt(10) < 1) {
+        app.trs80Extension.cassette = nextMediaId++;
+        formats.add("cas");
+      }
+      app.mediaFormats = formats;
+
+      int numScreenshots = 1 + random.nextInt(4);
+      for (int s = 0; s < numScreenshots; ++s) {
+        // Newer screenshots are in Cloud Storage, older ones in the Blobstore.
+        app.screenshotsBlobKeys.add(random.nextBoolean()
+            ? String.format("/gs/retrostore/screenshots/%s/%d", app.id, s)
+            : String.format("AMIfv9%s%d", Long.toHexString(random.nextLong()), s));
+      }
+      apps.add(app);
+    }
+    return new SyntheticCatalog(apps, authors);
+  }
+
+  private static String words(Random random, int num) {
+    StringBuilder words = new StringBuilder();
+    for (int i = 0; i < num; ++i) {
+      if (i > 0) {
+        words.append(' ');
+      }
+      words.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return words.toString();
+  }
+
+  private static String sentence(Random random, int numWords) {
+    return words(random, numWords).toLowerCase() + ".";
+  }
+}
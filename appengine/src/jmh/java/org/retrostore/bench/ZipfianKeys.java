@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.bench;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks keys following Zipf's law, where the key of rank k is picked with a probability
+ * proportional to 1 / k^skew. A few keys are therefore hot and most of them are cold, which is
+ * how apps, screenshots and resources are requested.
+ */
+public class ZipfianKeys {
+  /** The skew used by YCSB. With 10k keys, the hottest 1% get about half of the lookups. */
+  public static final double DEFAULT_SKEW = 0.99;
+
+  /** The probability of picking a key of at most the rank of the index. */
+  private final double[] mCumulative;
+
+  public ZipfianKeys(int numKeys, double skew) {
+    Preconditions.checkArgument(numKeys > 0, "No keys to pick from.");
+    mCumulative = new double[numKeys];
+    double sum = 0;
+    for (int i = 0; i < numKeys; ++i) {
+      sum += 1 / Math.pow(i + 1, skew);
+      mCumulative[i] = sum;
+    }
+    for (int i = 0; i < numKeys; ++i) {
+      mCumulative[i] /= sum;
+    }
+  }
+
+  /** The number of keys to pick from. */
+  public int size() {
+    return mCumulative.length;
+  }
+
+  /** Returns the rank of the next key, 0 being the hottest. Safe to call from any thread. */
+  public int next() {
+    int index = Arrays.binarySearch(mCumulative, ThreadLocalRandom.current().nextDouble());
+    return Math.min(index >= 0 ? index : -index - 1, mCumulative.length - 1);
+  }
+}
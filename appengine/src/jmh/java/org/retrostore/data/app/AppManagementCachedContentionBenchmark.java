@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.retrostore.bench.Correctness;
+import org.retrostore.bench.InMemoryAppManagement;
+import org.retrostore.bench.SyntheticCatalog;
+import org.retrostore.bench.ZipfianKeys;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks the app and author cache with concurrent reads and writes of Zipfian distributed
+ * apps.
+ *
+ * <p>Reads look up an app and its author, as the app details do. Writes either save a new
+ * version of an app, which the writer then has to be able to read back, or make sure its author
+ * exists, as saving an app from the admin UI does. Each app is only ever saved by the same
+ * thread, otherwise the last of two concurrent writers would win in the backend and the other
+ * one would rightly read back a version it did not write. Run it with different thread counts
+ * using
+ * {@code ./gradlew :appengine:jmhContention}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppManagementCachedContentionBenchmark {
+  private static final int NUM_APPS = 10_000;
+  private static final long SEED = 1977;
+
+  /** The percentage of operations that change apps or authors. */
+  @Param({"0", "1", "10"})
+  int writePercent;
+
+  private AppManagement mAppManagement;
+  private ZipfianKeys mKeys;
+  private AppStoreItem[] mApps;
+  /** The name of the author of each app. */
+  private String[] mAuthorNames;
+  /** Increases with every write, so writers can tell older versions of an app from newer ones. */
+  private final AtomicLong mVersion = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticCatalog catalog = SyntheticCatalog.create(NUM_APPS, SEED);
+    mAppManagement = new AppManagementCached(new InMemoryAppManagement(catalog));
+    mKeys = new ZipfianKeys(NUM_APPS, ZipfianKeys.DEFAULT_SKEW);
+    mApps = catalog.apps.toArray(new AppStoreItem[0]);
+    mAuthorNames = new String[NUM_APPS];
+    for (int i = 0; i < NUM_APPS; ++i) {
+      // Author IDs are assigned in order, starting at 1.
+      mAuthorNames[i] = catalog.authors.get((int) mApps[i].listing.authorId - 1).name;
+    }
+  }
+
+  /** Which apps a benchmark thread saves. */
+  @State(Scope.Thread)
+  public static class Writer {
+    private int mIndex;
+    private int mCount;
+
+    @Setup(Level.Trial)
+    public void setUp(ThreadParams params) {
+      mIndex = params.getThreadIndex();
+      mCount = params.getThreadCount();
+    }
+
+    /** The rank next to the given one that only this thread saves. */
+    int own(int rank) {
+      int owned = rank - rank % mCount + mIndex;
+      return owned < NUM_APPS ? owned : owned - mCount;
+    }
+  }
+
+  @Benchmark
+  public Object readWrite(Correctness correctness, Writer writer) {
+    int rank = mKeys.next();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    try {
+      if (random.nextInt(100) >= writePercent) {
+        return read(rank, correctness);
+      }
+      return random.nextBoolean()
+          ? writeApp(writer.own(rank), correctness)
+          : writeAuthor(rank, correctness);
+    } catch (RuntimeException ex) {
+      correctness.failures++;
+      return null;
+    }
+  }
+
+  private Object read(int rank, Correctness correctness) {
+    Optional<AppStoreItem> app = mAppManagement.getAppById(mApps[rank].id);
+    if (!app.isPresent() || !mApps[rank].id.equals(app.get().id)) {
+      correctness.failures++;
+      return app;
+    }
+    Optional<Author> author = mAppManagement.getAuthorById(app.get().listing.authorId);
+    if (!author.isPresent() || !mAuthorNames[rank].equals(author.get().name)) {
+      correctness.failures++;
+    }
+    return author;
+  }
+
+  private Object writeApp(int rank, Correctness correctness) {
+    AppStoreItem app = copy(mApps[rank]);
+    app.listing.lastUpdateTime = mVersion.incrementAndGet();
+    mAppManagement.addOrChangeApp(app);
+
+    // No other thread saves this app, so a concurrent read must not have cached an older version.
+    Optional<AppStoreItem> saved = mAppManagement.getAppById(app.id);
+    if (!saved.isPresent() || saved.get().listing.lastUpdateTime != app.listing.lastUpdateTime) {
+      correctness.failures++;
+    }
+    return saved;
+  }
+
+  private Object writeAuthor(int rank, Correctness correctness) {
+    long authorId = mAppManagement.ensureAuthorExists(mAuthorNames[rank]);
+    if (authorId <= 0) {
+      correctness.failures++;
+    }
+    return authorId;
+  }
+
+  /** A new version of the app, as it would come out of the admin UI. */
+  private static AppStoreItem copy(AppStoreItem app) {
+    AppStoreItem copy = new AppStoreItem(app.id);
+    copy.listing.name = app.listing.name;
+    copy.listing.versionString = app.listing.versionString;
+    copy.listing.description = app.listing.description;
+    copy.listing.categories = app.listing.categories;
+    copy.listing.firstPublishTime = app.listing.firstPublishTime;
+    copy.listing.authorId = app.listing.authorId;
+    copy.listing.releaseYear = app.listing.releaseYear;
+    copy.screenshotsBlobKeys = app.screenshotsBlobKeys;
+    copy.trs80Extension = app.trs80Extension;
+    copy.mediaFormats = app.mediaFormats;
+    return copy;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.retrostore.bench.Correctness;
+import org.retrostore.bench.InMemoryMemcache;
+import org.retrostore.bench.ZipfianKeys;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the resource cache with concurrent lookups of Zipfian distributed resources.
+ *
+ * <p>Every iteration starts with resources that are not cached yet, so that lookups of hot
+ * resources run concurrently with the first level being filled with the rest. Lookups of missing
+ * resources are never cached and go through memcache and the fallback every time. Run it with
+ * different thread counts using {@code ./gradlew :appengine:jmhContention}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TwoLayerCacheContentionBenchmark {
+  private static final int NUM_RESOURCES = 10_000;
+
+  /** The percentage of lookups for resources that do not exist. */
+  @Param({"0", "10", "50"})
+  int missPercent;
+
+  private Cache mCache;
+  private ZipfianKeys mKeys;
+  private String[] mMissingNames;
+  private String[] mNames;
+  private byte[][] mContents;
+  private int mGeneration;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mCache = new TwoLayerCacheImpl(new InMemoryMemcache());
+    mKeys = new ZipfianKeys(NUM_RESOURCES, ZipfianKeys.DEFAULT_SKEW);
+    mMissingNames = new String[NUM_RESOURCES];
+    for (int i = 0; i < NUM_RESOURCES; ++i) {
+      mMissingNames[i] = String.format("missing/resource-%05d", i);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void createResources() {
+    mGeneration++;
+    mNames = new String[NUM_RESOURCES];
+    mContents = new byte[NUM_RESOURCES][];
+    for (int i = 0; i < NUM_RESOURCES; ++i) {
+      mNames[i] = String.format("generation-%d/resource-%05d", mGeneration, i);
+      mContents[i] = mNames[i].getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  @Benchmark
+  public Optional<byte[]> get(Correctness correctness) {
+    int rank = mKeys.next();
+    try {
+      if (ThreadLocalRandom.current().nextInt(100) < missPercent) {
+        Optional<byte[]> data = mCache.get(mMissingNames[rank], () -> new byte[0]);
+        if (!data.isPresent() || data.get().length != 0) {
+          correctness.failures++;
+        }
+        return data;
+      }
+      byte[] expected = mContents[rank];
+      Optional<byte[]> data = mCache.get(mNames[rank], () -> expected);
+      if (!data.isPresent() || !Arrays.equals(expected, data.get())) {
+        correctness.failures++;
+      }
+      return data;
+    } catch (RuntimeException ex) {
+      correctness.failures++;
+      return Optional.empty();
+    }
+  }
+}
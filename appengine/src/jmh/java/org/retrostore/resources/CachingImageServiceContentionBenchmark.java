@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.resources;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.retrostore.bench.Correctness;
+import org.retrostore.bench.InMemoryImageService;
+import org.retrostore.bench.InMemoryMemcache;
+import org.retrostore.bench.ZipfianKeys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the screenshot URL cache with concurrent lookups of Zipfian distributed screenshots,
+ * one at a time as for a single app and in batches as for a page of apps.
+ *
+ * <p>Every iteration starts with a new cache in front of the same memcache, like a new instance
+ * does, and with screenshots that are in neither of them, so that lookups of hot screenshots run
+ * concurrently with both being filled with the rest. Run it with different thread counts using
+ * {@code ./gradlew :appengine:jmhContention}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CachingImageServiceContentionBenchmark {
+  private static final int NUM_SCREENSHOTS = 10_000;
+  private static final int IMAGE_SIZE = 800;
+
+  /** The number of screenshots looked up together. A single one is looked up on its own. */
+  @Param({"1", "4", "50"})
+  int batchSize;
+
+  private final InMemoryMemcache mMemcache = new InMemoryMemcache();
+  private final InMemoryImageService mImageService = new InMemoryImageService();
+  private ImageServiceWrapper mCache;
+  private ZipfianKeys mKeys;
+  private String[] mBlobKeys;
+  private int mGeneration;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    mKeys = new ZipfianKeys(NUM_SCREENSHOTS, ZipfianKeys.DEFAULT_SKEW);
+  }
+
+  @Setup(Level.Iteration)
+  public void createScreenshots() {
+    mGeneration++;
+    mCache = new CachingImageService(mImageService, mMemcache);
+    mBlobKeys = new String[NUM_SCREENSHOTS];
+    for (int i = 0; i < NUM_SCREENSHOTS; ++i) {
+      mBlobKeys[i] = String.format("/gs/retrostore/screenshots/%d/%05d", mGeneration, i);
+    }
+  }
+
+  @Benchmark
+  public Object getServingUrls(Correctness correctness) {
+    try {
+      if (batchSize == 1) {
+        String blobKey = mBlobKeys[mKeys.next()];
+        Optional<String> url = mCache.getServingUrl(blobKey, IMAGE_SIZE);
+        if (!url.isPresent() ||
+            !url.get().equals(InMemoryImageService.servingUrl(blobKey, IMAGE_SIZE))) {
+          correctness.failures++;
+        }
+        return url;
+      }
+      List<String> blobKeys = new ArrayList<>(batchSize);
+      for (int i = 0; i < batchSize; ++i) {
+        blobKeys.add(mBlobKeys[mKeys.next()]);
+      }
+      Map<String, String> urls = mCache.getServingUrls(blobKeys, IMAGE_SIZE);
+      for (String blobKey : blobKeys) {
+        if (!InMemoryImageService.servingUrl(blobKey, IMAGE_SIZE).equals(urls.get(blobKey))) {
+          correctness.failures++;
+        }
+      }
+      return urls;
+    } catch (RuntimeException ex) {
+      correctness.failures++;
+      return null;
+    }
+  }
+}
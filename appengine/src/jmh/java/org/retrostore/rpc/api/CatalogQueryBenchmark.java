@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.rpc.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.retrostore.bench.InMemoryAppManagement;
+import org.retrostore.bench.InMemoryImageService;
+import org.retrostore.bench.SyntheticCatalog;
+import org.retrostore.client.common.proto.ApiResponseApps;
+import org.retrostore.client.common.proto.ApiResponseAppsNano;
+import org.retrostore.client.common.proto.App;
+import org.retrostore.client.common.proto.ListAppsParams;
+import org.retrostore.client.common.proto.MediaType;
+import org.retrostore.data.app.AppStoreItem;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the path that serves the app list, from the whole catalog down to the response.
+ *
+ * <p>The catalog is held in memory, so the numbers are what the list calls cost on top of the
+ * cached catalog. Run with {@code ./gradlew :appengine:jmh}, which also reports the allocation
+ * rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogQueryBenchmark {
+  private static final long SEED = 1977;
+  private static final int PAGE_SIZE = 50;
+
+  @Param({"1000", "10000", "100000"})
+  int catalogSize;
+
+  private ListAppsApiCall mListApps;
+  private ListAppsNanoApiCall mListAppsNano;
+  private ApiHelper mApiHelper;
+  private List<AppStoreItem> mAllApps;
+  private List<AppStoreItem> mPage;
+
+  private final ListAppsParams mFirstPage =
+      ListAppsParams.newBuilder().setStart(0).setNum(PAGE_SIZE).build();
+  private final ListAppsParams mDisksOnly = ListAppsParams.newBuilder()
+      .setStart(0)
+      .setNum(PAGE_SIZE)
+      .setTrs80(ListAppsParams.Trs80Params.newBuilder().addMediaTypes(MediaType.DISK))
+      .build();
+  private final ListAppsParams mSearch =
+      ListAppsParams.newBuilder().setStart(0).setNum(PAGE_SIZE).setQuery("space").build();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticCatalog catalog = SyntheticCatalog.create(catalogSize, SEED);
+    InMemoryAppManagement appManagement = new InMemoryAppManagement(catalog);
+    InMemoryImageService imageService = new InMemoryImageService();
+    mListApps = new ListAppsApiCall(appManagement, imageService);
+    mListAppsNano = new ListAppsNanoApiCall(appManagement, imageService);
+    mApiHelper = new ApiHelper(appManagement, imageService);
+    mAllApps = appManagement.getAllApps();
+    mPage = mAllApps.subList(0, Math.min(PAGE_SIZE, mAllApps.size()));
+  }
+
+  @Benchmark
+  public List<AppStoreItem> listInternal() throws Exception {
+    return mListApps.listInternal(mFirstPage);
+  }
+
+  @Benchmark
+  public List<AppStoreItem> listInternalDisksOnly() throws Exception {
+    return mListApps.listInternal(mDisksOnly);
+  }
+
+  @Benchmark
+  public List<AppStoreItem> listInternalSearch() throws Exception {
+    return mListApps.listInternal(mSearch);
+  }
+
+  @Benchmark
+  public List<AppStoreItem> filterAppsDisksOnly() {
+    return mListApps.filterApps(mAllApps, mDisksOnly);
+  }
+
+  @Benchmark
+  public List<App.Builder> convertPage() {
+    return mApiHelper.convert(mPage, Optional.empty());
+  }
+
+  @Benchmark
+  public ApiResponseApps listApps() {
+    return mListApps.callInternal(mFirstPage, Optional.empty());
+  }
+
+  @Benchmark
+  public ApiResponseAppsNano listAppsNano() {
+    return mListAppsNano.callInternal(mFirstPage);
+  }
+}
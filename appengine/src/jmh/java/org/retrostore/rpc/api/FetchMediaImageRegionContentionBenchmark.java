@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.rpc.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.retrostore.bench.Correctness;
+import org.retrostore.bench.InMemoryAppManagement;
+import org.retrostore.bench.SyntheticCatalog;
+import org.retrostore.bench.ZipfianKeys;
+import org.retrostore.client.common.proto.FetchMediaImageRegionParams;
+import org.retrostore.data.app.AppStoreItem;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the media image cache of the region call with concurrent reads of regions of
+ * Zipfian distributed disk images, as emulators do when they read a disk sector by sector.
+ *
+ * <p>The cache is static and only ever added to, so there are no writes other than images being
+ * cached on their first read. Run it with different thread counts using
+ * {@code ./gradlew :appengine:jmhContention}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchMediaImageRegionContentionBenchmark {
+  private static final int NUM_APPS = 2_000;
+  private static final long SEED = 1977;
+  private static final String FILENAME = "disk.dmk";
+  private static final int IMAGE_SIZE = 8 * 1024;
+  /** The size of a sector, which is what emulators read at a time. */
+  private static final int REGION_LENGTH = 256;
+
+  private FetchMediaImageRegionApiCall mRegionCall;
+  private ZipfianKeys mKeys;
+  private String[] mTokens;
+  private byte[][] mImages;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    SyntheticCatalog catalog = SyntheticCatalog.create(NUM_APPS, SEED);
+    InMemoryAppManagement appManagement = new InMemoryAppManagement(catalog);
+    mTokens = new String[NUM_APPS];
+    mImages = new byte[NUM_APPS][IMAGE_SIZE];
+    for (int i = 0; i < NUM_APPS; ++i) {
+      for (int j = 0; j < IMAGE_SIZE; ++j) {
+        mImages[i][j] = (byte) (i * 31 + j);
+      }
+      // Every app gets a single disk with its own content.
+      AppStoreItem app = catalog.apps.get(i);
+      app.trs80Extension.disk = new long[4];
+      app.trs80Extension.disk[0] = appManagement.addMediaImage(app.id, FILENAME, mImages[i]);
+      app.trs80Extension.cassette = 0;
+      app.trs80Extension.command = 0;
+      app.trs80Extension.basic = 0;
+      mTokens[i] = app.id + "/" + FILENAME;
+    }
+    mRegionCall = new FetchMediaImageRegionApiCall(appManagement);
+    mKeys = new ZipfianKeys(NUM_APPS, ZipfianKeys.DEFAULT_SKEW);
+  }
+
+  @Benchmark
+  public byte[] fetchRegion(Correctness correctness) {
+    int rank = mKeys.next();
+    int start = ThreadLocalRandom.current().nextInt(IMAGE_SIZE / REGION_LENGTH) * REGION_LENGTH;
+    FetchMediaImageRegionParams params = FetchMediaImageRegionParams.newBuilder()
+        .setToken(mTokens[rank])
+        .setStart(start)
+        .setLength(REGION_LENGTH)
+        .build();
+    try {
+      byte[] region = mRegionCall.callInternal(params);
+      if (!isRegion(region, mImages[rank], start)) {
+        correctness.failures++;
+      }
+      return region;
+    } catch (RuntimeException ex) {
+      correctness.failures++;
+      return null;
+    }
+  }
+
+  private static boolean isRegion(byte[] region, byte[] image, int start) {
+    if (region.length != REGION_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < REGION_LENGTH; ++i) {
+      if (region[i] != image[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
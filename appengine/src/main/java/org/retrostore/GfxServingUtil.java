@@ -1,14 +1,13 @@
 package org.retrostore;
 
-import com.google.common.io.ByteStreams;
+import org.retrostore.util.FileStreaming;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Class that deals with finding ans erving graphics resources.
@@ -19,15 +18,16 @@ class GfxServingUtil {
     if (requestUri == null || !req.getRequestURI().startsWith("/gfx")) {
       return false;
     }
-    try {
-      InputStream fileStream = new FileInputStream(new File("WEB-INF" + requestUri));
-      if (requestUri.toLowerCase().endsWith(".png")) {
-        resp.setContentType("image/png");
-      }
-      ByteStreams.copy(fileStream, resp.getOutputStream());
-    } catch (FileNotFoundException ex) {
+    Path file = Paths.get("WEB-INF" + requestUri);
+    if (!Files.isRegularFile(file)) {
       resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+      return true;
     }
+    if (requestUri.toLowerCase().endsWith(".png")) {
+      resp.setContentType("image/png");
+    }
+    resp.setContentLengthLong(Files.size(file));
+    FileStreaming.transfer(file, resp.getOutputStream());
     return true;
   }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 
 package org.retrostore;
 
+import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
 import com.google.appengine.api.images.ImagesService;
@@ -24,6 +25,8 @@ import com.google.appengine.api.memcache.MemcacheServiceFactory;
 import com.google.appengine.api.search.SearchService;
 import com.google.appengine.api.search.SearchServiceFactory;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.appengine.tools.cloudstorage.GcsServiceFactory;
+import com.google.appengine.tools.cloudstorage.RetryParams;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import org.retrostore.data.BlobstoreWrapper;
@@ -35,11 +38,15 @@ import org.retrostore.data.app.AppSearch;
 import org.retrostore.data.app.AppSearchImpl;
 import org.retrostore.data.card.FirmwareManagement;
 import org.retrostore.data.card.FirmwareManagementImpl;
+import org.retrostore.data.user.MemoizingUserService;
 import org.retrostore.data.user.UserManagement;
 import org.retrostore.data.user.UserService;
 import org.retrostore.data.user.UserServiceImpl;
 import org.retrostore.data.xray.StateManagement;
 import org.retrostore.data.xray.StateManagementImpl;
+import org.retrostore.metrics.Metrics;
+import org.retrostore.metrics.Trace;
+import org.retrostore.request.AsyncDispatcher;
 import org.retrostore.request.Cache;
 import org.retrostore.request.DownloadAppRequest;
 import org.retrostore.request.EnsureAdminExistsRequest;
@@ -47,6 +54,7 @@ import org.retrostore.request.FaviconRequest;
 import org.retrostore.request.ForwardingRequest;
 import org.retrostore.request.ImportRpkRequest;
 import org.retrostore.request.LoginRequest;
+import org.retrostore.request.MetricsRequest;
 import org.retrostore.request.PingRequest;
 import org.retrostore.request.PolymerRequest;
 import org.retrostore.request.PublicSiteRequest;
@@ -58,6 +66,7 @@ import org.retrostore.request.RequestDataImpl;
 import org.retrostore.request.Responder;
 import org.retrostore.request.RetroCardRequests;
 import org.retrostore.request.ScreenshotRequest;
+import org.retrostore.request.ScreenshotServeRequest;
 import org.retrostore.request.StaticFileRequest;
 import org.retrostore.request.TwoLayerCacheImpl;
 import org.retrostore.request.UpdateDataRequest;
@@ -71,6 +80,7 @@ import org.retrostore.resources.MemcacheWrapper;
 import org.retrostore.resources.MemcacheWrapperImpl;
 import org.retrostore.resources.PolymerDebugLoader;
 import org.retrostore.resources.ResourceLoader;
+import org.retrostore.rpc.internal.ApiRateLimiter;
 import org.retrostore.rpc.internal.ApiRequest;
 import org.retrostore.rpc.internal.PostUploadRequest;
 import org.retrostore.rpc.internal.RpcCallRequest;
@@ -79,6 +89,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 /** Enables adding/removing of users. */
@@ -93,7 +104,10 @@ public class MainServlet extends RetroStoreServlet {
   static class Modules {
     com.google.appengine.api.users.UserService userService = UserServiceFactory.getUserService();
     BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
-    BlobstoreWrapper blobstoreWrapper = new BlobstoreWrapperImpl(blobstoreService);
+    BlobstoreWrapper blobstoreWrapper = new BlobstoreWrapperImpl(
+        blobstoreService,
+        GcsServiceFactory.createGcsService(RetryParams.getDefaultInstance()),
+        AppIdentityServiceFactory.getAppIdentityService().getDefaultGcsBucketName());
     UserManagement userManagement = new UserManagement(userService);
     SearchService searchService = SearchServiceFactory.getSearchService();
     AppSearch appSearch = new AppSearchImpl(searchService);
@@ -110,6 +124,8 @@ public class MainServlet extends RetroStoreServlet {
     MailService mailService = new MailServiceImpl();
     FirmwareManagement.Creator firmwareManagementCreator =
         new FirmwareManagementImpl.FirmwareManagementCreator();
+    ApiRateLimiter apiRateLimiter = ApiRateLimiter.fromSystemProperties(memcache);
+    AsyncDispatcher asyncDispatcher = AsyncDispatcher.fromSystemProperties();
   }
 
   private static List<Request> createRequests(Modules m) {
@@ -122,6 +138,7 @@ public class MainServlet extends RetroStoreServlet {
             m.defaultResourceLoader, m.appManagement, m.imgServWrapper, m.mailService),
         new DownloadAppRequest(m.appManagement),
         new RetroCardRequests.ApiRequest(m.firmwareManagementCreator),
+        new ScreenshotServeRequest(m.blobstoreWrapper, m.appManagement, m.imgServWrapper),
 
         // Every request above this line does not require a logged in user.
         new LoginRequest(),
@@ -131,11 +148,12 @@ public class MainServlet extends RetroStoreServlet {
         new ImportRpkRequest(
             (getResourceLoader(m)), m.appManagement, m.userManagement, m.blobstoreWrapper),
         new RpcCallRequest(m.userManagement, m.appManagement, m.imgServWrapper),
-        new ScreenshotRequest(m.blobstoreWrapper, m.appManagement, m.imgServWrapper),
+        new ScreenshotRequest(m.blobstoreWrapper, m.appManagement),
         new PolymerRequest(getResourceLoader(m)),
         new StaticFileRequest(m.defaultResourceLoader),
         new PostUploadRequest(m.appManagement),
-        new ApiRequest(m.appManagement, m.imgServWrapper, m.stateManagement),
+        new MetricsRequest(),
+        new ApiRequest(m.appManagement, m.imgServWrapper, m.stateManagement, m.apiRateLimiter),
         new UpdateDataRequest(m.appSearch, m.appManagement)
         // Note: Add more request servers here. Keep in mind that this is in priority-order.
         );
@@ -174,12 +192,52 @@ public class MainServlet extends RetroStoreServlet {
     }
 
     RequestData requestData = RequestDataImpl.create(req, type, sModules.blobstoreService);
-    Responder responder = new Responder(resp, sModules.blobstoreService);
+    // Request servers check the account type independently, only resolve it once per request.
+    UserService userService = new MemoizingUserService(sModules.accountTypeProvider);
+
+    // All servers still get to see the request in order, only on another thread.
+    Optional<Long> deadlineMillis = getAsyncDeadlineMillis(requestData);
+    if (deadlineMillis.isPresent() && sModules.asyncDispatcher.dispatch(req, resp,
+        deadlineMillis.get(), response -> serve(requestData, userService, response))) {
+      return;
+    }
+    serve(requestData, userService, resp);
+  }
+
+  private static Optional<Long> getAsyncDeadlineMillis(RequestData requestData) {
     for (Request server : sRequestServers) {
-      if (server.serveUrl(requestData, responder, sModules.accountTypeProvider)) {
-        return;
+      Optional<Long> deadlineMillis = server.getAsyncDeadlineMillis(requestData);
+      if (deadlineMillis.isPresent()) {
+        return deadlineMillis;
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static void serve(RequestData requestData, UserService userService,
+                            HttpServletResponse resp) throws IOException {
+    Responder responder = new Responder(
+        resp, sModules.blobstoreService, requestData.getHeader("Accept-Encoding"));
+    long startNanos = System.nanoTime();
+    Trace trace = Trace.start(requestData.getUrl());
+    try {
+      for (Request server : sRequestServers) {
+        if (server.serveUrl(requestData, responder, userService)) {
+          Metrics.REQUESTS.record(getRouteName(server), startNanos,
+              responder.getBytesWritten(), responder.getStatus());
+          return;
+        }
       }
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      Metrics.REQUESTS.record("NotFound", startNanos, 0, HttpServletResponse.SC_NOT_FOUND);
+    } finally {
+      trace.finish(responder.getStatus());
     }
-    resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+  }
+
+  /** The name of the request server, including its outer class as some are nested. */
+  private static String getRouteName(Request server) {
+    String name = server.getClass().getName();
+    return name.substring(name.lastIndexOf('.') + 1);
   }
 }
@@ -17,29 +17,81 @@
 package org.retrostore.data;
 
 import org.retrostore.request.Responder.ContentType;
+import org.retrostore.resources.ScreenshotRenditions.Format;
+
+import java.util.Optional;
 
 /**
  * Wrapper around Blobstore that can easily be faked.
+ *
+ * <p>Keys are either Blobstore blob keys, or for objects written to Cloud Storage, their full name
+ * in the form of '/gs/[bucket]/[object]'.
  */
 public interface BlobstoreWrapper {
+  /** Keys of objects in Cloud Storage start with this prefix. */
+  String GCS_PREFIX = "/gs/";
+
   /** Creates a URL that can be uploaded to via POST. */
   String createUploadUrl(String forwardUrl);
 
   /** Loads a blob's raw data. */
   byte[] loadBlob(String key);
 
-  /** Deletes a blob if it exists. */
+  /**
+   * Loads a blob's raw data in full, as long as it is not larger than the given limit.
+   *
+   * @param key       the key of the blob.
+   * @param maxLength the maximum size of the blob.
+   * @return The data of the blob. Empty if it is larger than the limit or cannot be read.
+   */
+  Optional<byte[]> loadBlob(String key, int maxLength);
+
+  /**
+   * Loads only the start of a blob, e.g. to read a file header.
+   *
+   * @param key    the key of the blob.
+   * @param length the maximum number of bytes to load.
+   * @return The first bytes of the blob. Fewer than requested if the blob is smaller.
+   */
+  byte[] loadBlobPrefix(String key, int length);
+
+  /** Deletes a blob if it exists. For screenshots, this includes their renditions. */
   void deleteBlob(String key);
 
   /**
-   * Adds a screenshot to the blobstore for the app with the given ID.
+   * Renders and writes the renditions of an already stored screenshot, and records which of them
+   * were written. Screenshots written via {@link #writeScreenshot} already have renditions.
+   *
+   * @param key  the key of the screenshot.
+   * @param data the raw data of the screenshot file.
+   */
+  void writeRenditions(String key, byte[] data);
+
+  /**
+   * Returns the key of the stored rendition of a screenshot that best fits the requested size and
+   * format, see {@link Screenshot#pickRendition}. Empty if the screenshot has no renditions, e.g.
+   * because its format could not be decoded.
+   */
+  Optional<String> getRenditionKey(String key, int size, Format format);
+
+  /**
+   * Writes a screenshot for the app with the given ID to storage, together with its renditions
+   * (see {@link org.retrostore.resources.ScreenshotRenditions}). The data is not validated, see
+   * {@link org.retrostore.resources.ScreenshotValidator}. The screenshot still needs to be added
+   * to the app.
    *
    * @param appId       the ID of the app to add the screenshot for
    * @param data        the raw data of the screenshot file
    * @param contentType the type of the image data
-   * @param cookie      the complete cookie from the original request. This is necessary so that our
-   *                    internal add request can use the same authentication as the original
-   *                    requester. Not setting this will make the call fail.
+   * @return The key of the written screenshot, if it could be written.
    */
-  void addScreenshot(String appId, byte[] data, ContentType contentType, String cookie);
+  Optional<String> writeScreenshot(String appId, byte[] data, ContentType contentType);
+
+  /** Whether the key refers to an object in the folder screenshots are written to. */
+  boolean isInScreenshotFolder(String key);
+
+  /** Whether the given key refers to an object in Cloud Storage. */
+  static boolean isGcsKey(String key) {
+    return key.startsWith(GCS_PREFIX);
+  }
 }
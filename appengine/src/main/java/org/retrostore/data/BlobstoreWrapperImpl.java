@@ -17,38 +17,51 @@
 package org.retrostore.data;
 
 import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.tools.cloudstorage.GcsFileOptions;
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.entity.mime.content.ByteArrayBody;
-import org.apache.http.entity.mime.content.FileBody;
-import org.apache.http.impl.client.HttpClientBuilder;
+import com.google.common.io.ByteStreams;
+import org.retrostore.metrics.Trace;
 import org.retrostore.request.Responder;
+import org.retrostore.resources.ScreenshotRenditions;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.googlecode.objectify.ObjectifyService.ofy;
 
 /**
  * Default implementation for the BlobStore wrapper.
  */
 public class BlobstoreWrapperImpl implements BlobstoreWrapper {
   private static final Logger LOG = Logger.getLogger("Blobstore");
+  /** All screenshots and their renditions are written below this folder of the bucket. */
+  private static final String SCREENSHOT_FOLDER = "screenshots/";
 
   private final BlobstoreService mBlobstoreService;
-
-  public BlobstoreWrapperImpl(BlobstoreService blobstoreService) {
+  private final GcsService mGcsService;
+  private final String mBucket;
+
+  /**
+   * @param blobstoreService the blobstore service to use.
+   * @param gcsService       used to write screenshots to Cloud Storage.
+   * @param bucket           the Cloud Storage bucket screenshots are written to.
+   */
+  public BlobstoreWrapperImpl(BlobstoreService blobstoreService, GcsService gcsService,
+                              String bucket) {
     mBlobstoreService = checkNotNull(blobstoreService);
+    mGcsService = checkNotNull(gcsService);
+    mBucket = checkNotNull(bucket);
   }
 
   @Override
@@ -58,57 +71,134 @@ public class BlobstoreWrapperImpl implements BlobstoreWrapper {
 
   @Override
   public byte[] loadBlob(String key) {
-    return mBlobstoreService.fetchData(
-        new BlobKey(key), 0, BlobstoreService.MAX_BLOB_FETCH_SIZE - 1);
+    try (Trace.Span ignored = Trace.span(Trace.BLOBSTORE, "loadBlob")) {
+      return mBlobstoreService.fetchData(
+          toBlobKey(key), 0, BlobstoreService.MAX_BLOB_FETCH_SIZE - 1);
+    }
+  }
+
+  @Override
+  public Optional<byte[]> loadBlob(String key, int maxLength) {
+    try (Trace.Span ignored = Trace.span(Trace.BLOBSTORE, "loadBlob");
+         InputStream in = new BlobstoreInputStream(toBlobKey(key))) {
+      // Read one byte more than allowed, to tell a blob at the limit from a larger one.
+      byte[] data = ByteStreams.toByteArray(ByteStreams.limit(in, maxLength + 1L));
+      return data.length <= maxLength ? Optional.of(data) : Optional.empty();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, String.format("Cannot load '%s'.", key), e);
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public byte[] loadBlobPrefix(String key, int length) {
+    Preconditions.checkArgument(length > 0 && length <= BlobstoreService.MAX_BLOB_FETCH_SIZE,
+        "'length' out of range");
+    try (Trace.Span ignored = Trace.span(Trace.BLOBSTORE, "loadBlobPrefix")) {
+      return mBlobstoreService.fetchData(toBlobKey(key), 0, length - 1);
+    }
   }
 
   @Override
   public void deleteBlob(String key) {
-    mBlobstoreService.delete(new BlobKey(key));
+    // Screenshots come with renditions, which are removed together with them.
+    Screenshot screenshot = ofy().load().key(Screenshot.key(key)).now();
+    if (screenshot != null) {
+      for (Screenshot.Rendition rendition : screenshot.renditions) {
+        deleteGcsObject(rendition.key);
+      }
+      ofy().delete().entity(screenshot).now();
+    }
+    if (BlobstoreWrapper.isGcsKey(key)) {
+      deleteGcsObject(key);
+    } else {
+      mBlobstoreService.delete(new BlobKey(key));
+    }
   }
 
   @Override
-  public void addScreenshot(String appId, byte[] data, Responder.ContentType contentType,
-                            String cookie) {
+  public Optional<String> writeScreenshot(String appId, byte[] data,
+                                          Responder.ContentType contentType) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(appId), "'appId' missing");
     Preconditions.checkArgument(data != null && data.length > 0, "'data' is empty");
     Preconditions.checkNotNull(contentType, "'contentType' missing");
-    Preconditions.checkArgument(!Strings.isNullOrEmpty(cookie), "'cookie' missing");
-
-    LOG.info(String.format("About to add a screenshot blob of size %d with type %s.",
-        data.length, contentType.str));
 
-    final String PATH_UPLOAD = "/screenshotUpload";
-    String forwardTo = PATH_UPLOAD + "?appId=" + appId;
-
-    LOG.info("Forward to: " + forwardTo);
-    String uploadUrl = createUploadUrl(forwardTo);
-    LOG.info("UploadUrl: " + uploadUrl);
+    GcsFilename file = new GcsFilename(
+        mBucket, SCREENSHOT_FOLDER + appId + "/" + UUID.randomUUID());
+    GcsFileOptions options = new GcsFileOptions.Builder().mimeType(contentType.str).build();
+    try {
+      mGcsService.createOrReplace(file, options, ByteBuffer.wrap(data));
+    } catch (IOException e) {
+      LOG.log(Level.SEVERE, "Cannot write screenshot.", e);
+      return Optional.empty();
+    }
+    LOG.info(String.format("Wrote screenshot of size %d with type %s to '%s'.",
+        data.length, contentType.str, file.getObjectName()));
+    String key = GCS_PREFIX + file.getBucketName() + "/" + file.getObjectName();
+    writeRenditions(key, data);
+    return Optional.of(key);
+  }
 
-    // It is important that we set the cookie so that we're authenticated. We do not allow
-    // anonymous requests to upload screenshots.
-    HttpPost post = new HttpPost(uploadUrl);
-    post.setHeader("Cookie", cookie);
+  @Override
+  public void writeRenditions(String key, byte[] data) {
+    GcsFileOptions options =
+        new GcsFileOptions.Builder().mimeType(Responder.ContentType.PNG.str).build();
+    // Renditions always live in Cloud Storage, also for screenshots uploaded to Blobstore.
+    String renditionPrefix = BlobstoreWrapper.isGcsKey(key) ? key
+        : String.format("%s%s/%srenditions/%s", GCS_PREFIX, mBucket, SCREENSHOT_FOLDER, key);
+    Screenshot screenshot = new Screenshot(key);
+    int totalSize = 0;
+    for (ScreenshotRenditions.Rendition rendition : ScreenshotRenditions.render(data)) {
+      String renditionKey =
+          ScreenshotRenditions.getKey(renditionPrefix, rendition.size, rendition.format);
+      try {
+        mGcsService.createOrReplace(
+            toGcsFilename(renditionKey), options, ByteBuffer.wrap(rendition.data));
+        // Only renditions that were written are recorded, all others are served by falling back.
+        screenshot.renditions.add(
+            new Screenshot.Rendition(rendition.size, rendition.format, renditionKey));
+        totalSize += rendition.data.length;
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, String.format("Cannot write rendition '%s'.", renditionKey), e);
+      }
+    }
+    ofy().save().entity(screenshot).now();
+    LOG.info(String.format("Wrote %d renditions with a total size of %d for '%s'.",
+        screenshot.renditions.size(), totalSize, key));
+  }
 
-    MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-    builder.setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
-    // Note we need to use the deprecated constructor so we can use our content type.
-    builder.addPart("file", new ByteArrayBody(data, contentType.str, "screenshot"));
+  @Override
+  public Optional<String> getRenditionKey(String key, int size,
+                                          ScreenshotRenditions.Format format) {
+    Screenshot screenshot = ofy().load().key(Screenshot.key(key)).now();
+    if (screenshot == null) {
+      return Optional.empty();
+    }
+    return screenshot.pickRendition(size, format);
+  }
 
-    HttpEntity entity = builder.build();
-    post.setEntity(entity);
+  @Override
+  public boolean isInScreenshotFolder(String key) {
+    return key.startsWith(GCS_PREFIX + mBucket + "/" + SCREENSHOT_FOLDER);
+  }
 
-    HttpClient client = HttpClientBuilder.create().build();
+  private void deleteGcsObject(String key) {
     try {
-      LOG.info("POST constructed. About to make request!");
-      HttpResponse response = client.execute(post);
-      LOG.info("Request succeeded!");
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      response.getEntity().writeTo(out);
-      LOG.info(new String(out.toByteArray(), "UTF-8"));
-
+      mGcsService.delete(toGcsFilename(key));
     } catch (IOException e) {
-      LOG.log(Level.SEVERE, "Cannot make POST request.", e);
+      LOG.log(Level.WARNING, String.format("Cannot delete '%s'.", key), e);
     }
   }
+
+  /** Turns any key into a blob key, which the Blobstore and Images APIs can use. */
+  private BlobKey toBlobKey(String key) {
+    return BlobstoreWrapper.isGcsKey(key) ? mBlobstoreService.createGsBlobKey(key)
+        : new BlobKey(key);
+  }
+
+  private static GcsFilename toGcsFilename(String key) {
+    String path = key.substring(GCS_PREFIX.length());
+    int slash = path.indexOf('/');
+    return new GcsFilename(path.substring(0, slash), path.substring(slash + 1));
+  }
 }
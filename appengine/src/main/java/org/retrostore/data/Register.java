@@ -20,6 +20,7 @@ import com.googlecode.objectify.ObjectifyService;
 import org.retrostore.data.app.AppStoreItem;
 import org.retrostore.data.app.Author;
 import org.retrostore.data.app.MediaImage;
+import org.retrostore.data.card.FirmwarePatch;
 import org.retrostore.data.card.RetroCardFirmware;
 import org.retrostore.data.card.TrsIoFirmware;
 import org.retrostore.data.user.RetroStoreUser;
@@ -36,8 +37,10 @@ public class Register {
       ObjectifyService.register(AppStoreItem.class);
       ObjectifyService.register(Author.class);
       ObjectifyService.register(MediaImage.class);
+      ObjectifyService.register(FirmwarePatch.class);
       ObjectifyService.register(RetroCardFirmware.class);
       ObjectifyService.register(RetroStoreUser.class);
+      ObjectifyService.register(Screenshot.class);
       ObjectifyService.register(TrsIoFirmware.class);
       ObjectifyService.register(SystemState.class);
       isRegistered = true;
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import org.retrostore.resources.ScreenshotRenditions.Format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The renditions that were written for a screenshot. Only renditions that were actually stored
+ * are listed, so this stays correct when the configured sizes change or an image could not be
+ * rendered at all.
+ */
+@Entity
+@Cache
+public class Screenshot {
+  /** A single stored rendition. */
+  public static class Rendition {
+    public int size;
+    public Format format;
+    /** The Cloud Storage key the rendition is stored at. */
+    public String key;
+
+    /** For Objectify. */
+    private Rendition() {}
+
+    Rendition(int size, Format format, String key) {
+      this.size = size;
+      this.format = format;
+      this.key = key;
+    }
+  }
+
+  /** The key of the screenshot itself. */
+  @Id
+  public String key;
+
+  public List<Rendition> renditions = new ArrayList<>();
+
+  /** For Objectify. */
+  private Screenshot() {}
+
+  Screenshot(String key) {
+    this.key = key;
+  }
+
+  static Key<Screenshot> key(String screenshotKey) {
+    return Key.create(Screenshot.class, screenshotKey);
+  }
+
+  /**
+   * Picks the rendition to serve for the requested size, which is the smallest one in the given
+   * format that is at least as large, or else the largest one in that format. Falls back to PNG
+   * if there is no rendition in the requested format.
+   */
+  Optional<String> pickRendition(int requestedSize, Format format) {
+    Rendition smallestLarger = null;
+    Rendition largest = null;
+    for (Rendition rendition : renditions) {
+      if (rendition.format != format) {
+        continue;
+      }
+      if (rendition.size >= requestedSize &&
+          (smallestLarger == null || rendition.size < smallestLarger.size)) {
+        smallestLarger = rendition;
+      }
+      if (largest == null || rendition.size > largest.size) {
+        largest = rendition;
+      }
+    }
+    if (largest == null) {
+      return format != Format.PNG ? pickRendition(requestedSize, Format.PNG) : Optional.empty();
+    }
+    return Optional.of(smallestLarger != null ? smallestLarger.key : largest.key);
+  }
+}
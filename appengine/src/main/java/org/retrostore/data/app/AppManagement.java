@@ -16,9 +16,11 @@
 
 package org.retrostore.data.app;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Functionality to manage apps.
@@ -29,6 +31,18 @@ public interface AppManagement {
    */
   void addOrChangeApp(AppStoreItem app);
 
+  /**
+   * Adds or changes all the given apps, using a single datastore write and search index update.
+   */
+  void addOrChangeApps(List<AppStoreItem> apps);
+
+  /**
+   * Derives the media formats of the given apps from their media images and stores them, without
+   * changing anything else about the apps. Apps saved through {@link #addOrChangeApp} get them
+   * anyway, this is for apps stored before they existed.
+   */
+  void updateMediaFormats(List<AppStoreItem> apps);
+
   /**
    * Loads an app from the data store.
    *
@@ -68,6 +82,15 @@ public interface AppManagement {
    */
   long addMediaImage(String appId, String filename, byte[] data);
 
+  /**
+   * Adds multiple media images of the same app to the data store with a single write.
+   *
+   * @param appId  the ID of the app these images belong to.
+   * @param images the data of the images, keyed by their file name.
+   * @return The IDs of the media images just added, keyed by their file name.
+   */
+  Map<String, Long> addMediaImages(String appId, Map<String, byte[]> images);
+
   /**
    * Gets all media images associated with an app.
    *
@@ -83,6 +106,11 @@ public interface AppManagement {
    */
   void deleteMediaImage(long mediaId);
 
+  /**
+   * Deletes the media images with the given IDs with a single write. Zero IDs are ignored.
+   */
+  void deleteMediaImages(Collection<Long> mediaIds);
+
   /**
    * Deletes all media images associated with a given app.
    *
@@ -118,6 +146,14 @@ public interface AppManagement {
    */
   long ensureAuthorExists(String name);
 
+  /**
+   * Stores all authors with the given names that do not exist yet.
+   *
+   * @param names the names of the authors.
+   * @return The keys of the newly added or existing authors, keyed by their name.
+   */
+  Map<String, Long> ensureAuthorsExist(Set<String> names);
+
   /**
    * Returns a list of all app authors.
    */
@@ -125,4 +161,18 @@ public interface AppManagement {
 
   /** Returns the author with the given ID, if it exists. */
   Optional<Author> getAuthorById(long id);
+
+  /**
+   * Returns the authors with the given IDs, loaded together.
+   *
+   * @return The existing authors, keyed by their ID.
+   */
+  Map<Long, Author> getAuthorsById(Collection<Long> ids);
+
+  /**
+   * Returns a number that changes whenever apps or authors change, so that data derived from all
+   * apps can be kept until then. Implementations that do not know about changes return a new
+   * number on every call.
+   */
+  long getCatalogGeneration();
 }
@@ -17,12 +17,19 @@
 package org.retrostore.data.app;
 
 import com.google.common.base.Preconditions;
+import org.retrostore.metrics.Counter;
+import org.retrostore.metrics.Metrics;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A caching layer for app management, with the same interface.
@@ -31,6 +38,11 @@ import java.util.Optional;
  * number of apps and allows us to do a lot of things in memory like special filtering.
  */
 public class AppManagementCached implements AppManagement {
+  private static final Counter sAppHits = Metrics.cacheLookups("apps", "memory");
+  private static final Counter sAppMisses = Metrics.cacheLookups("apps", "miss");
+  private static final Counter sAuthorHits = Metrics.cacheLookups("authors", "memory");
+  private static final Counter sAuthorMisses = Metrics.cacheLookups("authors", "miss");
+
   /** A real app management implementation. */
   private final AppManagement mAppManagement;
 
@@ -39,12 +51,15 @@ public class AppManagementCached implements AppManagement {
   private final Map<String, AppStoreItem> mAppCacheById;
   private final Map<Long, MediaImage> mMediaCacheById;
   private final Map<Long, Author> mAuthorCacheById;
+  /** Incremented after every change to the cached apps and authors. */
+  private final AtomicLong mCatalogGeneration = new AtomicLong();
 
   public AppManagementCached(AppManagement appManagement) {
     mAppManagement = Preconditions.checkNotNull(appManagement);
-    mAppCacheById = new HashMap<>();
-    mMediaCacheById = new HashMap<>();
-    mAuthorCacheById = new HashMap<>();
+    // Requests, and the parallel RPK import, access these concurrently.
+    mAppCacheById = new ConcurrentHashMap<>();
+    mMediaCacheById = new ConcurrentHashMap<>();
+    mAuthorCacheById = new ConcurrentHashMap<>();
 
     // Important: Update cache at the beginning so we can then keep it updates throughout with
     // incremental updates only.
@@ -57,16 +72,42 @@ public class AppManagementCached implements AppManagement {
   public void addOrChangeApp(AppStoreItem app) {
     mAppManagement.addOrChangeApp(app);
     mAppCacheById.put(app.id, app);
+    mCatalogGeneration.incrementAndGet();
+  }
+
+  @Override
+  public void addOrChangeApps(List<AppStoreItem> apps) {
+    mAppManagement.addOrChangeApps(apps);
+    for (AppStoreItem app : apps) {
+      mAppCacheById.put(app.id, app);
+    }
+    mCatalogGeneration.incrementAndGet();
+  }
+
+  @Override
+  public void updateMediaFormats(List<AppStoreItem> apps) {
+    mAppManagement.updateMediaFormats(apps);
+    for (AppStoreItem app : apps) {
+      mAppCacheById.put(app.id, app);
+    }
+    mCatalogGeneration.incrementAndGet();
   }
 
   @Override
   public Optional<AppStoreItem> getAppById(String id) {
-    if (mAppCacheById.containsKey(id)) {
-      return java.util.Optional.of(mAppCacheById.get(id));
+    // A single lookup, as the app might be removed concurrently.
+    AppStoreItem cached = mAppCacheById.get(id);
+    if (cached != null) {
+      sAppHits.inc();
+      return Optional.of(cached);
     }
 
+    sAppMisses.inc();
     Optional<AppStoreItem> appOpt = mAppManagement.getAppById(id);
-    appOpt.ifPresent(appStoreItem -> mAppCacheById.put(appStoreItem.id, appStoreItem));
+    appOpt.ifPresent(appStoreItem -> {
+      mAppCacheById.put(appStoreItem.id, appStoreItem);
+      mCatalogGeneration.incrementAndGet();
+    });
     return appOpt;
   }
 
@@ -89,6 +130,11 @@ public class AppManagementCached implements AppManagement {
     return mAppManagement.addMediaImage(appId, filename, data);
   }
 
+  @Override
+  public Map<String, Long> addMediaImages(String appId, Map<String, byte[]> images) {
+    return mAppManagement.addMediaImages(appId, images);
+  }
+
   @Override
   public Map<Long, MediaImage> getMediaImagesForApp(String appId) {
     // TODO: We should think about how to cache these better. Probably need to key by appId.
@@ -101,6 +147,14 @@ public class AppManagementCached implements AppManagement {
     mAppManagement.deleteMediaImage(mediaId);
   }
 
+  @Override
+  public void deleteMediaImages(Collection<Long> mediaIds) {
+    for (long mediaId : mediaIds) {
+      mMediaCacheById.remove(mediaId);
+    }
+    mAppManagement.deleteMediaImages(mediaIds);
+  }
+
   @Override
   public long[] deleteMediaImagesForApp(String appId) {
     long[] deleted = mAppManagement.deleteMediaImagesForApp(appId);
@@ -124,6 +178,7 @@ public class AppManagementCached implements AppManagement {
   public void removeApp(String id) {
     mAppManagement.removeApp(id);
     mAppCacheById.remove(id);
+    mCatalogGeneration.incrementAndGet();
   }
 
   @Override
@@ -133,6 +188,13 @@ public class AppManagementCached implements AppManagement {
     return id;
   }
 
+  @Override
+  public Map<String, Long> ensureAuthorsExist(Set<String> names) {
+    Map<String, Long> ids = mAppManagement.ensureAuthorsExist(names);
+    updateAuthorCache();
+    return ids;
+  }
+
   @Override
   public List<Author> listAuthors() {
     if (mAuthorCacheById.isEmpty()) {
@@ -146,7 +208,44 @@ public class AppManagementCached implements AppManagement {
     if (mAuthorCacheById.isEmpty()) {
       updateAuthorCache();
     }
-    return Optional.ofNullable(mAuthorCacheById.get(id));
+    Author author = mAuthorCacheById.get(id);
+    (author != null ? sAuthorHits : sAuthorMisses).inc();
+    return Optional.ofNullable(author);
+  }
+
+  @Override
+  public Map<Long, Author> getAuthorsById(Collection<Long> ids) {
+    if (mAuthorCacheById.isEmpty()) {
+      updateAuthorCache();
+    }
+    Map<Long, Author> authors = new HashMap<>();
+    Set<Long> missing = new HashSet<>();
+    for (long id : ids) {
+      Author author = mAuthorCacheById.get(id);
+      if (author != null) {
+        authors.put(id, author);
+      } else {
+        missing.add(id);
+      }
+    }
+    sAuthorHits.add(authors.size());
+    sAuthorMisses.add(missing.size());
+    if (!missing.isEmpty()) {
+      // E.g. added through another instance. Loaded together rather than one by one.
+      Map<Long, Author> loaded = mAppManagement.getAuthorsById(missing);
+      if (!loaded.isEmpty()) {
+        // Authors that do not exist (anymore) do not change what is cached.
+        mAuthorCacheById.putAll(loaded);
+        mCatalogGeneration.incrementAndGet();
+        authors.putAll(loaded);
+      }
+    }
+    return authors;
+  }
+
+  @Override
+  public long getCatalogGeneration() {
+    return mCatalogGeneration.get();
   }
 
   private void updateAppCacheItem(String id) {
@@ -156,6 +255,7 @@ public class AppManagementCached implements AppManagement {
     }
     AppStoreItem app = appOpt.get();
     mAppCacheById.put(app.id, app);
+    mCatalogGeneration.incrementAndGet();
   }
 
   private void updateAppCache() {
@@ -164,6 +264,7 @@ public class AppManagementCached implements AppManagement {
     for (AppStoreItem app : apps) {
       mAppCacheById.put(app.id, app);
     }
+    mCatalogGeneration.incrementAndGet();
   }
 
   private void updateAuthorCache() {
@@ -172,5 +273,6 @@ public class AppManagementCached implements AppManagement {
     for (Author author : authors) {
       mAuthorCacheById.put(author.id, author);
     }
+    mCatalogGeneration.incrementAndGet();
   }
 }
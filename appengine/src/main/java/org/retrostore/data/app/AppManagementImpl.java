@@ -18,15 +18,26 @@ package org.retrostore.data.app;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
 import org.retrostore.data.BlobstoreWrapper;
+import org.retrostore.metrics.Trace;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import static com.googlecode.objectify.ObjectifyService.ofy;
@@ -36,8 +47,17 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
  */
 public class AppManagementImpl implements AppManagement {
   private static final Logger LOG = Logger.getLogger("AppManagementImpl");
+  /** The search service accepts at most this many documents per put. */
+  private static final int MAX_SEARCH_DOCS_PER_PUT = 200;
+  /** Media images are large, so only this many are loaded at once to get their filenames. */
+  private static final int MAX_MEDIA_PER_LOAD = 50;
+  /** The datastore rejects 'in' filters with more values than this. */
+  private static final int MAX_IN_FILTER_VALUES = 30;
   private final BlobstoreWrapper mBlobstore;
   private final AppSearch mAppSearch;
+  /** The filenames of media images by their ID. They never change, so they are kept forever. */
+  private final Map<Long, String> mMediaFilenames = new ConcurrentHashMap<>();
+  private final AtomicLong mCatalogGeneration = new AtomicLong();
 
   public AppManagementImpl(BlobstoreWrapper blobstore, AppSearch appSearch) {
     mBlobstore = blobstore;
@@ -47,13 +67,46 @@ public class AppManagementImpl implements AppManagement {
   @Override
   public void addOrChangeApp(AppStoreItem app) {
     app.setUpdateAndPublishTime();
-    ofy().save().entity(app).now();
+    setMediaFormats(Collections.singletonList(app));
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "saveApp")) {
+      ofy().save().entity(app).now();
+    }
     mAppSearch.addOrUpdate(app);
   }
 
+  @Override
+  public void addOrChangeApps(List<AppStoreItem> apps) {
+    if (apps.isEmpty()) {
+      return;
+    }
+    for (AppStoreItem app : apps) {
+      app.setUpdateAndPublishTime();
+    }
+    setMediaFormats(apps);
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "saveApps")) {
+      ofy().save().entities(apps).now();
+    }
+    for (List<AppStoreItem> partition : Lists.partition(apps, MAX_SEARCH_DOCS_PER_PUT)) {
+      mAppSearch.refreshIndex(partition);
+    }
+  }
+
+  @Override
+  public void updateMediaFormats(List<AppStoreItem> apps) {
+    if (apps.isEmpty()) {
+      return;
+    }
+    setMediaFormats(apps);
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "saveApps")) {
+      ofy().save().entities(apps).now();
+    }
+  }
+
   @Override
   public Optional<AppStoreItem> getAppById(String id) {
-    return Optional.ofNullable(ofy().load().key(AppStoreItem.key(id)).now());
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getAppById")) {
+      return Optional.ofNullable(ofy().load().key(AppStoreItem.key(id)).now());
+    }
   }
 
   @Override
@@ -98,17 +151,53 @@ public class AppManagementImpl implements AppManagement {
     mediaImage.data = data;
     mediaImage.uploadTime = System.currentTimeMillis();
 
-    Key<MediaImage> key = ofy().save().entity(mediaImage).now();
-    return key.getId();
+    long id;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "addMediaImage")) {
+      id = ofy().save().entity(mediaImage).now().getId();
+    }
+    rememberFilename(id, filename);
+    return id;
+  }
+
+  @Override
+  public Map<String, Long> addMediaImages(String appId, Map<String, byte[]> images) {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(appId));
+    long now = System.currentTimeMillis();
+    List<MediaImage> mediaImages = new ArrayList<>(images.size());
+    for (Map.Entry<String, byte[]> image : images.entrySet()) {
+      Preconditions.checkArgument(image.getValue().length > 0);
+      MediaImage mediaImage = new MediaImage();
+      mediaImage.appId = appId;
+      mediaImage.filename = image.getKey();
+      mediaImage.data = image.getValue();
+      mediaImage.uploadTime = now;
+      mediaImages.add(mediaImage);
+    }
+
+    // Objectify fills in the generated IDs when saving.
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "addMediaImages")) {
+      ofy().save().entities(mediaImages).now();
+    }
+    Map<String, Long> ids = new HashMap<>(mediaImages.size());
+    for (MediaImage mediaImage : mediaImages) {
+      ids.put(mediaImage.filename, mediaImage.id);
+      rememberFilename(mediaImage.id, mediaImage.filename);
+    }
+    return ids;
   }
 
   @Override
   public Map<Long, MediaImage> getMediaImagesForApp(String appId) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(appId));
-    List<MediaImage> media = ofy().load().type(MediaImage.class).filter("appId", appId).list();
+    List<MediaImage> media;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getMediaImagesForApp")) {
+      // Query results load lazily, copying them keeps the loading within the span.
+      media = new ArrayList<>(ofy().load().type(MediaImage.class).filter("appId", appId).list());
+    }
     Map<Long, MediaImage> keyedResult = new HashMap<>(media.size());
     for (MediaImage mediaImage : media) {
       keyedResult.put(mediaImage.id, mediaImage);
+      rememberFilename(mediaImage.id, mediaImage.filename);
     }
     return keyedResult;
   }
@@ -118,7 +207,24 @@ public class AppManagementImpl implements AppManagement {
     if (mediaId == 0) {
       return;
     }
-    ofy().delete().key(MediaImage.key(mediaId)).now();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "deleteMediaImage")) {
+      ofy().delete().key(MediaImage.key(mediaId)).now();
+    }
+  }
+
+  @Override
+  public void deleteMediaImages(Collection<Long> mediaIds) {
+    List<Key<MediaImage>> toDelete = new ArrayList<>(mediaIds.size());
+    for (long id : mediaIds) {
+      if (id != 0) {
+        toDelete.add(MediaImage.key(id));
+      }
+    }
+    if (!toDelete.isEmpty()) {
+      try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "deleteMediaImages")) {
+        ofy().delete().keys(toDelete).now();
+      }
+    }
   }
 
   @Override
@@ -129,24 +235,13 @@ public class AppManagementImpl implements AppManagement {
     }
     LOG.info("About to delete all media for app ID: " + appId);
 
-    AppStoreItem.Trs80Extension trs80 = appById.get().trs80Extension;
     List<Key<MediaImage>> toDelete = new ArrayList<>();
-    // Note, add delete routines for other platforms here.
-    for (long id : trs80.disk) {
-      if (id != 0) {
-        toDelete.add(MediaImage.key(id));
-      }
-    }
-    if (trs80.cassette != 0) {
-      toDelete.add(MediaImage.key(trs80.cassette));
-    }
-    if (trs80.command != 0) {
-      toDelete.add(MediaImage.key(trs80.command));
+    for (long id : appById.get().getMediaIds()) {
+      toDelete.add(MediaImage.key(id));
     }
-    if (trs80.basic != 0) {
-      toDelete.add(MediaImage.key(trs80.basic));
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "deleteMediaImagesForApp")) {
+      ofy().delete().keys(toDelete).now();
     }
-    ofy().delete().keys(toDelete).now();
     LOG.info("Deleted " + toDelete.size() + " items.");
 
     long[] result = new long[toDelete.size()];
@@ -158,7 +253,9 @@ public class AppManagementImpl implements AppManagement {
 
   @Override
   public List<AppStoreItem> getAllApps() {
-    return ofy().load().type(AppStoreItem.class).list();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getAllApps")) {
+      return new ArrayList<>(ofy().load().type(AppStoreItem.class).list());
+    }
   }
 
   @Override
@@ -171,7 +268,9 @@ public class AppManagementImpl implements AppManagement {
     // Note, call this before deleting the app. We need the app to get to its media IDs.
     deleteMediaImagesForApp(id);
     // FIXME: Delete screenshots.
-    ofy().delete().key(AppStoreItem.key(id)).now();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "removeApp")) {
+      ofy().delete().key(AppStoreItem.key(id)).now();
+    }
     mAppSearch.remove(id);
   }
 
@@ -179,7 +278,11 @@ public class AppManagementImpl implements AppManagement {
   public long ensureAuthorExists(String name) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
 
-    List<Author> existingAuthors = ofy().load().type(Author.class).filter("name ==", name).list();
+    List<Author> existingAuthors;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "findAuthor")) {
+      existingAuthors =
+          new ArrayList<>(ofy().load().type(Author.class).filter("name ==", name).list());
+    }
     if (existingAuthors.size() > 0) {
       LOG.info(String.format("Author '%s' already exists.", name));
       if (existingAuthors.size() > 1) {
@@ -187,19 +290,132 @@ public class AppManagementImpl implements AppManagement {
       }
       return existingAuthors.get(0).id;
     }
-    Key<Author> newAuthorKey = ofy().save().entity(new Author(name)).now();
-    return newAuthorKey.getId();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "addAuthor")) {
+      return ofy().save().entity(new Author(name)).now().getId();
+    }
+  }
+
+  @Override
+  public Map<String, Long> ensureAuthorsExist(Set<String> names) {
+    Map<String, Long> ids = new HashMap<>(names.size());
+    if (names.isEmpty()) {
+      return ids;
+    }
+    List<Author> existingAuthors = new ArrayList<>();
+    for (List<String> partition : Iterables.partition(names, MAX_IN_FILTER_VALUES)) {
+      try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "findAuthors")) {
+        existingAuthors.addAll(
+            ofy().load().type(Author.class).filter("name in", partition).list());
+      }
+    }
+    for (Author author : existingAuthors) {
+      if (ids.containsKey(author.name)) {
+        LOG.severe(String.format("We have multiple author entries for '%s'", author.name));
+        continue;
+      }
+      ids.put(author.name, author.id);
+    }
+
+    List<Author> newAuthors = new ArrayList<>();
+    for (String name : names) {
+      Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
+      if (!ids.containsKey(name)) {
+        newAuthors.add(new Author(name));
+      }
+    }
+    if (!newAuthors.isEmpty()) {
+      try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "addAuthors")) {
+        ofy().save().entities(newAuthors).now();
+      }
+      for (Author author : newAuthors) {
+        ids.put(author.name, author.id);
+      }
+      LOG.info(String.format("Added %d new authors.", newAuthors.size()));
+    }
+    return ids;
   }
 
   @Override
   public List<Author> listAuthors() {
-    List<Author> authors = ofy().load().type(Author.class).list();
+    List<Author> authors;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "listAuthors")) {
+      authors = new ArrayList<>(ofy().load().type(Author.class).list());
+    }
     authors.sort(Comparator.comparing(o -> o.name));
     return authors;
   }
 
   @Override
   public Optional<Author> getAuthorById(long id) {
-    return Optional.ofNullable(ofy().load().key(Author.key(id)).now());
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getAuthorById")) {
+      return Optional.ofNullable(ofy().load().key(Author.key(id)).now());
+    }
+  }
+
+  @Override
+  public Map<Long, Author> getAuthorsById(Collection<Long> ids) {
+    List<Key<Author>> keys = new ArrayList<>(ids.size());
+    for (long id : ids) {
+      keys.add(Author.key(id));
+    }
+    Map<Long, Author> authors = new HashMap<>();
+    Collection<Author> loaded;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getAuthorsById")) {
+      loaded = new ArrayList<>(ofy().load().keys(keys).values());
+    }
+    for (Author author : loaded) {
+      authors.put(author.id, author);
+    }
+    return authors;
+  }
+
+  @Override
+  public long getCatalogGeneration() {
+    // Changes through other instances are not known here.
+    return mCatalogGeneration.incrementAndGet();
+  }
+
+  /** Derives the media formats of the apps from the filenames of their media images. */
+  private void setMediaFormats(Collection<AppStoreItem> apps) {
+    Set<Long> unknown = new HashSet<>();
+    for (AppStoreItem app : apps) {
+      for (long id : app.getMediaIds()) {
+        if (!mMediaFilenames.containsKey(id)) {
+          unknown.add(id);
+        }
+      }
+    }
+    for (List<Long> ids : Iterables.partition(unknown, MAX_MEDIA_PER_LOAD)) {
+      loadFilenames(ids);
+    }
+    for (AppStoreItem app : apps) {
+      Set<String> formats = new HashSet<>();
+      for (long id : app.getMediaIds()) {
+        MediaImage.getFormat(mMediaFilenames.get(id)).ifPresent(formats::add);
+      }
+      app.mediaFormats = formats;
+    }
+  }
+
+  /** Loads the media images with the given IDs to remember their filenames. */
+  private void loadFilenames(List<Long> ids) {
+    List<Key<MediaImage>> keys = new ArrayList<>(ids.size());
+    for (long id : ids) {
+      keys.add(MediaImage.key(id));
+    }
+    // Only the filenames are needed, so the images are loaded in a separate session that is
+    // dropped afterwards instead of holding on to their data in the session of the request.
+    try (Closeable session = ObjectifyService.begin();
+         Trace.Span ignored = Trace.span(Trace.DATASTORE, "loadMediaFilenames")) {
+      for (MediaImage mediaImage : ofy().load().keys(keys).values()) {
+        rememberFilename(mediaImage.id, mediaImage.filename);
+      }
+    }
+  }
+
+  private void rememberFilename(long mediaId, String filename) {
+    if (filename != null) {
+      mMediaFilenames.put(mediaId, filename);
+    }
   }
 }
@@ -25,6 +25,7 @@ import com.google.appengine.api.search.Results;
 import com.google.appengine.api.search.ScoredDocument;
 import com.google.appengine.api.search.SearchService;
 import com.google.appengine.api.search.StatusCode;
+import org.retrostore.metrics.Trace;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -57,17 +58,21 @@ public class AppSearchImpl implements AppSearch {
 
   @Override
   public void remove(String appId) {
-    mIndex.delete(appId);
+    try (Trace.Span ignored = Trace.span(Trace.SEARCH, "delete")) {
+      mIndex.delete(appId);
+    }
   }
 
   @Override
   public List<String> search(String query) {
-    Results<ScoredDocument> results = mIndex.search(query);
-    List<String> appIds = new ArrayList<>();
-    for (ScoredDocument doc : results) {
-      appIds.add(doc.getId());
+    try (Trace.Span ignored = Trace.span(Trace.SEARCH, "search")) {
+      Results<ScoredDocument> results = mIndex.search(query);
+      List<String> appIds = new ArrayList<>();
+      for (ScoredDocument doc : results) {
+        appIds.add(doc.getId());
+      }
+      return appIds;
     }
-    return appIds;
   }
 
   private static Document appToDoc(AppStoreItem item) {
@@ -88,7 +93,7 @@ public class AppSearchImpl implements AppSearch {
     int attempts = 0;
     int delay = 2;
     while (true) {
-      try {
+      try (Trace.Span ignored = Trace.span(Trace.SEARCH, "put")) {
         mIndex.put(document);
       } catch (PutException e) {
         if (StatusCode.TRANSIENT_ERROR.equals(e.getOperationResult().getCode())
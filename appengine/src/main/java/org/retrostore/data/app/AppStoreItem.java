@@ -23,6 +23,7 @@ import com.googlecode.objectify.annotation.Cache;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Index;
+import org.retrostore.util.Json;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -152,6 +153,41 @@ public class AppStoreItem {
   // Platform-specific extensions go here...
   public Trs80Extension trs80Extension = new Trs80Extension();
 
+  /**
+   * The formats of the media images of this app, as lower-case file extensions such as 'dmk'.
+   * Derived from the media images whenever the app is saved, so that listings do not need to load
+   * them. Null for apps that have not been saved since this was added.
+   */
+  public Set<String> mediaFormats;
+
+  /**
+   * Returns a deep copy of this app, which can be changed without affecting this one, e.g. while
+   * it is being served from a cache.
+   */
+  public AppStoreItem copy() {
+    return Json.fromJson(Json.toJson(this), AppStoreItem.class);
+  }
+
+  /** Returns the IDs of all media images this app references. */
+  List<Long> getMediaIds() {
+    List<Long> ids = new ArrayList<>();
+    // Note, add other platforms here.
+    for (long id : trs80Extension.disk) {
+      if (id != 0) {
+        ids.add(id);
+      }
+    }
+    if (trs80Extension.cassette != 0) {
+      ids.add(trs80Extension.cassette);
+    }
+    if (trs80Extension.command != 0) {
+      ids.add(trs80Extension.command);
+    }
+    if (trs80Extension.basic != 0) {
+      ids.add(trs80Extension.basic);
+    }
+    return ids;
+  }
 
   void setUpdateAndPublishTime() {
     // Ensure the times are set correctly.
@@ -22,6 +22,9 @@ import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Index;
 
+import java.util.Locale;
+import java.util.Optional;
+
 /**
  * A media image that could e.g. contain disk or cassette data.
  */
@@ -50,4 +53,16 @@ public class MediaImage {
     return Key.create(MediaImage.class, id);
   }
 
+  /** Returns the format of a media image with the given filename, which is its extension. */
+  public static Optional<String> getFormat(String filename) {
+    if (filename == null) {
+      return Optional.empty();
+    }
+    int dot = filename.lastIndexOf('.');
+    if (dot < 0 || dot == filename.length() - 1) {
+      return Optional.empty();
+    }
+    return Optional.of(filename.substring(dot + 1).toLowerCase(Locale.US));
+  }
+
 }
@@ -0,0 +1,221 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.card;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Creates and applies binary deltas between two firmware images.
+ *
+ * <p>A delta starts with a header, followed by operations that rebuild the target image from the
+ * source image. All numbers are big-endian:
+ *
+ * <pre>
+ *   header: "RSDF", format version (1 byte), target length (4 bytes), target CRC32 (4 bytes)
+ *   COPY  : 0x01, source offset (4 bytes), length (4 bytes)
+ *   ADD   : 0x02, length (4 bytes), followed by the literal bytes
+ * </pre>
+ *
+ * Devices apply the operations in order and must verify the CRC32 before flashing the result.
+ */
+public final class FirmwareDelta {
+  private static final byte[] MAGIC = {'R', 'S', 'D', 'F'};
+  private static final int FORMAT_VERSION = 1;
+  private static final byte OP_COPY = 0x01;
+  private static final byte OP_ADD = 0x02;
+  /** The source image is indexed at this granularity. */
+  private static final int BLOCK_SIZE = 16;
+  /** Shorter matches are cheaper to send as literal bytes than as a COPY operation. */
+  private static final int MIN_COPY_LENGTH = 24;
+  /** Larger than any device's flash, so a corrupt header cannot make us allocate gigabytes. */
+  static final int MAX_TARGET_LENGTH = 16 << 20;
+
+  private FirmwareDelta() {}
+
+  /**
+   * Creates a delta that turns the source into the target image.
+   *
+   * @param source the image the device currently has installed.
+   * @param target the image the device should end up with.
+   * @return The delta in the format described above.
+   * @throws IllegalArgumentException if the target is too large to be patched.
+   */
+  public static byte[] create(byte[] source, byte[] target) {
+    checkArgument(target.length <= MAX_TARGET_LENGTH, "Target image too large for a delta.");
+    Map<Long, Integer> index = new HashMap<>(source.length / BLOCK_SIZE + 1);
+    for (int i = 0; i + BLOCK_SIZE <= source.length; i += BLOCK_SIZE) {
+      index.putIfAbsent(blockHash(source, i), i);
+    }
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.write(MAGIC);
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(target.length);
+      out.writeInt((int) crc32(target));
+
+      int literalStart = 0;
+      int pos = 0;
+      while (pos + BLOCK_SIZE <= target.length) {
+        Integer candidate = index.get(blockHash(target, pos));
+        if (candidate != null && regionMatches(source, candidate, target, pos)) {
+          // Grow the match in both directions as far as the images agree. Going backwards only
+          // eats into literal bytes that have not been written yet.
+          int srcStart = candidate;
+          int tgtStart = pos;
+          while (srcStart > 0 && tgtStart > literalStart
+              && source[srcStart - 1] == target[tgtStart - 1]) {
+            srcStart--;
+            tgtStart--;
+          }
+          int srcEnd = candidate + BLOCK_SIZE;
+          int tgtEnd = pos + BLOCK_SIZE;
+          while (srcEnd < source.length && tgtEnd < target.length
+              && source[srcEnd] == target[tgtEnd]) {
+            srcEnd++;
+            tgtEnd++;
+          }
+
+          if (tgtEnd - tgtStart >= MIN_COPY_LENGTH) {
+            writeAdd(out, target, literalStart, tgtStart - literalStart);
+            out.writeByte(OP_COPY);
+            out.writeInt(srcStart);
+            out.writeInt(tgtEnd - tgtStart);
+            pos = tgtEnd;
+            literalStart = tgtEnd;
+            continue;
+          }
+        }
+        pos++;
+      }
+      writeAdd(out, target, literalStart, target.length - literalStart);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      // Cannot happen, we are writing to memory.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Applies a delta created by {@link #create(byte[], byte[])}.
+   *
+   * @param source the image the delta was created against.
+   * @param delta  the delta to apply.
+   * @return The target image.
+   * @throws IllegalArgumentException if the delta is malformed or does not match the source.
+   */
+  public static byte[] apply(byte[] source, byte[] delta) {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+    try {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      for (int i = 0; i < MAGIC.length; ++i) {
+        if (magic[i] != MAGIC[i]) {
+          throw new IllegalArgumentException("Not a firmware delta.");
+        }
+      }
+      int formatVersion = in.readUnsignedByte();
+      if (formatVersion != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unsupported delta version: " + formatVersion);
+      }
+      int targetLength = in.readInt();
+      long targetCrc = in.readInt() & 0xFFFFFFFFL;
+      if (targetLength < 0 || targetLength > MAX_TARGET_LENGTH) {
+        throw new IllegalArgumentException("Invalid target length: " + targetLength);
+      }
+
+      byte[] target = new byte[targetLength];
+      int pos = 0;
+      while (in.available() > 0) {
+        byte op = in.readByte();
+        if (op == OP_COPY) {
+          int offset = in.readInt();
+          int length = in.readInt();
+          if (offset < 0 || length < 0 || offset > source.length - length
+              || pos > targetLength - length) {
+            throw new IllegalArgumentException("COPY out of range.");
+          }
+          System.arraycopy(source, offset, target, pos, length);
+          pos += length;
+        } else if (op == OP_ADD) {
+          int length = in.readInt();
+          if (length < 0 || pos > targetLength - length) {
+            throw new IllegalArgumentException("ADD out of range.");
+          }
+          in.readFully(target, pos, length);
+          pos += length;
+        } else {
+          throw new IllegalArgumentException("Unknown delta operation: " + op);
+        }
+      }
+
+      if (pos != targetLength) {
+        throw new IllegalArgumentException("Delta does not fill the target image.");
+      }
+      if (crc32(target) != targetCrc) {
+        throw new IllegalArgumentException("Checksum mismatch after applying delta.");
+      }
+      return target;
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Truncated delta.", e);
+    }
+  }
+
+  private static void writeAdd(DataOutputStream out, byte[] data, int offset, int length)
+      throws IOException {
+    if (length <= 0) {
+      return;
+    }
+    out.writeByte(OP_ADD);
+    out.writeInt(length);
+    out.write(data, offset, length);
+  }
+
+  private static long blockHash(byte[] data, int offset) {
+    long hash = 17;
+    for (int i = offset; i < offset + BLOCK_SIZE; ++i) {
+      hash = hash * 31 + data[i];
+    }
+    return hash;
+  }
+
+  private static boolean regionMatches(byte[] source, int srcOffset, byte[] target, int tgtOffset) {
+    for (int i = 0; i < BLOCK_SIZE; ++i) {
+      if (source[srcOffset + i] != target[tgtOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long crc32(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, data.length);
+    return crc.getValue();
+  }
+}
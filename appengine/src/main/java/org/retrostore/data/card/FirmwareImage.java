@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.card;
+
+import com.google.common.io.BaseEncoding;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A firmware version that has been split into fixed-size blocks, so that devices can download,
+ * verify and resume the firmware block by block.
+ *
+ * <p>Instances are immutable and the block data is never copied once the image has been split, so
+ * a single instance can be shared by all requests for the same firmware version.
+ */
+public final class FirmwareImage {
+  /** The default size of all blocks, except for the last one which might be shorter. */
+  public static final int DEFAULT_BLOCK_SIZE = 4096;
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final int mVersion;
+  private final int mSize;
+  private final int mBlockSize;
+  private final byte[][] mBlocks;
+  private final long[] mCrc32s;
+  private final String[] mSha256s;
+  private final String mSha256;
+  /** Built once, as it is requested again for every download. */
+  private final String mManifest;
+
+  private FirmwareImage(int version, int size, int blockSize, byte[][] blocks, long[] crc32s,
+                        String[] sha256s, String sha256) {
+    mVersion = version;
+    mSize = size;
+    mBlockSize = blockSize;
+    mBlocks = blocks;
+    mCrc32s = crc32s;
+    mSha256s = sha256s;
+    mSha256 = sha256;
+    mManifest = createManifest();
+  }
+
+  /**
+   * Splits the given firmware data into blocks and computes their checksums.
+   *
+   * @param version   the version of the firmware.
+   * @param data      the complete firmware data.
+   * @param blockSize the size of each block.
+   */
+  public static FirmwareImage split(int version, byte[] data, int blockSize) {
+    checkArgument(blockSize > 0, "Block size must be positive.");
+    int numBlocks = (data.length + blockSize - 1) / blockSize;
+    byte[][] blocks = new byte[numBlocks][];
+    long[] crc32s = new long[numBlocks];
+    String[] sha256s = new String[numBlocks];
+
+    MessageDigest fullDigest = sha256();
+    for (int i = 0; i < numBlocks; ++i) {
+      int from = i * blockSize;
+      blocks[i] = Arrays.copyOfRange(data, from, Math.min(from + blockSize, data.length));
+      CRC32 crc = new CRC32();
+      crc.update(blocks[i], 0, blocks[i].length);
+      crc32s[i] = crc.getValue();
+      sha256s[i] = HEX.encode(sha256().digest(blocks[i]));
+      fullDigest.update(blocks[i]);
+    }
+    return new FirmwareImage(version, data.length, blockSize, blocks, crc32s, sha256s,
+        HEX.encode(fullDigest.digest()));
+  }
+
+  public int getVersion() {
+    return mVersion;
+  }
+
+  public int getNumBlocks() {
+    return mBlocks.length;
+  }
+
+  /**
+   * Returns the data of the block with the given index. The returned array is shared and must not
+   * be modified.
+   */
+  public byte[] getBlock(int index) {
+    checkArgument(index >= 0 && index < mBlocks.length, "Invalid block index: %s", index);
+    return mBlocks[index];
+  }
+
+  /**
+   * Returns the manifest devices use to plan their download. It is plain text so that it can be
+   * parsed with minimal code on the device:
+   *
+   * <pre>
+   *   version [version]
+   *   size [total size in bytes]
+   *   blocksize [block size in bytes]
+   *   blocks [number of blocks]
+   *   sha256 [SHA-256 of the complete firmware]
+   *   [index] [size] [CRC32] [SHA-256]   (one line per block)
+   * </pre>
+   *
+   * All checksums are lower-case hex.
+   */
+  public String toManifest() {
+    return mManifest;
+  }
+
+  private String createManifest() {
+    StringBuilder manifest = new StringBuilder();
+    manifest.append("version ").append(mVersion).append('\n');
+    manifest.append("size ").append(mSize).append('\n');
+    manifest.append("blocksize ").append(mBlockSize).append('\n');
+    manifest.append("blocks ").append(mBlocks.length).append('\n');
+    manifest.append("sha256 ").append(mSha256).append('\n');
+    for (int i = 0; i < mBlocks.length; ++i) {
+      manifest.append(String.format("%d %d %08x %s\n",
+          i, mBlocks[i].length, mCrc32s[i], mSha256s[i]));
+    }
+    return manifest.toString();
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+}
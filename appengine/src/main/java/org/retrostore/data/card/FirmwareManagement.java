@@ -45,6 +45,27 @@ public interface FirmwareManagement {
    */
   Optional<byte[]> getFirmware(int revision, int version);
 
+  /**
+   * Returns a precomputed delta between two firmware versions. Patches are created when a new
+   * version is added, so devices only have to download the blocks that changed.
+   *
+   * @param revision    the hardware revision.
+   * @param fromVersion the version currently installed on the device.
+   * @param toVersion   the version the device wants to update to.
+   * @return The delta, if one was created for these versions. See {@link FirmwareDelta}.
+   */
+  Optional<byte[]> getPatch(int revision, int fromVersion, int toVersion);
+
+  /**
+   * Returns the firmware split into blocks for chunked downloads. Images are cached, so repeated
+   * requests for the same version do not load or split the firmware again.
+   *
+   * @param revision the hardware revision to get the firmware for.
+   * @param version  the version of the firmware for this revision to get.
+   * @return The firmware image, if the given version for the given revision exists.
+   */
+  Optional<FirmwareImage> getFirmwareImage(int revision, int version);
+
   /**
    * @return the name of the product this firmware is for, e.g. "TRS-IO" or "RetroStore Card".
    */
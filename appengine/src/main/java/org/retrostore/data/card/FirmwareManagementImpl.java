@@ -18,7 +18,11 @@ package org.retrostore.data.card;
 
 import com.google.appengine.api.datastore.DatastoreNeedIndexException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +32,22 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
 /** Default implementation for the {@link FirmwareManagement} interface. */
 public class FirmwareManagementImpl<T extends Firmware> implements FirmwareManagement {
   private static final Logger LOG = Logger.getLogger("FirmwareManagement");
+  /** Patches are created from this many previous versions to a newly added one. */
+  private static final int MAX_PATCH_SOURCES = 5;
+  /** Only the most recently requested firmware images are kept in memory. */
+  private static final int MAX_CACHED_IMAGES = 8;
+  /**
+   * Split firmware images, keyed by product, revision and version. Static since instances of this
+   * class are created per request. Firmware versions are never changed once added, so entries
+   * never go stale.
+   */
+  private static final Map<String, FirmwareImage> sImageCache =
+      new LinkedHashMap<String, FirmwareImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FirmwareImage> eldest) {
+          return size() > MAX_CACHED_IMAGES;
+        }
+      };
   private final Firmware.Creator<T> creator;
 
   protected FirmwareManagementImpl(Firmware.Creator<T> creator) {
@@ -61,6 +81,7 @@ public class FirmwareManagementImpl<T extends Firmware> implements FirmwareManag
     int version = getLatestVersionOf(revision) + 1;
     T firmware = creator.create(revision, version, data);
     ofy().save().entity(firmware).now();
+    createPatches(revision, version, data);
     return version;
   }
 
@@ -71,6 +92,38 @@ public class FirmwareManagementImpl<T extends Firmware> implements FirmwareManag
     return firmware.map(Firmware::getData);
   }
 
+  @Override
+  public Optional<byte[]> getPatch(int revision, int fromVersion, int toVersion) {
+    Optional<FirmwarePatch> patch =
+        Optional.ofNullable(
+            ofy()
+                .load()
+                .key(FirmwarePatch.key(getProductKey(), revision, fromVersion, toVersion))
+                .now());
+    return patch.map(p -> p.data);
+  }
+
+  @Override
+  public Optional<FirmwareImage> getFirmwareImage(int revision, int version) {
+    String key = String.format("%s-%d-%d", getProductKey(), revision, version);
+    synchronized (sImageCache) {
+      FirmwareImage image = sImageCache.get(key);
+      if (image != null) {
+        return Optional.of(image);
+      }
+    }
+    // Load and split outside of the lock. Two concurrent misses will both do the work, but the
+    // result is the same.
+    Optional<FirmwareImage> image = getFirmware(revision, version)
+        .map(data -> FirmwareImage.split(version, data, FirmwareImage.DEFAULT_BLOCK_SIZE));
+    if (image.isPresent()) {
+      synchronized (sImageCache) {
+        sImageCache.put(key, image.get());
+      }
+    }
+    return image;
+  }
+
   @Override
   public String getProductName() {
     if (creator.getDataClass() == TrsIoFirmware.class) {
@@ -81,6 +134,47 @@ public class FirmwareManagementImpl<T extends Firmware> implements FirmwareManag
     return "Unknown product";
   }
 
+  /**
+   * Creates deltas from the most recent previous versions to the newly added one. Patches that
+   * would not be smaller than the full image are not stored; devices fall back to the full
+   * firmware in that case.
+   */
+  private void createPatches(int revision, int newVersion, byte[] newData) {
+    if (newData.length > FirmwareDelta.MAX_TARGET_LENGTH) {
+      LOG.warning(String.format("Image of version %d is too large for deltas.", newVersion));
+      return;
+    }
+    List<FirmwarePatch> patches = new ArrayList<>();
+    for (int from = Math.max(1, newVersion - MAX_PATCH_SOURCES); from < newVersion; ++from) {
+      Optional<byte[]> oldData = getFirmware(revision, from);
+      if (!oldData.isPresent()) {
+        continue;
+      }
+      byte[] delta = FirmwareDelta.create(oldData.get(), newData);
+      if (delta.length >= newData.length) {
+        LOG.info(String.format("Delta %d->%d is not smaller than the image, skipping.",
+            from, newVersion));
+        continue;
+      }
+      // Never hand out a patch that we could not apply ourselves.
+      if (!Arrays.equals(FirmwareDelta.apply(oldData.get(), delta), newData)) {
+        LOG.severe(String.format("Delta %d->%d does not reproduce the image.", from, newVersion));
+        continue;
+      }
+      LOG.info(String.format("Created delta %d->%d with %d bytes (full image %d bytes).",
+          from, newVersion, delta.length, newData.length));
+      patches.add(new FirmwarePatch(getProductKey(), revision, from, newVersion, delta));
+    }
+    if (!patches.isEmpty()) {
+      ofy().save().entities(patches).now();
+    }
+  }
+
+  /** Used to keep the patches of the different products apart. */
+  private String getProductKey() {
+    return creator.getDataClass().getSimpleName();
+  }
+
   public static class FirmwareManagementCreator implements Creator {
 
     @Override
@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.card;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * A precomputed delta between two firmware versions of the same product and revision. See
+ * {@link FirmwareDelta} for the format of the data.
+ */
+@Entity
+@Cache
+public class FirmwarePatch {
+
+  @Id public String id;
+
+  /** The product this patch is for, e.g. "TrsIoFirmware". */
+  public String product;
+
+  public int revision;
+
+  public int fromVersion;
+
+  public int toVersion;
+
+  /** Will become a GAE blob structure. */
+  public byte[] data;
+
+  FirmwarePatch() {}
+
+  public FirmwarePatch(String product, int revision, int fromVersion, int toVersion, byte[] data) {
+    this.id = createId(product, revision, fromVersion, toVersion);
+    this.product = product;
+    this.revision = revision;
+    this.fromVersion = fromVersion;
+    this.toVersion = toVersion;
+    this.data = data;
+  }
+
+  /** Create a key for the patch between the two given versions. */
+  public static Key<FirmwarePatch> key(
+      String product, int revision, int fromVersion, int toVersion) {
+    return Key.create(FirmwarePatch.class, createId(product, revision, fromVersion, toVersion));
+  }
+
+  private static String createId(String product, int revision, int fromVersion, int toVersion) {
+    return String.format("%s-%d-%d-%d", product, revision, fromVersion, toVersion);
+  }
+}
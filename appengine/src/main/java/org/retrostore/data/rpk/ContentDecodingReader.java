@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.rpk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+/**
+ * Sits between the RPK stream and the JSON reader and decodes the Base64 string values of all
+ * "content" keys while they are being read. The JSON reader only sees a short placeholder
+ * instead, which {@link #takeContent(String)} turns into the decoded bytes. This way the encoded
+ * content is never held in memory as a whole.
+ *
+ * <p>A read stops in front of every content value, so the JSON reader has consumed everything
+ * before it by the time the value is decoded. Only one decoded content, of at most
+ * {@link #MAX_CONTENT_SIZE} bytes, is therefore held at a time. It is dropped when the next one
+ * is decoded, whether it was taken or not.
+ *
+ * <p>Only as much of the JSON syntax is tracked as is needed to tell keys apart from other
+ * strings. Everything else is passed on unchanged, so the JSON reader still validates the input.
+ */
+final class ContentDecodingReader extends Reader {
+  private static final Logger LOG = Logger.getLogger("RpkContent");
+  private static final String CONTENT_KEY = "content";
+  /** The largest decoded content that is accepted. Larger ones fail the whole RPK. */
+  static final int MAX_CONTENT_SIZE = 8 * 1024 * 1024;
+
+  private enum State {
+    /** Nothing of interest seen. */
+    NONE,
+    /** The last string was the content key. */
+    AFTER_KEY,
+    /** The content key and a colon were seen, its value is next. */
+    BEFORE_VALUE
+  }
+
+  private final Reader mIn;
+  /** The last decoded content. Null if it was taken or was not valid Base64. */
+  private byte[] mContent;
+  /** The placeholder of {@link #mContent}, counting up from zero. */
+  private int mContentIndex = -1;
+  /** The opening quote of a content value was just read, its value comes next. */
+  private boolean mAtContent;
+  /** The last string read, as long as it can still be the content key. */
+  private final StringBuilder mString = new StringBuilder();
+  private State mState = State.NONE;
+  private boolean mInString;
+  private boolean mEscaped;
+  /** A placeholder that still has to be handed to the JSON reader. */
+  private String mPending = "";
+  private int mPendingPos;
+
+  ContentDecodingReader(Reader in) {
+    mIn = in;
+  }
+
+  /**
+   * Returns the content a placeholder stands for, and forgets it.
+   *
+   * @param placeholder the string value the JSON reader returned for a content key.
+   * @return The decoded content, or null if there is none or it was not valid Base64.
+   */
+  byte[] takeContent(String placeholder) {
+    if (!Integer.toString(mContentIndex).equals(placeholder)) {
+      return null;
+    }
+    byte[] content = mContent;
+    mContent = null;
+    return content;
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int length) throws IOException {
+    int count = 0;
+    while (count < length) {
+      if (mAtContent && count > 0) {
+        // Let the JSON reader catch up before the content is decoded.
+        return count;
+      }
+      int c = readChar();
+      if (c < 0) {
+        return count > 0 ? count : -1;
+      }
+      buffer[offset + count++] = (char) c;
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    mIn.close();
+  }
+
+  private int readChar() throws IOException {
+    if (mAtContent) {
+      mAtContent = false;
+      mContent = null;
+      mContent = decodeString();
+      mPending = ++mContentIndex + "\"";
+      mPendingPos = 0;
+    }
+    if (mPendingPos < mPending.length()) {
+      return mPending.charAt(mPendingPos++);
+    }
+    int c = mIn.read();
+    if (c < 0) {
+      return c;
+    }
+    if (mInString) {
+      if (mEscaped) {
+        mEscaped = false;
+        // Escaped keys are never taken for the content key.
+        mString.setLength(CONTENT_KEY.length() + 1);
+      } else if (c == '\\') {
+        mEscaped = true;
+      } else if (c == '"') {
+        mInString = false;
+        mState = CONTENT_KEY.contentEquals(mString) ? State.AFTER_KEY : State.NONE;
+      } else if (mString.length() <= CONTENT_KEY.length()) {
+        mString.append((char) c);
+      }
+      return c;
+    }
+
+    if (c == '"') {
+      if (mState == State.BEFORE_VALUE) {
+        mState = State.NONE;
+        mAtContent = true;
+        return '"';
+      }
+      mInString = true;
+      mString.setLength(0);
+      mState = State.NONE;
+    } else if (c == ':') {
+      mState = mState == State.AFTER_KEY ? State.BEFORE_VALUE : State.NONE;
+    } else if (!Character.isWhitespace(c)) {
+      mState = State.NONE;
+    }
+    return c;
+  }
+
+  /** Decodes the rest of the current string value, including its closing quote. */
+  private byte[] decodeString() throws IOException {
+    StringValueStream value = new StringValueStream();
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    try (InputStream in = Base64.getDecoder().wrap(value)) {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        if (decoded.size() + read > MAX_CONTENT_SIZE) {
+          throw value.fail(new IOException(
+              "Media image content is larger than " + MAX_CONTENT_SIZE + " bytes."));
+        }
+        decoded.write(buffer, 0, read);
+      }
+      // The decoder stops after the padding, anything left in the value is not valid.
+      if (value.read() >= 0) {
+        throw new IOException("Data after Base64 padding.");
+      }
+    } catch (IOException ex) {
+      if (value.mFailure != null) {
+        throw value.mFailure;
+      }
+      LOG.warning("Media image content is not valid Base64, ignoring it.");
+      value.skipRest();
+      return null;
+    }
+    return decoded.size() > 0 ? decoded.toByteArray() : null;
+  }
+
+  /** Reads the characters of a JSON string value up to its closing quote, as ASCII bytes. */
+  private class StringValueStream extends InputStream {
+    private boolean mEnded;
+    /** Set if reading the underlying stream failed, as opposed to the value not being Base64. */
+    private IOException mFailure;
+
+    @Override
+    public int read() throws IOException {
+      if (mEnded) {
+        return -1;
+      }
+      int c = next();
+      if (c == '"') {
+        mEnded = true;
+        return -1;
+      }
+      if (c == '\\') {
+        // Some encoders escape the slash, which is part of the Base64 alphabet.
+        c = next();
+        if (c != '/') {
+          throw new IOException("Unexpected escape sequence in Base64 content.");
+        }
+      }
+      // Anything that is not ASCII cannot be Base64. Pass on a character the decoder rejects.
+      return c < 0x80 ? c : '*';
+    }
+
+    /** Does not close the underlying reader, which continues after the value. */
+    @Override
+    public void close() {}
+
+    /** Fails the whole RPK, rather than only ignoring this value. */
+    IOException fail(IOException failure) {
+      mFailure = failure;
+      return failure;
+    }
+
+    void skipRest() throws IOException {
+      boolean escaped = false;
+      while (!mEnded) {
+        int c = next();
+        if (escaped) {
+          escaped = false;
+        } else if (c == '\\') {
+          escaped = true;
+        } else if (c == '"') {
+          mEnded = true;
+        }
+      }
+    }
+
+    private int next() throws IOException {
+      int c;
+      try {
+        c = mIn.read();
+      } catch (IOException ex) {
+        mFailure = ex;
+        throw ex;
+      }
+      if (c < 0) {
+        mFailure = new IOException("Unterminated string in RPK.");
+        throw mFailure;
+      }
+      return c;
+    }
+  }
+}
@@ -57,6 +57,9 @@ public class RpkData {
 
   public static class MediaImage {
     public String ext;
+    /** The Base64 encoded content. Not kept by the {@link RpkParser}, see {@link #data}. */
     public String content;
+    /** The decoded content, as filled in by the {@link RpkParser}. */
+    public transient byte[] data;
   }
 }
@@ -0,0 +1,470 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.rpk;
+
+import com.google.common.base.Strings;
+import org.retrostore.data.BlobstoreWrapper;
+import org.retrostore.data.app.AppManagement;
+import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.data.user.RetroStoreUser;
+import org.retrostore.data.user.UserManagement;
+import org.retrostore.request.RequestData;
+import org.retrostore.resources.ScreenshotValidator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Imports a batch of RPKs.
+ *
+ * <p>Files are read one after the other, straight from the upload. Each media image and
+ * screenshot is written as soon as it has been decoded, so for the file being read only one of
+ * them, of at most {@link ContentDecodingReader#MAX_CONTENT_SIZE} bytes, is held in memory,
+ * besides the metadata and read buffers. The exception are media that come before the app ID in
+ * the file, which RPKs written by the store never do. They are held until the ID has been read,
+ * up to the same limit in total.
+ *
+ * <p>The files are then imported in chunks. Authors, publishers and existing apps are resolved
+ * once for the whole chunk, after which all apps of the chunk are saved together.
+ *
+ * <p>Existing apps are changed on a copy. Their old media and screenshots are only deleted once
+ * the new version has been saved, and the new ones are deleted again if the import fails. A file
+ * that fails in any stage does not stop the import of the others.
+ */
+public class RpkImporter {
+  private static final Logger LOG = Logger.getLogger("RpkImporter");
+  /** How many files are resolved and saved together. */
+  private static final int FILES_PER_CHUNK = 16;
+  private static final int MAX_DISKS = new AppStoreItem.Trs80Extension().disk.length;
+  private static final String PLATFORM_TRS80 = "TRS-80";
+
+  private final AppManagement mAppManagement;
+  private final UserManagement mUserManagement;
+  private final BlobstoreWrapper mBlobstore;
+
+  public RpkImporter(AppManagement appManagement, UserManagement userManagement,
+                     BlobstoreWrapper blobstore) {
+    mAppManagement = checkNotNull(appManagement);
+    mUserManagement = checkNotNull(userManagement);
+    mBlobstore = checkNotNull(blobstore);
+  }
+
+  /** The outcome of importing a single file. */
+  public static class Result {
+    public final String filename;
+    public final boolean success;
+    /** The ID of the imported app, or why the import failed. */
+    public final String message;
+
+    private Result(String filename, boolean success, String message) {
+      this.filename = filename;
+      this.success = success;
+      this.message = message;
+    }
+  }
+
+  /** Carries one file through the stages of the import. */
+  private static class Item {
+    final String filename;
+    /** Has no media content, that is written while the file is read. */
+    RpkData data;
+    AppStoreItem app;
+    /** Set as soon as a stage fails for this item. Later stages then skip it. */
+    String error;
+    /** Media read before the app ID was known, and their total size. */
+    final List<Media> pendingMedia = new ArrayList<>();
+    int pendingSize;
+    /** The IDs of the written disk images, and of the other written media images by slot. */
+    final Long[] diskIds = new Long[MAX_DISKS];
+    final Map<RpkParser.MediaSlot, Long> mediaIds = new EnumMap<>(RpkParser.MediaSlot.class);
+    /** Written for the new version of the app. Deleted again if the import fails. */
+    final List<Long> newMedia = new ArrayList<>();
+    final List<String> newScreenshots = new ArrayList<>();
+    /** Referenced by the previous version of the app. Deleted once the new version is saved. */
+    final List<Long> oldMedia = new ArrayList<>();
+    final List<String> oldScreenshots = new ArrayList<>();
+
+    Item(String filename) {
+      this.filename = filename;
+    }
+
+    boolean ok() {
+      return error == null;
+    }
+  }
+
+  /** A media image from an RPK. */
+  private static class Media {
+    final RpkParser.MediaSlot slot;
+    final int index;
+    final String ext;
+    final byte[] data;
+
+    Media(RpkParser.MediaSlot slot, int index, RpkData.MediaImage image) {
+      this.slot = slot;
+      this.index = index;
+      this.ext = image.ext;
+      this.data = image.data;
+    }
+  }
+
+  /**
+   * Imports all RPK files uploaded with the request.
+   *
+   * @param requestData the upload request. Its files are streamed.
+   * @return The result for every file, in the order they were uploaded.
+   * @throws IOException if the upload cannot be read. Files imported before are kept.
+   */
+  public List<Result> importAll(RequestData requestData) throws IOException {
+    List<Result> results = new ArrayList<>();
+    List<Item> chunk = new ArrayList<>();
+    try {
+      requestData.streamFiles((filename, content) -> {
+        chunk.add(readFile(filename, content));
+        // Chunks are imported in order, so later files still replace earlier ones with the same
+        // app.
+        if (chunk.size() == FILES_PER_CHUNK) {
+          importChunk(chunk, results);
+          chunk.clear();
+        }
+      });
+    } catch (IOException ex) {
+      for (Item item : chunk) {
+        deleteMedia(item.newMedia, item.newScreenshots);
+      }
+      throw ex;
+    }
+    importChunk(chunk, results);
+    return results;
+  }
+
+  private void importChunk(List<Item> items, List<Result> results) {
+    dedupeAppIds(items);
+    resolve(items);
+    items.forEach(RpkImporter::useMedia);
+    saveApps(items);
+
+    for (Item item : items) {
+      if (item.ok()) {
+        LOG.info(String.format("Imported '%s' as app '%s'.", item.filename, item.app.id));
+        results.add(new Result(item.filename, true, item.app.id));
+      } else {
+        deleteMedia(item.newMedia, item.newScreenshots);
+        results.add(new Result(item.filename, false, item.error));
+      }
+    }
+  }
+
+  /**
+   * Stage 1: Parses the file, writes its media and checks everything that does not need the
+   * datastore.
+   */
+  private Item readFile(String filename, InputStream content) {
+    Item item = new Item(filename);
+    try {
+      item.data = RpkParser.parse(content,
+          (data, slot, index, image) -> storeMedia(item, data, new Media(slot, index, image)));
+      if (!item.pendingMedia.isEmpty() && !Strings.isNullOrEmpty(item.data.app.id)) {
+        storeMedia(item, item.data, null);
+      }
+    } catch (IOException | IllegalStateException ex) {
+      LOG.log(Level.WARNING, "Cannot parse JSON", ex);
+      return fail(item, "Cannot parse JSON: " + ex.getMessage());
+    } catch (RuntimeException ex) {
+      LOG.log(Level.SEVERE, "Cannot store media for " + filename, ex);
+      return fail(item, "Cannot store media: " + ex.getMessage());
+    }
+
+    RpkData data = item.data;
+    if (!PLATFORM_TRS80.equals(data.app.platform)) {
+      return fail(item, "Unsupported platform.");
+    }
+    if (Strings.isNullOrEmpty(data.app.id)) {
+      return fail(item, "RpkData has no app ID.");
+    }
+    if (Strings.isNullOrEmpty(data.app.author)) {
+      return fail(item, "RpkData has no author.");
+    }
+    if (Strings.isNullOrEmpty(data.publisher.email)) {
+      return fail(item, "RpkData has no publisher e-mail.");
+    }
+    try {
+      Integer.parseInt(data.app.year_published);
+      AppStoreItem.ListingCategory.valueOf(data.app.categories);
+      AppStoreItem.Model.valueOf(data.trs.model);
+    } catch (IllegalArgumentException | NullPointerException ex) {
+      return fail(item, "Invalid year, category or model: " + ex.getMessage());
+    }
+    LOG.info(String.format("Parsed '%s' (app '%s'), stored %d media images and %d screenshots.",
+        filename, data.app.id, item.newMedia.size(), item.newScreenshots.size()));
+    return item;
+  }
+
+  /**
+   * Writes a media image or screenshot of the app, along with any that were held because they
+   * came before the app ID.
+   *
+   * @param media the media to write, or null to only write the held ones.
+   */
+  private void storeMedia(Item item, RpkData data, Media media) throws IOException {
+    if (media != null && media.slot == RpkParser.MediaSlot.DISK && media.index >= MAX_DISKS) {
+      throw new IOException("Too many disk images.");
+    }
+    String appId = data.app.id;
+    if (Strings.isNullOrEmpty(appId)) {
+      item.pendingSize += media.data.length;
+      if (item.pendingSize > ContentDecodingReader.MAX_CONTENT_SIZE) {
+        throw new IOException("Too many media images before the app ID.");
+      }
+      item.pendingMedia.add(media);
+      return;
+    }
+    for (Media pending : item.pendingMedia) {
+      writeMedia(item, appId, pending);
+    }
+    item.pendingMedia.clear();
+    if (media != null) {
+      writeMedia(item, appId, media);
+    }
+  }
+
+  private void writeMedia(Item item, String appId, Media media) {
+    String name;
+    switch (media.slot) {
+      case SCREENSHOT:
+        // The format is taken from the data itself, the extension might not match.
+        Optional<ScreenshotValidator.ImageInfo> info =
+            ScreenshotValidator.getImageInfo(length -> media.data);
+        if (info.isPresent()) {
+          mBlobstore.writeScreenshot(appId, media.data, info.get().contentType)
+              .ifPresent(item.newScreenshots::add);
+        }
+        return;
+      case DISK:
+        name = String.format("disk_%d.%s", media.index, media.ext);
+        break;
+      case COMMAND:
+        name = String.format("command.%s", media.ext);
+        break;
+      case CASSETTE:
+        name = String.format("casette.%s", media.ext);
+        break;
+      case BASIC:
+        name = String.format("basic.%s", media.ext);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown media slot " + media.slot);
+    }
+    long id = mAppManagement.addMediaImage(appId, name, media.data);
+    item.newMedia.add(id);
+    if (media.slot == RpkParser.MediaSlot.DISK) {
+      item.diskIds[media.index] = id;
+    } else {
+      item.mediaIds.put(media.slot, id);
+    }
+  }
+
+  /** If the same app is contained in multiple files of a chunk, the last file wins. */
+  private static void dedupeAppIds(List<Item> items) {
+    Map<String, Item> byAppId = new HashMap<>();
+    for (Item item : items) {
+      if (!item.ok()) {
+        continue;
+      }
+      Item previous = byAppId.put(item.data.app.id, item);
+      if (previous != null) {
+        fail(previous, "Superseded by a later file with the same app ID.");
+      }
+    }
+  }
+
+  /**
+   * Stage 2: Looks up everything shared between files once for the whole chunk. If that fails,
+   * the authors and publishers are looked up again for each file, so that only the files they
+   * fail for are not imported.
+   */
+  private void resolve(List<Item> items) {
+    Set<String> authors = new HashSet<>();
+    Map<String, RetroStoreUser> publishers = new LinkedHashMap<>();
+    for (Item item : items) {
+      if (item.ok()) {
+        authors.add(item.data.app.author);
+        publishers.putIfAbsent(item.data.publisher.email, getPublisher(item.data));
+      }
+    }
+    if (publishers.isEmpty()) {
+      return;
+    }
+
+    Map<String, Long> authorIds;
+    try {
+      authorIds = mAppManagement.ensureAuthorsExist(authors);
+      // Publishers that do not have an account yet get one.
+      mUserManagement.addUsersIfMissing(publishers.values());
+    } catch (RuntimeException ex) {
+      LOG.log(Level.WARNING, "Cannot resolve authors and publishers, trying each file.", ex);
+      authorIds = null;
+    }
+
+    for (Item item : items) {
+      if (!item.ok()) {
+        continue;
+      }
+      try {
+        resolveItem(item, authorIds);
+      } catch (RuntimeException ex) {
+        LOG.log(Level.SEVERE, "Cannot resolve app for " + item.filename, ex);
+        fail(item, "Cannot resolve app, author or publisher: " + ex.getMessage());
+      }
+    }
+  }
+
+  /** @param authorIds the IDs of all authors, or null if they still have to be looked up. */
+  private void resolveItem(Item item, Map<String, Long> authorIds) {
+    RpkData data = item.data;
+    if (authorIds == null) {
+      authorIds = mAppManagement.ensureAuthorsExist(Collections.singleton(data.app.author));
+      mUserManagement.addUsersIfMissing(Collections.singletonList(getPublisher(data)));
+    }
+    // The cached app must not change before the new version is saved.
+    AppStoreItem app = mAppManagement.getAppById(data.app.id)
+        .map(AppStoreItem::copy)
+        .orElseGet(() -> new AppStoreItem(data.app.id));
+    app.listing.name = data.app.name;
+    app.listing.versionString = data.app.version;
+    app.listing.description = data.app.description;
+    app.listing.releaseYear = Integer.parseInt(data.app.year_published);
+    app.listing.categories.clear();
+    app.listing.categories.add(AppStoreItem.ListingCategory.valueOf(data.app.categories));
+    app.listing.authorId = authorIds.get(data.app.author);
+    app.listing.publisherEmail = data.publisher.email;
+    app.trs80Extension.model = AppStoreItem.Model.valueOf(data.trs.model);
+    item.app = app;
+  }
+
+  private static RetroStoreUser getPublisher(RpkData data) {
+    RetroStoreUser publisher = new RetroStoreUser();
+    publisher.email = data.publisher.email;
+    publisher.firstName = data.publisher.first_name;
+    publisher.lastName = data.publisher.last_name;
+    return publisher;
+  }
+
+  /**
+   * Stage 3: Lets the app reference the media images and screenshots that were written for it,
+   * instead of the old ones, which are remembered for deletion.
+   */
+  private static void useMedia(Item item) {
+    if (!item.ok()) {
+      return;
+    }
+    AppStoreItem.Trs80Extension trs80 = item.app.trs80Extension;
+    for (int i = 0; i < item.diskIds.length; ++i) {
+      if (item.diskIds[i] != null) {
+        item.oldMedia.add(trs80.disk[i]);
+        trs80.disk[i] = item.diskIds[i];
+      }
+    }
+    // TODO: No cassette support right now.
+    trs80.command = replaceMedia(item, RpkParser.MediaSlot.COMMAND, trs80.command);
+    trs80.cassette = replaceMedia(item, RpkParser.MediaSlot.CASSETTE, trs80.cassette);
+    trs80.basic = replaceMedia(item, RpkParser.MediaSlot.BASIC, trs80.basic);
+
+    // If we are updating an existing item, its screenshots are replaced.
+    item.oldScreenshots.addAll(item.app.screenshotsBlobKeys);
+    item.app.screenshotsBlobKeys.clear();
+    item.app.screenshotsBlobKeys.addAll(item.newScreenshots);
+  }
+
+  /** @return The ID of the media written for the slot, or the old ID if there is none. */
+  private static long replaceMedia(Item item, RpkParser.MediaSlot slot, long oldId) {
+    Long id = item.mediaIds.get(slot);
+    if (id == null) {
+      return oldId;
+    }
+    item.oldMedia.add(oldId);
+    return id;
+  }
+
+  /**
+   * Stage 4: Saves all successfully prepared apps at once. If that fails, they are saved one by
+   * one, so that only the apps that cannot be saved are not imported.
+   */
+  private void saveApps(List<Item> items) {
+    List<AppStoreItem> apps = new ArrayList<>();
+    for (Item item : items) {
+      if (item.ok()) {
+        apps.add(item.app);
+      }
+    }
+    try {
+      mAppManagement.addOrChangeApps(apps);
+      LOG.info(String.format("Saved %d apps.", apps.size()));
+    } catch (RuntimeException ex) {
+      LOG.log(Level.WARNING, "Cannot save apps, saving them one by one.", ex);
+      for (Item item : items) {
+        if (!item.ok()) {
+          continue;
+        }
+        try {
+          mAppManagement.addOrChangeApp(item.app);
+        } catch (RuntimeException itemEx) {
+          LOG.log(Level.SEVERE, "Cannot save app for " + item.filename, itemEx);
+          fail(item, "Cannot save app: " + itemEx.getMessage());
+        }
+      }
+    }
+    // Only now nothing references the previous media and screenshots anymore.
+    for (Item item : items) {
+      if (item.ok()) {
+        deleteMedia(item.oldMedia, item.oldScreenshots);
+      }
+    }
+  }
+
+  /** Deletes media images and screenshots. Failures are only logged, the outcome is decided. */
+  private void deleteMedia(List<Long> mediaIds, List<String> screenshotKeys) {
+    try {
+      mAppManagement.deleteMediaImages(mediaIds);
+      for (String blobKey : screenshotKeys) {
+        mBlobstore.deleteBlob(blobKey);
+      }
+    } catch (RuntimeException ex) {
+      LOG.log(Level.WARNING, "Cannot delete media.", ex);
+    }
+  }
+
+  private static Item fail(Item item, String error) {
+    LOG.warning(String.format("Import of '%s' failed: %s", item.filename, error));
+    item.error = error;
+    return item;
+  }
+}
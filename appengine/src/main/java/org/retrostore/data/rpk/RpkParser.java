@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.rpk;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RPKs token by token from a stream.
+ *
+ * <p>Unlike binding the whole file to {@link RpkData} with Gson, the RPK is never turned into a
+ * single string. The Base64 content of the media images is decoded while it streams by (see
+ * {@link ContentDecodingReader}), so no encoded content is ever held in memory. The decoded bytes
+ * are either kept in {@link RpkData.MediaImage#data}, or handed to a {@link MediaConsumer} one
+ * media image at a time.
+ */
+public final class RpkParser {
+  /** Where in the RPK a media image is found. */
+  public enum MediaSlot {
+    SCREENSHOT, DISK, COMMAND, CASSETTE, BASIC
+  }
+
+  /** Receives every media image that has content, as soon as it has been read. */
+  public interface MediaConsumer {
+    /**
+     * @param data  the RPK read so far. Fields that come after the media image are not set yet.
+     * @param slot  where the media image is found.
+     * @param index the index of the media image within its slot, for screenshots and disks.
+     * @param image the media image. Its data is dropped once this method returns.
+     * @throws IOException to stop parsing the RPK.
+     */
+    void accept(RpkData data, MediaSlot slot, int index, RpkData.MediaImage image)
+        throws IOException;
+  }
+
+  private final ContentDecodingReader mContents;
+  private final RpkData mData = new RpkData();
+  /** Null if the media data is to be kept. */
+  private final MediaConsumer mMediaConsumer;
+
+  private RpkParser(ContentDecodingReader contents, MediaConsumer mediaConsumer) {
+    mContents = contents;
+    mMediaConsumer = mediaConsumer;
+  }
+
+  /**
+   * Parses an RPK from the given stream, keeping the content of all media images. The stream is
+   * not closed.
+   *
+   * @throws IOException           if the stream cannot be read or does not contain valid JSON.
+   * @throws IllegalStateException if the JSON does not have the structure of an RPK.
+   */
+  public static RpkData parse(InputStream in) throws IOException {
+    return parse(in, null);
+  }
+
+  /**
+   * Parses an RPK from the given stream and hands each media image to the consumer as soon as it
+   * has been read. The returned data then has no media content. At most one decoded media image,
+   * of up to {@link ContentDecodingReader#MAX_CONTENT_SIZE} bytes, is held at a time. The stream
+   * is not closed.
+   *
+   * @throws IOException           if the stream cannot be read, does not contain valid JSON, has
+   *                               too large media images or the consumer fails.
+   * @throws IllegalStateException if the JSON does not have the structure of an RPK.
+   */
+  public static RpkData parse(InputStream in, MediaConsumer mediaConsumer) throws IOException {
+    ContentDecodingReader contents = new ContentDecodingReader(
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    JsonReader reader = new JsonReader(contents);
+    RpkParser parser = new RpkParser(contents, mediaConsumer);
+    RpkData data = parser.mData;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "app":
+          parser.readApp(reader, data.app);
+          break;
+        case "publisher":
+          parser.readPublisher(reader, data.publisher);
+          break;
+        case "trs":
+          parser.readTrs(reader, data.trs);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return data;
+  }
+
+  private void readApp(JsonReader reader, RpkData.AppData app) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "id":
+          app.id = nextString(reader);
+          break;
+        case "version":
+          app.version = nextString(reader);
+          break;
+        case "name":
+          app.name = nextString(reader);
+          break;
+        case "description":
+          app.description = nextString(reader);
+          break;
+        case "author":
+          app.author = nextString(reader);
+          break;
+        case "year_published":
+          app.year_published = nextString(reader);
+          break;
+        case "categories":
+          app.categories = nextString(reader);
+          break;
+        case "platform":
+          app.platform = nextString(reader);
+          break;
+        case "screenshot":
+          app.screenshot = readMediaImages(reader, MediaSlot.SCREENSHOT);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private void readPublisher(JsonReader reader, RpkData.Publisher publisher)
+      throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "first_name":
+          publisher.first_name = nextString(reader);
+          break;
+        case "last_name":
+          publisher.last_name = nextString(reader);
+          break;
+        case "email":
+          publisher.email = nextString(reader);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private void readTrs(JsonReader reader, RpkData.TrsExtension trs) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "model":
+          trs.model = nextString(reader);
+          break;
+        case "image":
+          readImage(reader, trs.image);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private void readImage(JsonReader reader, RpkData.Image image) throws IOException {
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "disk":
+          image.disk = readMediaImages(reader, MediaSlot.DISK);
+          break;
+        case "cmd":
+          image.cmd = readMediaImage(reader, MediaSlot.COMMAND, 0);
+          break;
+        case "cas":
+          image.cas = readMediaImage(reader, MediaSlot.CASSETTE, 0);
+          break;
+        case "bas":
+          image.bas = readMediaImage(reader, MediaSlot.BASIC, 0);
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private RpkData.MediaImage[] readMediaImages(JsonReader reader, MediaSlot slot)
+      throws IOException {
+    List<RpkData.MediaImage> images = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      images.add(readMediaImage(reader, slot, images.size()));
+    }
+    reader.endArray();
+    return images.toArray(new RpkData.MediaImage[0]);
+  }
+
+  private RpkData.MediaImage readMediaImage(JsonReader reader, MediaSlot slot, int index)
+      throws IOException {
+    RpkData.MediaImage image = new RpkData.MediaImage();
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return image;
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "ext":
+          image.ext = nextString(reader);
+          break;
+        case "content":
+          image.data = mContents.takeContent(nextString(reader));
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (mMediaConsumer != null && image.data != null) {
+      mMediaConsumer.accept(mData, slot, index, image);
+      image.data = null;
+    }
+    return image;
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.user;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remembers the account type of the current user for the lifetime of a single request, so that
+ * request servers can ask for it as often as they like.
+ *
+ * <p>A new instance must be created for every request. Not thread-safe.
+ */
+public class MemoizingUserService implements UserService {
+  private final UserService mDelegate;
+  private UserAccountType mAccountType;
+  private Boolean mHasAdmin;
+
+  public MemoizingUserService(UserService delegate) {
+    mDelegate = checkNotNull(delegate);
+  }
+
+  @Override
+  public boolean systemHasAdmin() {
+    if (mHasAdmin == null) {
+      mHasAdmin = mDelegate.systemHasAdmin();
+    }
+    return mHasAdmin;
+  }
+
+  @Override
+  public UserAccountType getForCurrentUser() {
+    if (mAccountType == null) {
+      mAccountType = mDelegate.getForCurrentUser();
+    }
+    return mAccountType;
+  }
+
+  @Override
+  public String createLoginURL(String url) {
+    return mDelegate.createLoginURL(url);
+  }
+}
@@ -16,11 +16,21 @@
 
 package org.retrostore.data.user;
 
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.users.User;
 import com.google.appengine.api.users.UserService;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+import org.retrostore.metrics.Trace;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static com.googlecode.objectify.ObjectifyService.ofy;
 
@@ -28,8 +38,19 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
  * Functionality to manage users.
  */
 public class UserManagement {
+  /**
+   * How long a resolved account type is trusted. Changes made on this instance invalidate the
+   * cache right away, this bounds how long other instances can see a stale type.
+   */
+  private static final long ACCOUNT_TYPE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  /**
+   * Once an admin exists, it is very rare for it to go away, so we remember that fact for the
+   * whole process and only query again after an admin might have been removed on this instance.
+   */
+  private static volatile boolean sHasAdmin = false;
 
   private final UserService userService;
+  private final Map<String, CachedAccountType> accountTypeCache = new ConcurrentHashMap<>();
 
   public UserManagement(UserService userService) {
     this.userService = userService;
@@ -43,8 +64,7 @@ public class UserManagement {
     if (!loggedInEmail.isPresent()) {
       return false;
     }
-    Optional<RetroStoreUser> user = getUserByEmail(loggedInEmail.get());
-    return user.filter(retroStoreUser -> retroStoreUser.type == UserAccountType.ADMIN).isPresent();
+    return getAccountType(loggedInEmail.get()) == UserAccountType.ADMIN;
   }
 
   /**
@@ -62,13 +82,21 @@ public class UserManagement {
    * @return Whether an admin exists in the system.
    */
   public boolean hasAdmin() {
-    List<RetroStoreUser> users = ofy().load().type(RetroStoreUser.class).list();
-    for (RetroStoreUser user : users) {
-      if (user.type == UserAccountType.ADMIN) {
-        return true;
-      }
+    if (sHasAdmin) {
+      return true;
     }
-    return false;
+    Key<RetroStoreUser> admin;
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "findAdmin")) {
+      admin = ofy().load()
+          .type(RetroStoreUser.class)
+          .filter("type", UserAccountType.ADMIN)
+          .limit(1)
+          .keys()
+          .first()
+          .now();
+    }
+    sHasAdmin = admin != null;
+    return sHasAdmin;
   }
 
   /**
@@ -76,7 +104,39 @@ public class UserManagement {
    * user with the given ID.
    */
   public void addOrChangeUser(RetroStoreUser user) {
-    ofy().save().entity(user).now();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "saveUser")) {
+      ofy().save().entity(user).now();
+    }
+    accountTypeCache.remove(user.email);
+    if (user.type != UserAccountType.ADMIN) {
+      // This user might have been the last admin.
+      sHasAdmin = false;
+    }
+  }
+
+  /**
+   * Adds all of the given users that do not exist yet, using one read and one write. Existing users
+   * are left unchanged.
+   */
+  public void addUsersIfMissing(Collection<RetroStoreUser> users) {
+    List<Key<RetroStoreUser>> keys = new ArrayList<>(users.size());
+    for (RetroStoreUser user : users) {
+      keys.add(RetroStoreUser.key(user.email));
+    }
+    Map<Key<RetroStoreUser>, RetroStoreUser> existing = ofy().load().keys(keys);
+
+    List<RetroStoreUser> missing = new ArrayList<>();
+    for (RetroStoreUser user : users) {
+      if (!existing.containsKey(RetroStoreUser.key(user.email))) {
+        missing.add(user);
+      }
+    }
+    if (!missing.isEmpty()) {
+      ofy().save().entities(missing).now();
+      for (RetroStoreUser user : missing) {
+        accountTypeCache.remove(user.email);
+      }
+    }
   }
 
   /**
@@ -86,6 +146,8 @@ public class UserManagement {
    */
   public void removeUser(String email) {
     ofy().delete().key(RetroStoreUser.key(email)).now();
+    accountTypeCache.remove(email);
+    sHasAdmin = false;
   }
 
   /**
@@ -95,11 +157,57 @@ public class UserManagement {
     return ofy().load().type(RetroStoreUser.class).list();
   }
 
+  /**
+   * Returns a page of users, ordered by email.
+   *
+   * <p>Only the keys are queried, the users themselves are then fetched by key, which is served
+   * from memcache for most of them.
+   *
+   * @param num    the maximum number of users to return.
+   * @param cursor the cursor returned with the previous page, if any.
+   * @throws IllegalArgumentException if the cursor is invalid.
+   */
+  public UserPage getUsers(int num, Optional<String> cursor) {
+    Query<RetroStoreUser> query = ofy().load().type(RetroStoreUser.class).limit(num);
+    if (cursor.isPresent()) {
+      query = query.startAt(Cursor.fromWebSafeString(cursor.get()));
+    }
+
+    List<Key<RetroStoreUser>> keys = new ArrayList<>(num);
+    QueryResultIterator<Key<RetroStoreUser>> iterator = query.keys().iterator();
+    while (iterator.hasNext()) {
+      keys.add(iterator.next());
+    }
+    // A short page means there is nothing left to fetch.
+    String nextCursor = keys.size() < num ? null : iterator.getCursor().toWebSafeString();
+    return new UserPage(new ArrayList<>(ofy().load().keys(keys).values()), nextCursor);
+  }
+
   /**
    * If it exists in the system, returns the user with the given email address.
    */
   public Optional<RetroStoreUser> getUserByEmail(String email) {
-    return Optional.ofNullable(ofy().load().key(RetroStoreUser.key(email)).now());
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getUserByEmail")) {
+      return Optional.ofNullable(ofy().load().key(RetroStoreUser.key(email)).now());
+    }
+  }
+
+  /**
+   * Returns the account type of the user with the given email address. Results are cached for a
+   * short amount of time since this is checked for almost every request.
+   *
+   * @return The type of the user, or {@link UserAccountType#NO_ACCOUNT} if the user does not exist.
+   */
+  public UserAccountType getAccountType(String email) {
+    long now = System.currentTimeMillis();
+    CachedAccountType cached = accountTypeCache.get(email);
+    if (cached != null && cached.expiresAtMillis > now) {
+      return cached.type;
+    }
+    UserAccountType type =
+        getUserByEmail(email).map(user -> user.type).orElse(UserAccountType.NO_ACCOUNT);
+    accountTypeCache.put(email, new CachedAccountType(type, now + ACCOUNT_TYPE_TTL_MILLIS));
+    return type;
   }
 
   public Optional<RetroStoreUser> getCurrentUser() {
@@ -109,4 +217,26 @@ public class UserManagement {
     }
     return getUserByEmail(systemUser.getEmail());
   }
+
+  private static class CachedAccountType {
+    final UserAccountType type;
+    final long expiresAtMillis;
+
+    CachedAccountType(UserAccountType type, long expiresAtMillis) {
+      this.type = type;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+
+  /** A page of users, as returned by {@link #getUsers(int, Optional)}. */
+  public static class UserPage {
+    public final List<RetroStoreUser> users;
+    /** Pass this in to get the next page. Null if there are no more users. */
+    public final String cursor;
+
+    UserPage(List<RetroStoreUser> users, String cursor) {
+      this.users = users;
+      this.cursor = cursor;
+    }
+  }
 }
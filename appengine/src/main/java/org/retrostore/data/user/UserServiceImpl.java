@@ -41,11 +41,7 @@ public class UserServiceImpl implements UserService {
     if (!loggedInEmail.isPresent()) {
       return UserAccountType.NOT_LOGGED_IN;
     }
-    Optional<RetroStoreUser> user = mUserManagement.getUserByEmail(loggedInEmail.get());
-    if (!user.isPresent()) {
-      return UserAccountType.NO_ACCOUNT;
-    }
-    return user.get().type;
+    return mUserManagement.getAccountType(loggedInEmail.get());
   }
 
   @Override
@@ -1,6 +1,7 @@
 package org.retrostore.data.xray;
 
 import com.google.appengine.repackaged.com.google.api.client.util.Sets;
+import org.retrostore.metrics.Trace;
 import org.retrostore.resources.MemcacheWrapper;
 
 import java.time.Duration;
@@ -29,13 +30,17 @@ public class StateManagementImpl implements StateManagement {
     // Get a random unused token between 100-999.
     // FIXME: Pick the oldest entry when all are taken!
     state.token = getUnusedToken();
-    ofy().save().entity(state).now();
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "saveSystemState")) {
+      ofy().save().entity(state).now();
+    }
     return state.token;
   }
 
   @Override
   public Optional<SystemState> getSystemState(long token) {
-    return Optional.ofNullable(ofy().load().key(SystemState.key(token)).now());
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "getSystemState")) {
+      return Optional.ofNullable(ofy().load().key(SystemState.key(token)).now());
+    }
   }
 
   private long getUnusedToken() {
@@ -66,11 +71,13 @@ public class StateManagementImpl implements StateManagement {
     for (int i = 100; i <= 999; ++i) {
       availableTokens.add((long) i);
     }
-    List<SystemState> states = ofy().load().type(SystemState.class).list();
-    for (SystemState s : states) {
-      // Allow expired states to be overwritten.
-      if ((System.currentTimeMillis() - s.addTimestamp) <= MAX_AGE) {
-        availableTokens.remove(s.token);
+    try (Trace.Span ignored = Trace.span(Trace.DATASTORE, "listSystemStates")) {
+      List<SystemState> states = ofy().load().type(SystemState.class).list();
+      for (SystemState s : states) {
+        // Allow expired states to be overwritten.
+        if ((System.currentTimeMillis() - s.addTimestamp) <= MAX_AGE) {
+          availableTokens.remove(s.token);
+        }
       }
     }
     return availableTokens;
@@ -1,5 +1,5 @@
 /*
- *  Copyright 2017, Sascha Häberling
+ *  Copyright 2026, Sascha Häberling
  *
  *  Licensed under the Apache License, Version 2.0 (the "License");
  *  you may not use this file except in compliance with the License.
@@ -14,22 +14,29 @@
  *  limitations under the License.
  */
 
-package org.retrostore.util;
+package org.retrostore.metrics;
 
-import com.google.common.base.Strings;
+import java.util.concurrent.atomic.LongAdder;
 
-import java.util.Base64;
-import java.util.Optional;
+/**
+ * A counter that only goes up. Increments from many threads do not contend, as each thread
+ * usually updates its own cell.
+ */
+public class Counter {
+  private final LongAdder mCount = new LongAdder();
+
+  /** Use {@link Metrics#counter}. */
+  Counter() {}
+
+  public void inc() {
+    mCount.increment();
+  }
+
+  public void add(long delta) {
+    mCount.add(delta);
+  }
 
-public class Base64Util {
-  public static Optional<byte[]> decode(String base64Str) {
-    if (Strings.isNullOrEmpty(base64Str)) {
-      return Optional.empty();
-    }
-    try {
-      return Optional.ofNullable(Base64.getDecoder().decode(base64Str));
-    } catch (IllegalArgumentException e) {
-      return Optional.empty();
-    }
+  public long get() {
+    return mCount.sum();
   }
 }
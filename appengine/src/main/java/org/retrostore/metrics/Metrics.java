@@ -0,0 +1,240 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The registry of all metrics of this instance, which can be exported in the Prometheus text
+ * format.
+ *
+ * <p>Metrics are created on first use and live for as long as the instance. Callers on hot paths
+ * should keep the returned metric in a field rather than looking it up every time.
+ */
+public final class Metrics {
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  /** The metrics by name. */
+  private static final Map<String, Family> sFamilies = new ConcurrentHashMap<>();
+
+  /** Requests by the class of the request server that served them. */
+  public static final CallMetrics REQUESTS = new CallMetrics("request", "a request");
+  /** Public API calls by their name. */
+  public static final CallMetrics API_CALLS = new CallMetrics("api_call", "an API call");
+  /** RPC calls of the frontend by their name. */
+  public static final CallMetrics RPC_CALLS = new CallMetrics("rpc_call", "an RPC call");
+
+  private Metrics() {}
+
+  private enum Type {
+    COUNTER("counter"), SUMMARY("summary");
+
+    final String str;
+
+    Type(String str) {
+      this.str = str;
+    }
+  }
+
+  /** All metrics with the same name, which only differ in their labels. */
+  private static class Family {
+    final String name;
+    final String help;
+    final Type type;
+    /** For summaries, what recorded values are multiplied with for the export. */
+    final double scale;
+    /** The metrics keyed by their formatted labels. */
+    final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    Family(String name, String help, Type type, double scale) {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+      this.scale = scale;
+    }
+  }
+
+  /**
+   * Returns the counter with the given name and labels.
+   *
+   * @param name   the name of the metric. Should end in '_total'.
+   * @param help   what the metric counts.
+   * @param labels pairs of label names and values.
+   */
+  public static Counter counter(String name, String help, String... labels) {
+    Family family = getFamily(name, help, Type.COUNTER, 1);
+    return (Counter) family.metrics.computeIfAbsent(formatLabels(labels), l -> new Counter());
+  }
+
+  /**
+   * Returns the histogram for durations with the given name and labels. Durations are recorded
+   * in nanoseconds and exported in seconds.
+   *
+   * @param name   the name of the metric. Should end in '_seconds'.
+   * @param help   what the metric measures.
+   * @param labels pairs of label names and values.
+   */
+  public static Histogram timer(String name, String help, String... labels) {
+    return histogram(name, help, 1 / NANOS_PER_SECOND, labels);
+  }
+
+  /**
+   * Returns the histogram with the given name and labels.
+   *
+   * @param name   the name of the metric, including its unit.
+   * @param help   what the metric measures.
+   * @param scale  recorded values are multiplied with this for the export, e.g. to convert them
+   *               to the unit in the name.
+   * @param labels pairs of label names and values.
+   */
+  public static Histogram histogram(String name, String help, double scale, String... labels) {
+    Family family = getFamily(name, help, Type.SUMMARY, scale);
+    return (Histogram) family.metrics.computeIfAbsent(formatLabels(labels), l -> new Histogram());
+  }
+
+  /**
+   * Returns the counter for lookups in a cache with the given result. The hit rate is the share
+   * of lookups with a result other than 'miss'.
+   *
+   * @param cache  the name of the cache.
+   * @param result where the value was found, e.g. 'memory' or 'memcache', or 'miss'.
+   */
+  public static Counter cacheLookups(String cache, String result) {
+    return counter("retrostore_cache_lookups_total", "Lookups in a cache, by result.",
+        "cache", cache, "result", result);
+  }
+
+  /** Writes all metrics in the Prometheus text format, sorted by name. */
+  public static void writePrometheus(Appendable out) throws IOException {
+    for (Family family : new TreeMap<>(sFamilies).values()) {
+      out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(family.name).append(' ').append(family.type.str).append('\n');
+      for (Map.Entry<String, Object> metric : new TreeMap<>(family.metrics).entrySet()) {
+        String labels = metric.getKey();
+        if (family.type == Type.COUNTER) {
+          writeSample(out, family.name, labels, ((Counter) metric.getValue()).get());
+        } else {
+          Histogram histogram = (Histogram) metric.getValue();
+          for (double quantile : QUANTILES) {
+            String quantileLabels = withLabel(labels, "quantile", String.valueOf(quantile));
+            writeSample(out, family.name, quantileLabels,
+                histogram.getQuantile(quantile) * family.scale);
+          }
+          writeSample(out, family.name + "_sum", labels, histogram.getSum() * family.scale);
+          writeSample(out, family.name + "_count", labels, histogram.getCount());
+        }
+      }
+    }
+  }
+
+  private static Family getFamily(String name, String help, Type type, double scale) {
+    Family family = sFamilies.computeIfAbsent(name, n -> new Family(n, help, type, scale));
+    checkArgument(family.type == type, "Metric '%s' exists with another type.", name);
+    return family;
+  }
+
+  private static void writeSample(Appendable out, String name, String labels, double value)
+      throws IOException {
+    out.append(name);
+    if (!labels.isEmpty()) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.append(String.valueOf((long) value));
+    } else {
+      out.append(String.format(Locale.US, "%.6g", value));
+    }
+    out.append('\n');
+  }
+
+  private static String formatLabels(String... labels) {
+    checkArgument(labels.length % 2 == 0, "Labels must be name/value pairs.");
+    String formatted = "";
+    for (int i = 0; i < labels.length; i += 2) {
+      formatted = withLabel(formatted, labels[i], labels[i + 1]);
+    }
+    return formatted;
+  }
+
+  private static String withLabel(String labels, String name, String value) {
+    String escaped = String.valueOf(value)
+        .replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    String label = String.format("%s=\"%s\"", name, escaped);
+    return labels.isEmpty() ? label : labels + "," + label;
+  }
+
+  /**
+   * The latency, response size and errors of one kind of call, e.g. API calls, each labeled
+   * with the name of the call.
+   */
+  public static class CallMetrics {
+    private final String mKind;
+    private final String mDescription;
+    private final Map<String, Call> mCalls = new ConcurrentHashMap<>();
+
+    private CallMetrics(String kind, String description) {
+      mKind = kind;
+      mDescription = description;
+    }
+
+    private class Call {
+      final Histogram duration;
+      final Histogram responseBytes;
+      final Counter clientErrors;
+      final Counter serverErrors;
+
+      Call(String name) {
+        String prefix = "retrostore_" + mKind;
+        duration = timer(prefix + "_duration_seconds",
+            "Time to serve " + mDescription + ".", "name", name);
+        responseBytes = histogram(prefix + "_response_bytes",
+            "Size of the response to " + mDescription + ".", 1, "name", name);
+        String errorsName = prefix + "_errors_total";
+        String errorsHelp = "Responses to " + mDescription + " with an error status.";
+        clientErrors = counter(errorsName, errorsHelp, "name", name, "status", "4xx");
+        serverErrors = counter(errorsName, errorsHelp, "name", name, "status", "5xx");
+      }
+    }
+
+    /**
+     * Records a call that was served.
+     *
+     * @param name       the name of the call.
+     * @param startNanos the {@link System#nanoTime()} at which serving the call started.
+     * @param bytes      the size of the response.
+     * @param status     the status code of the response.
+     */
+    public void record(String name, long startNanos, long bytes, int status) {
+      Call call = mCalls.computeIfAbsent(name, Call::new);
+      call.duration.recordSince(startNanos);
+      call.responseBytes.record(bytes);
+      if (status >= 500) {
+        call.serverErrors.inc();
+      } else if (status >= 400) {
+        call.clientErrors.inc();
+      }
+    }
+  }
+}
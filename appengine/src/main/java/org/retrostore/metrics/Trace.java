@@ -0,0 +1,338 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Records the datastore, memcache and other backend calls made while serving a request, as a tree
+ * of timed spans.
+ *
+ * <p>A trace is started for each request on the thread that serves it. Backend wrappers open a
+ * {@link Span} around every call, which is added to the trace of the current thread, if there is
+ * one. Work handed to other threads carries the trace along through {@link #capture()}.
+ *
+ * <p>When the request is done, the whole tree is logged if the request was slow, or if it made
+ * more backend calls than a request should, which usually means that something is loaded once per
+ * item of a list instead of for the list as a whole.
+ */
+public final class Trace {
+  private static final Logger LOG = Logger.getLogger("Trace");
+  private static final String PROP_SLOW_MILLIS = "retrostore.trace.slowMillis";
+  private static final String PROP_MAX_BACKEND_CALLS = "retrostore.trace.maxBackendCalls";
+  private static final long DEFAULT_SLOW_MILLIS = 1000;
+  private static final long DEFAULT_MAX_BACKEND_CALLS = 50;
+  /** Calls beyond this are still counted, but not kept in the tree. */
+  private static final int MAX_SPANS = 1000;
+
+  public static final String DATASTORE = "datastore";
+  public static final String MEMCACHE = "memcache";
+  public static final String SEARCH = "search";
+  public static final String IMAGES = "images";
+  public static final String BLOBSTORE = "blobstore";
+
+  private static final long sSlowNanos =
+      TimeUnit.MILLISECONDS.toNanos(getLongProperty(PROP_SLOW_MILLIS, DEFAULT_SLOW_MILLIS));
+  private static final long sMaxBackendCalls =
+      getLongProperty(PROP_MAX_BACKEND_CALLS, DEFAULT_MAX_BACKEND_CALLS);
+
+  /** The trace of the current thread and the span new spans are added to. */
+  private static final ThreadLocal<Position> sCurrent = new ThreadLocal<>();
+  /** Durations of backend calls by backend and operation, for all requests. */
+  private static final Map<String, Histogram> sDurations = new ConcurrentHashMap<>();
+
+  private final Node mRoot;
+  /** Number and duration of calls by operation. Guarded by 'this'. */
+  private final Map<String, long[]> mOperations = new LinkedHashMap<>();
+  private int mNumCalls;
+  private int mNumSpans;
+
+  private Trace(String name) {
+    mRoot = new Node(name, System.nanoTime());
+  }
+
+  /** Where on a thread new spans go. */
+  private static class Position {
+    final Trace trace;
+    final Node parent;
+
+    Position(Trace trace, Node parent) {
+      this.trace = trace;
+      this.parent = parent;
+    }
+  }
+
+  /** A span in the tree. */
+  private static class Node {
+    final String name;
+    final long startNanos;
+    volatile long durationNanos = -1;
+    /** Guarded by 'this', as tasks on other threads add to the same parent. */
+    final List<Node> children = new ArrayList<>();
+
+    Node(String name, long startNanos) {
+      this.name = name;
+      this.startNanos = startNanos;
+    }
+
+    synchronized void add(Node child) {
+      children.add(child);
+    }
+
+    synchronized List<Node> getChildren() {
+      return new ArrayList<>(children);
+    }
+  }
+
+  /** A backend call in progress. Closing it records its duration. */
+  public static class Span implements AutoCloseable {
+    private static final Span NOOP = new Span(null, null, null, null);
+
+    private final Position mPrevious;
+    private final Node mNode;
+    private final String mBackend;
+    private final String mOperation;
+
+    private Span(Position previous, Node node, String backend, String operation) {
+      mPrevious = previous;
+      mNode = node;
+      mBackend = backend;
+      mOperation = operation;
+    }
+
+    @Override
+    public void close() {
+      if (mPrevious == null) {
+        return;
+      }
+      long durationNanos = System.nanoTime() - mNode.startNanos;
+      mNode.durationNanos = durationNanos;
+      mPrevious.trace.recordCall(mBackend, mOperation, durationNanos);
+      sCurrent.set(mPrevious);
+    }
+  }
+
+  /** The position of a trace on the thread that captured it, to continue it on another thread. */
+  public static class Context {
+    private final Position mPosition;
+
+    private Context(Position position) {
+      mPosition = position;
+    }
+
+    /**
+     * Makes spans on the current thread go to the captured trace, until the returned scope is
+     * closed.
+     */
+    public Scope attach() {
+      Position previous = sCurrent.get();
+      if (mPosition != null) {
+        sCurrent.set(mPosition);
+      }
+      return new Scope(previous);
+    }
+  }
+
+  /** Restores the trace a thread had before {@link Context#attach()}. */
+  public static class Scope implements AutoCloseable {
+    private final Position mPrevious;
+
+    private Scope(Position previous) {
+      mPrevious = previous;
+    }
+
+    @Override
+    public void close() {
+      if (mPrevious == null) {
+        sCurrent.remove();
+      } else {
+        sCurrent.set(mPrevious);
+      }
+    }
+  }
+
+  /**
+   * Starts the trace of a request on the current thread. It has to be finished on the same thread.
+   *
+   * @param name describes the request, e.g. its URL.
+   */
+  public static Trace start(String name) {
+    Trace trace = new Trace(name);
+    sCurrent.set(new Position(trace, trace.mRoot));
+    return trace;
+  }
+
+  /**
+   * Opens a span for a backend call, to be closed when the call returns. Does nothing if the
+   * current thread is not serving a request.
+   *
+   * @param backend   the backend that is called, e.g. {@link #DATASTORE}.
+   * @param operation what is done, e.g. the name of the method that makes the call.
+   */
+  public static Span span(String backend, String operation) {
+    Position position = sCurrent.get();
+    if (position == null) {
+      return Span.NOOP;
+    }
+    Node node = new Node(backend + "." + operation, System.nanoTime());
+    if (position.trace.addSpan()) {
+      position.parent.add(node);
+    }
+    sCurrent.set(new Position(position.trace, node));
+    return new Span(position, node, backend, operation);
+  }
+
+  /** Captures the trace of the current thread, see {@link Context#attach()}. */
+  public static Context capture() {
+    return new Context(sCurrent.get());
+  }
+
+  /**
+   * Ends the trace and logs it if the request was slow or made too many backend calls.
+   *
+   * @param status the status code of the response.
+   */
+  public void finish(int status) {
+    sCurrent.remove();
+    long durationNanos = System.nanoTime() - mRoot.startNanos;
+    mRoot.durationNanos = durationNanos;
+
+    int numCalls;
+    String mostFrequent = "";
+    long mostFrequentCount = 0;
+    synchronized (this) {
+      numCalls = mNumCalls;
+      for (Map.Entry<String, long[]> operation : mOperations.entrySet()) {
+        if (operation.getValue()[0] > mostFrequentCount) {
+          mostFrequent = operation.getKey();
+          mostFrequentCount = operation.getValue()[0];
+        }
+      }
+    }
+    if (numCalls > sMaxBackendCalls) {
+      Metrics.counter("retrostore_traced_requests_total",
+          "Requests whose trace was logged, by reason.", "reason", "backend_calls").inc();
+      LOG.warning(String.format(
+          "Request '%s' (status %d) made %d backend calls, %d of them to %s. Load these for " +
+              "all items at once instead of one by one.%n%s",
+          mRoot.name, status, numCalls, mostFrequentCount, mostFrequent, format()));
+    } else if (durationNanos > sSlowNanos) {
+      Metrics.counter("retrostore_traced_requests_total",
+          "Requests whose trace was logged, by reason.", "reason", "slow").inc();
+      LOG.warning(String.format("Slow request '%s' (status %d) with %d backend calls.%n%s",
+          mRoot.name, status, numCalls, format()));
+    }
+  }
+
+  /** Whether there is room for another span in the tree. */
+  private synchronized boolean addSpan() {
+    return mNumSpans++ < MAX_SPANS;
+  }
+
+  private void recordCall(String backend, String operation, long durationNanos) {
+    String name = backend + "." + operation;
+    synchronized (this) {
+      mNumCalls++;
+      long[] stats = mOperations.computeIfAbsent(name, n -> new long[2]);
+      stats[0]++;
+      stats[1] += durationNanos;
+    }
+    sDurations.computeIfAbsent(name, n -> Metrics.timer("retrostore_backend_call_seconds",
+        "Duration of a call to a backend while serving a request.",
+        "backend", backend, "operation", operation)).record(durationNanos);
+  }
+
+  /** The span tree, followed by the number and total duration of calls per operation. */
+  private String format() {
+    StringBuilder out = new StringBuilder();
+    format(mRoot, 0, out);
+    out.append("Calls by operation:\n");
+    synchronized (this) {
+      for (Map.Entry<String, long[]> operation : mOperations.entrySet()) {
+        out.append(String.format("  %s: %d calls, %d ms%n", operation.getKey(),
+            operation.getValue()[0], TimeUnit.NANOSECONDS.toMillis(operation.getValue()[1])));
+      }
+      if (mNumSpans > MAX_SPANS) {
+        out.append(String.format("Only the first %d calls are in the tree.%n", MAX_SPANS));
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Appends the span and its children. Siblings with the same name are collapsed into one line,
+   * and only the children of the slowest of them are shown.
+   */
+  private void format(Node node, int depth, StringBuilder out) {
+    Map<String, List<Node>> byName = new LinkedHashMap<>();
+    for (Node child : node.getChildren()) {
+      byName.computeIfAbsent(child.name, n -> new ArrayList<>()).add(child);
+    }
+    appendIndent(depth, out);
+    out.append(String.format("%s @%d ms: %s%n",
+        node.name, TimeUnit.NANOSECONDS.toMillis(node.startNanos - mRoot.startNanos),
+        formatDuration(node.durationNanos)));
+    for (List<Node> siblings : byName.values()) {
+      if (siblings.size() == 1) {
+        format(siblings.get(0), depth + 1, out);
+        continue;
+      }
+      Node slowest = siblings.get(0);
+      long totalNanos = 0;
+      for (Node sibling : siblings) {
+        totalNanos += Math.max(0, sibling.durationNanos);
+        if (sibling.durationNanos > slowest.durationNanos) {
+          slowest = sibling;
+        }
+      }
+      appendIndent(depth + 1, out);
+      out.append(String.format("%s x%d: %s in total, slowest %s%n", slowest.name,
+          siblings.size(), formatDuration(totalNanos), formatDuration(slowest.durationNanos)));
+      for (Node child : slowest.getChildren()) {
+        format(child, depth + 2, out);
+      }
+    }
+  }
+
+  private static void appendIndent(int depth, StringBuilder out) {
+    for (int i = 0; i < depth; ++i) {
+      out.append("  ");
+    }
+  }
+
+  private static String formatDuration(long nanos) {
+    return nanos < 0
+        ? "unfinished"
+        : String.format("%.1f ms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  private static long getLongProperty(String name, long defaultValue) {
+    try {
+      return Long.parseLong(System.getProperty(name, String.valueOf(defaultValue)));
+    } catch (NumberFormatException ex) {
+      LOG.warning(String.format("Invalid value for '%s', using default: %s", name,
+          ex.getMessage()));
+      return defaultValue;
+    }
+  }
+}
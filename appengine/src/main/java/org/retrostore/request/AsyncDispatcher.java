@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves requests on a bounded pool of worker threads instead of the container thread, for
+ * requests that spend most of their time waiting for datastore, memcache and other services.
+ *
+ * <p>The container thread is released as soon as the work is handed off, so an instance can hold
+ * many more slow requests open than it has container threads. Each request has a deadline, after
+ * which it is answered with a 503 and its work is interrupted. The same happens when the client
+ * goes away while the request is served.
+ *
+ * <p>The runtime only provides virtual threads from Java 21 on, so this uses a fixed number of
+ * platform threads. If they are all busy and the queue is full, requests are served synchronously
+ * as before.
+ */
+public class AsyncDispatcher {
+  private static final Logger LOG = Logger.getLogger("AsyncDispatcher");
+  private static final String PROP_THREADS = "retrostore.async.threads";
+  private static final int DEFAULT_THREADS = 32;
+  private static final int QUEUE_SIZE = 256;
+
+  private final ExecutorService mExecutor;
+
+  /** The work of serving a request. */
+  public interface Work {
+    /** Serves the request, writing only to the given response. */
+    void run(HttpServletResponse response) throws IOException;
+  }
+
+  public AsyncDispatcher(int numThreads) {
+    mExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(QUEUE_SIZE),
+        new ThreadFactoryBuilder().setNameFormat("async-request-%d").setDaemon(true).build());
+  }
+
+  /** Creates a dispatcher configured through system properties (see appengine-web.xml). */
+  public static AsyncDispatcher fromSystemProperties() {
+    int numThreads = DEFAULT_THREADS;
+    try {
+      numThreads = Integer.parseInt(
+          System.getProperty(PROP_THREADS, String.valueOf(DEFAULT_THREADS)));
+    } catch (NumberFormatException ex) {
+      LOG.warning("Invalid async thread configuration, using default: " + ex.getMessage());
+    }
+    return new AsyncDispatcher(Math.max(1, numThreads));
+  }
+
+  /**
+   * Serves the request asynchronously, if the container supports it for this request.
+   *
+   * @param request        the request to serve.
+   * @param response       the response to the request.
+   * @param deadlineMillis how long serving the request may take.
+   * @param work           serves the request. Runs on a worker thread, and must write to the
+   *                       response it is given rather than to the one passed in here.
+   * @return Whether the work was handed off. If false, the caller has to serve the request.
+   */
+  public boolean dispatch(HttpServletRequest request, HttpServletResponse response,
+                          long deadlineMillis, Work work) {
+    if (!request.isAsyncSupported()) {
+      return false;
+    }
+    // App Engine API calls need the environment of the request they belong to.
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    AsyncContext asyncContext = request.startAsync(request, response);
+    asyncContext.setTimeout(deadlineMillis);
+    AtomicBoolean finished = new AtomicBoolean();
+    // Only one thread writes at a time. Once the request is finished otherwise, the work's writes
+    // are dropped.
+    GuardedResponse guardedResponse = new GuardedResponse(response);
+    Canceller canceller = new Canceller(finished, guardedResponse, request.getRequestURI());
+    asyncContext.addListener(canceller);
+
+    try {
+      canceller.setFuture(mExecutor.submit(() -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        try (Closeable ignored = ObjectifyService.begin()) {
+          work.run(guardedResponse);
+        } catch (IOException | RuntimeException ex) {
+          if (!finished.get()) {
+            LOG.log(Level.SEVERE, "Serving request failed.", ex);
+          }
+        } finally {
+          ApiProxy.clearEnvironmentForCurrentThread();
+          if (finished.compareAndSet(false, true)) {
+            asyncContext.complete();
+          }
+        }
+      }));
+    } catch (RejectedExecutionException ex) {
+      // The asynchronous cycle has started already, so the work runs here but still completes it.
+      LOG.warning("All async workers are busy, serving on the container thread.");
+      try {
+        work.run(guardedResponse);
+      } catch (IOException e) {
+        if (!finished.get()) {
+          LOG.log(Level.SEVERE, "Serving request failed.", e);
+        }
+      } finally {
+        if (finished.compareAndSet(false, true)) {
+          asyncContext.complete();
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Interrupts the work when the deadline passes or the client goes away. The work's response is
+   * closed first, so the response is not written to by two threads at once.
+   */
+  private static class Canceller implements AsyncListener {
+    private final AtomicBoolean mFinished;
+    private final GuardedResponse mGuardedResponse;
+    private final String mUrl;
+    private volatile Future<?> mFuture;
+
+    Canceller(AtomicBoolean finished, GuardedResponse guardedResponse, String url) {
+      mFinished = finished;
+      mGuardedResponse = guardedResponse;
+      mUrl = url;
+    }
+
+    void setFuture(Future<?> future) {
+      mFuture = future;
+    }
+
+    private void cancel() {
+      Future<?> future = mFuture;
+      if (future != null) {
+        future.cancel(true);
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      if (!mFinished.compareAndSet(false, true)) {
+        return;
+      }
+      LOG.warning(String.format("Request for '%s' exceeded its deadline.", mUrl));
+      boolean idle = mGuardedResponse.close();
+      cancel();
+      HttpServletResponse response = (HttpServletResponse) event.getAsyncContext().getResponse();
+      // If the work is in the middle of a write, the response is left to it.
+      if (idle && !response.isCommitted()) {
+        response.reset();
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+      event.getAsyncContext().complete();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      if (!mFinished.compareAndSet(false, true)) {
+        return;
+      }
+      LOG.info(String.format("Request for '%s' was aborted: %s", mUrl, event.getThrowable()));
+      mGuardedResponse.close();
+      cancel();
+      event.getAsyncContext().complete();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {}
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import com.google.appengine.api.blobstore.BlobstoreService;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * A response that keeps the status and body in memory instead of sending them, so that the
+ * output of a request can be embedded in another response.
+ *
+ * <p>Headers are dropped, as only the status and body are kept. Every method that would change
+ * the wrapped response is overridden, as it can be shared by responses that are captured on
+ * different threads, e.g. by a batch. Only methods that read its settings are delegated.
+ */
+public class CapturingResponse extends HttpServletResponseWrapper {
+  private final ByteArrayOutputStream mContent = new ByteArrayOutputStream();
+  private final ServletOutputStream mOutputStream = new ServletOutputStream() {
+    @Override
+    public void write(int b) {
+      mContent.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      mContent.write(b, off, len);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException("Captured responses are written synchronously.");
+    }
+  };
+  private final Responder mResponder;
+  private PrintWriter mWriter;
+  private int mStatus = SC_OK;
+
+  /** Use {@link Responder#capture()}. */
+  CapturingResponse(HttpServletResponse response, BlobstoreService blobstoreService) {
+    super(response);
+    // Not compressed, as it is embedded in a response that can be.
+    mResponder = new Responder(this, blobstoreService, Optional.empty());
+  }
+
+  /** Returns a responder that writes to this response. */
+  public Responder getResponder() {
+    return mResponder;
+  }
+
+  /** The status code that was set, 200 if none was. */
+  @Override
+  public int getStatus() {
+    return mStatus;
+  }
+
+  /** Returns everything that was written to the response. */
+  public byte[] getContent() {
+    if (mWriter != null) {
+      mWriter.flush();
+    }
+    return mContent.toByteArray();
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    return mOutputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() {
+    if (mWriter == null) {
+      mWriter = new PrintWriter(new OutputStreamWriter(mOutputStream, StandardCharsets.UTF_8));
+    }
+    return mWriter;
+  }
+
+  @Override
+  public void setStatus(int status) {
+    mStatus = status;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void setStatus(int status, String message) {
+    mStatus = status;
+  }
+
+  @Override
+  public void sendError(int status) {
+    mStatus = status;
+  }
+
+  @Override
+  public void sendError(int status, String message) {
+    mStatus = status;
+  }
+
+  @Override
+  public void sendRedirect(String location) {
+    mStatus = SC_FOUND;
+  }
+
+  @Override
+  public void setHeader(String name, String value) {}
+
+  @Override
+  public void addHeader(String name, String value) {}
+
+  @Override
+  public void setIntHeader(String name, int value) {}
+
+  @Override
+  public void addIntHeader(String name, int value) {}
+
+  @Override
+  public void setDateHeader(String name, long date) {}
+
+  @Override
+  public void addDateHeader(String name, long date) {}
+
+  @Override
+  public void addCookie(Cookie cookie) {}
+
+  @Override
+  public boolean containsHeader(String name) {
+    return false;
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return null;
+  }
+
+  @Override
+  public Collection<String> getHeaders(String name) {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public Collection<String> getHeaderNames() {
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void setContentType(String type) {}
+
+  @Override
+  public void setCharacterEncoding(String charset) {}
+
+  @Override
+  public void setContentLength(int length) {}
+
+  @Override
+  public void setContentLengthLong(long length) {}
+
+  @Override
+  public void setLocale(Locale locale) {}
+
+  @Override
+  public void setBufferSize(int size) {}
+
+  @Override
+  public void flushBuffer() {}
+
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+
+  @Override
+  public void reset() {
+    resetBuffer();
+    mStatus = SC_OK;
+  }
+
+  @Override
+  public void resetBuffer() {
+    if (mWriter != null) {
+      mWriter.flush();
+    }
+    mContent.reset();
+  }
+}
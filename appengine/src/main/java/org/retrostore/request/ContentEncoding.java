@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import com.google.common.base.Strings;
+import org.retrostore.util.FileStreaming;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The encodings in which responses can be compressed.
+ */
+public enum ContentEncoding {
+  GZIP("gzip") {
+    @Override
+    public OutputStream wrap(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out);
+    }
+  },
+  DEFLATE("deflate") {
+    @Override
+    public OutputStream wrap(OutputStream out) {
+      // HTTP's 'deflate' is the zlib format, which is what the default Deflater writes.
+      return new DeflaterOutputStream(out);
+    }
+  };
+
+  /** How many compressed variants of files are kept per encoding. */
+  private static final int MAX_FILE_VARIANTS = 32;
+
+  public final String str;
+
+  /**
+   * Compressed variants, keyed by the raw content they were created from. Content that is cached
+   * elsewhere, e.g. by the resource loader, is therefore only compressed once. Arrays are
+   * compared by identity, and an entry goes away together with its raw content.
+   */
+  private final Map<byte[], byte[]> mVariants = Collections.synchronizedMap(new WeakHashMap<>());
+  /**
+   * Compressed variants of large files, which are not kept in memory themselves. Their
+   * compressed variants are a lot smaller, and only exist for the few files that are compressible.
+   * Only the most recently used ones are kept.
+   */
+  private final Map<Path, byte[]> mFileVariants =
+      Collections.synchronizedMap(new LinkedHashMap<Path, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, byte[]> eldest) {
+          return size() > MAX_FILE_VARIANTS;
+        }
+      });
+
+  ContentEncoding(String str) {
+    this.str = str;
+  }
+
+  /**
+   * Picks the encoding to use for a response, from the value of the request's Accept-Encoding
+   * header.
+   *
+   * @return The encoding to use, or empty if the response should not be compressed.
+   */
+  public static Optional<ContentEncoding> negotiate(String acceptEncoding) {
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return Optional.empty();
+    }
+    String[] entries = acceptEncoding.split(",");
+    // A wildcard must not pick an encoding the client refused explicitly.
+    Set<String> rejected = new HashSet<>();
+    for (String entry : entries) {
+      String[] parts = entry.trim().split(";");
+      if (isRejected(parts)) {
+        rejected.add(parts[0].trim().toLowerCase(Locale.US));
+      }
+    }
+    for (String entry : entries) {
+      String[] parts = entry.trim().split(";");
+      String name = parts[0].trim();
+      if (isRejected(parts)) {
+        continue;
+      }
+      for (ContentEncoding encoding : values()) {
+        if (name.equalsIgnoreCase(encoding.str) ||
+            (name.equals("*") && !rejected.contains(encoding.str))) {
+          return Optional.of(encoding);
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Returns a stream that writes to the given output in this encoding. Closing it finishes the
+   * encoding and closes the given output.
+   */
+  public abstract OutputStream wrap(OutputStream out) throws IOException;
+
+  /** Returns the content in this encoding. The result is cached for the given array. */
+  public byte[] encode(byte[] content) {
+    byte[] encoded = mVariants.get(content);
+    if (encoded == null) {
+      encoded = compress(content);
+      mVariants.put(content, encoded);
+    }
+    return encoded;
+  }
+
+  /**
+   * Returns the content of the file in this encoding. The file is streamed through the
+   * compressor, and the result is cached for the file.
+   */
+  public byte[] encode(Path file) throws IOException {
+    byte[] encoded = mFileVariants.get(file);
+    if (encoded == null) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (OutputStream encoding = wrap(out)) {
+        FileStreaming.transfer(file, encoding);
+      }
+      encoded = out.toByteArray();
+      mFileVariants.put(file, encoded);
+    }
+    return encoded;
+  }
+
+  /** Returns the content in this encoding, without caching it. */
+  public byte[] compress(byte[] content) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+    try (OutputStream encoding = wrap(out)) {
+      encoding.write(content);
+    } catch (IOException ex) {
+      // Writing to memory does not throw.
+      throw new UncheckedIOException(ex);
+    }
+    return out.toByteArray();
+  }
+
+  /** Whether the entry was sent with 'q=0', which means the client does not accept it. */
+  private static boolean isRejected(String[] parts) {
+    for (int i = 1; i < parts.length; ++i) {
+      String param = parts[i].trim();
+      if (param.startsWith("q=")) {
+        try {
+          return Double.parseDouble(param.substring(2)) <= 0;
+        } catch (NumberFormatException ex) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
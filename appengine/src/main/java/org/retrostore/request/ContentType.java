@@ -19,9 +19,9 @@ package org.retrostore.request;
 /**
  * Resolves content types.
  */
-final class ContentType {
+public final class ContentType {
   /** Return a content type depending on the filename. */
-  static Responder.ContentType fromFilename(String filename) {
+  public static Responder.ContentType fromFilename(String filename) {
     filename = filename.toLowerCase();
     if (filename.endsWith(".html") || filename.endsWith(".htm")) {
       return Responder.ContentType.HTML;
@@ -35,6 +35,10 @@ final class ContentType {
       return Responder.ContentType.JPEG;
     } else if (filename.endsWith(".png")) {
       return Responder.ContentType.PNG;
+    } else if (filename.endsWith(".gif")) {
+      return Responder.ContentType.GIF;
+    } else if (filename.endsWith(".webp")) {
+      return Responder.ContentType.WEBP;
     } else if (filename.endsWith(".svg")) {
       return Responder.ContentType.SVG;
     } else {
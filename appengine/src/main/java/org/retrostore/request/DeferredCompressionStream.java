@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Writes a response body whose size is not known up front, compressing it only if it turns out
+ * to be large enough to be worth it.
+ *
+ * <p>Everything up to the threshold is buffered. Content that stays below it is sent as is, with
+ * its length. Beyond it, the buffer and everything after it is streamed through the encoder, so
+ * large bodies are never held in memory. Headers are set once this is decided, so they have to be
+ * complete before, and the stream has to be closed to send small bodies.
+ */
+class DeferredCompressionStream extends OutputStream {
+  private final HttpServletResponse mResponse;
+  private final Optional<ContentEncoding> mEncoding;
+  private final int mThreshold;
+  private ByteArrayOutputStream mBuffer;
+  /** Where content goes once the threshold was exceeded. */
+  private OutputStream mOut;
+
+  /**
+   * @param response  the response to write the body of.
+   * @param encoding  the encoding to use for large bodies, if the client accepts one.
+   * @param threshold bodies larger than this are compressed.
+   */
+  DeferredCompressionStream(HttpServletResponse response, Optional<ContentEncoding> encoding,
+                            int threshold) {
+    mResponse = response;
+    mEncoding = encoding;
+    mThreshold = threshold;
+    mBuffer = new ByteArrayOutputStream(threshold);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (mOut != null) {
+      mOut.write(b);
+      return;
+    }
+    mBuffer.write(b);
+    if (mBuffer.size() > mThreshold) {
+      startStreaming();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (mOut != null) {
+      mOut.write(b, off, len);
+      return;
+    }
+    mBuffer.write(b, off, len);
+    if (mBuffer.size() > mThreshold) {
+      startStreaming();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (mOut == null) {
+      mResponse.setContentLength(mBuffer.size());
+      mBuffer.writeTo(mResponse.getOutputStream());
+      mResponse.getOutputStream().close();
+    } else {
+      mOut.close();
+    }
+  }
+
+  private void startStreaming() throws IOException {
+    // Caches must not serve a compressed variant to clients that did not ask for it.
+    mResponse.addHeader("Vary", "Accept-Encoding");
+    mOut = mResponse.getOutputStream();
+    if (mEncoding.isPresent()) {
+      mResponse.setHeader("Content-Encoding", mEncoding.get().str);
+      mOut = mEncoding.get().wrap(mOut);
+    }
+    mBuffer.writeTo(mOut);
+    mBuffer = null;
+  }
+}
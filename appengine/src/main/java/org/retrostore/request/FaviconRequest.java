@@ -19,8 +19,6 @@ package org.retrostore.request;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
 
-import java.util.Optional;
-
 /**
  * Handles loading favicon related files. We make this its own request so that no matter which
  * request handler is being used (either for the admin backend or the main page), the favicon is
@@ -28,10 +26,10 @@ import java.util.Optional;
  */
 public class FaviconRequest implements Request {
   private static final String WEB_ROOT = "WEB-INF";
-  private final ResourceLoader mResourceLoader;
+  private final StaticAssets mStaticAssets;
 
   public FaviconRequest(ResourceLoader resourceLoader) {
-    mResourceLoader = resourceLoader;
+    mStaticAssets = new StaticAssets(resourceLoader);
   }
 
   @Override
@@ -46,10 +44,8 @@ public class FaviconRequest implements Request {
     if (!url.startsWith("/favicon")) {
       return false;
     }
-    Optional<byte[]> data = mResourceLoader.load(WEB_ROOT + url);
-    if (data.isPresent()) {
-      responder.respond(data.get(), ContentType.fromFilename(url));
-    } else {
+    if (!mStaticAssets.serve(WEB_ROOT + url, ContentType.fromFilename(url), requestData,
+        responder)) {
       responder.respondNotFound();
     }
     return true;
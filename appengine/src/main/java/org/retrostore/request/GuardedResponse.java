@@ -0,0 +1,283 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A response that can be closed from another thread, after which everything written to it is
+ * dropped. Servlet responses are not thread-safe, so this is what lets a request that exceeded
+ * its deadline be answered while its worker might still be writing.
+ *
+ * <p>Changes to the response are serialized by a lock. Closing only sets a flag and never waits
+ * for that lock, so a write that is stuck on a slow client does not hold up the closing thread.
+ * {@link #close()} tells that thread whether it may still use the wrapped response.
+ */
+class GuardedResponse extends HttpServletResponseWrapper {
+  private final ReentrantLock mLock = new ReentrantLock();
+  private final AtomicBoolean mClosed = new AtomicBoolean();
+  private ServletOutputStream mOutputStream;
+  private PrintWriter mWriter;
+
+  /** Changes the response. */
+  private interface Change {
+    void apply() throws IOException;
+  }
+
+  GuardedResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  /**
+   * Drops all further changes without waiting for one that is in progress.
+   *
+   * @return Whether no change was in progress. Only then may the caller change the wrapped
+   * response itself.
+   */
+  boolean close() {
+    mClosed.set(true);
+    // Changes check the flag under the lock, so none can start once the lock was free.
+    if (!mLock.tryLock()) {
+      return false;
+    }
+    mLock.unlock();
+    return true;
+  }
+
+  /** Applies the change if the response is not closed yet, otherwise fails with an exception. */
+  private void apply(Change change) throws IOException {
+    if (mClosed.get()) {
+      throw new IOException("The response was closed.");
+    }
+    mLock.lock();
+    try {
+      if (mClosed.get()) {
+        throw new IOException("The response was closed.");
+      }
+      change.apply();
+    } finally {
+      mLock.unlock();
+    }
+  }
+
+  /** Applies the change if the response is not closed yet, otherwise drops it. */
+  private void applyIfOpen(Runnable change) {
+    if (mClosed.get()) {
+      return;
+    }
+    mLock.lock();
+    try {
+      if (!mClosed.get()) {
+        change.run();
+      }
+    } finally {
+      mLock.unlock();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    mLock.lock();
+    try {
+      if (mOutputStream == null) {
+        ServletOutputStream out = super.getOutputStream();
+        mOutputStream = new ServletOutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            apply(() -> out.write(b));
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException {
+            apply(() -> out.write(b, off, len));
+          }
+
+          @Override
+          public void flush() throws IOException {
+            apply(out::flush);
+          }
+
+          @Override
+          public void close() throws IOException {
+            apply(out::close);
+          }
+
+          @Override
+          public boolean isReady() {
+            return out.isReady();
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+          }
+        };
+      }
+      return mOutputStream;
+    } finally {
+      mLock.unlock();
+    }
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    mLock.lock();
+    try {
+      if (mWriter == null) {
+        mWriter = new PrintWriter(new FilterWriter(super.getWriter()) {
+          @Override
+          public void write(int c) throws IOException {
+            apply(() -> super.write(c));
+          }
+
+          @Override
+          public void write(char[] cbuf, int off, int len) throws IOException {
+            apply(() -> super.write(cbuf, off, len));
+          }
+
+          @Override
+          public void write(String str, int off, int len) throws IOException {
+            apply(() -> super.write(str, off, len));
+          }
+
+          @Override
+          public void flush() throws IOException {
+            apply(super::flush);
+          }
+
+          @Override
+          public void close() throws IOException {
+            apply(super::close);
+          }
+        });
+      }
+      return mWriter;
+    } finally {
+      mLock.unlock();
+    }
+  }
+
+  @Override
+  public void sendError(int sc, String msg) throws IOException {
+    apply(() -> super.sendError(sc, msg));
+  }
+
+  @Override
+  public void sendError(int sc) throws IOException {
+    apply(() -> super.sendError(sc));
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    apply(() -> super.sendRedirect(location));
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    apply(super::flushBuffer);
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    applyIfOpen(() -> super.setStatus(sc));
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    applyIfOpen(() -> super.setHeader(name, value));
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    applyIfOpen(() -> super.addHeader(name, value));
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    applyIfOpen(() -> super.setIntHeader(name, value));
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    applyIfOpen(() -> super.addIntHeader(name, value));
+  }
+
+  @Override
+  public void setDateHeader(String name, long date) {
+    applyIfOpen(() -> super.setDateHeader(name, date));
+  }
+
+  @Override
+  public void addDateHeader(String name, long date) {
+    applyIfOpen(() -> super.addDateHeader(name, date));
+  }
+
+  @Override
+  public void addCookie(Cookie cookie) {
+    applyIfOpen(() -> super.addCookie(cookie));
+  }
+
+  @Override
+  public void setContentType(String type) {
+    applyIfOpen(() -> super.setContentType(type));
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+    applyIfOpen(() -> super.setCharacterEncoding(charset));
+  }
+
+  @Override
+  public void setContentLength(int len) {
+    applyIfOpen(() -> super.setContentLength(len));
+  }
+
+  @Override
+  public void setContentLengthLong(long len) {
+    applyIfOpen(() -> super.setContentLengthLong(len));
+  }
+
+  @Override
+  public void setLocale(Locale loc) {
+    applyIfOpen(() -> super.setLocale(loc));
+  }
+
+  @Override
+  public void setBufferSize(int size) {
+    applyIfOpen(() -> super.setBufferSize(size));
+  }
+
+  @Override
+  public void reset() {
+    applyIfOpen(super::reset);
+  }
+
+  @Override
+  public void resetBuffer() {
+    applyIfOpen(super::resetBuffer);
+  }
+}
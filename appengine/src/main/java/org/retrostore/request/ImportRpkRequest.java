@@ -16,42 +16,32 @@
 
 package org.retrostore.request;
 
-import com.google.common.base.Strings;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.common.escape.Escaper;
+import com.google.common.html.HtmlEscapers;
 import org.retrostore.data.BlobstoreWrapper;
 import org.retrostore.data.app.AppManagement;
-import org.retrostore.data.app.AppStoreItem;
-import org.retrostore.data.rpk.RpkData;
-import org.retrostore.data.user.RetroStoreUser;
+import org.retrostore.data.rpk.RpkImporter;
 import org.retrostore.data.user.UserAccountType;
 import org.retrostore.data.user.UserManagement;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
-import org.retrostore.util.Base64Util;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * A request that lets a user import RPKs from his disk.
  */
 public class ImportRpkRequest implements Request {
-  private static final Logger LOG = Logger.getLogger("ImportRpkRequest");
+  private static final Escaper HTML_ESCAPER = HtmlEscapers.htmlEscaper();
   private final ResourceLoader mResourceLoader;
-  private final AppManagement mAppManagement;
-  private final UserManagement mUserManagement;
-  private final BlobstoreWrapper mBlobstore;
+  private final RpkImporter mImporter;
 
   public ImportRpkRequest(ResourceLoader resourceLoader, AppManagement appManagement,
                           UserManagement userManagement, BlobstoreWrapper blobstore) {
     mResourceLoader = resourceLoader;
-    mAppManagement = appManagement;
-    mUserManagement = userManagement;
-    mBlobstore = blobstore;
+    mImporter = new RpkImporter(appManagement, userManagement, blobstore);
   }
 
   @Override
@@ -59,16 +49,17 @@ public class ImportRpkRequest implements Request {
     if (!requestData.getUrl().startsWith("/import")) {
       return false;
     }
-    if (userService.getForCurrentUser() != UserAccountType.USER &&
-        userService.getForCurrentUser() != UserAccountType.ADMIN &&
-        userService.getForCurrentUser() != UserAccountType.PUBLISHER) {
+    UserAccountType accountType = userService.getForCurrentUser();
+    if (accountType != UserAccountType.USER &&
+        accountType != UserAccountType.ADMIN &&
+        accountType != UserAccountType.PUBLISHER) {
       return false;
     }
 
     if (requestData.getType() == RequestData.Type.GET) {
       serveGet(responder);
     } else if (requestData.getType() == RequestData.Type.POST) {
-      servePost(requestData.getFiles(), requestData, responder);
+      servePost(requestData, responder);
     }
     return true;
   }
@@ -82,129 +73,32 @@ public class ImportRpkRequest implements Request {
     }
   }
 
-  private void servePost(List<RequestData.UploadFile> files, RequestData requestData,
-                         Responder responder) {
-    if (files.isEmpty()) {
+  private void servePost(RequestData requestData, Responder responder) {
+    List<RpkImporter.Result> results;
+    try {
+      results = mImporter.importAll(requestData);
+    } catch (IOException ex) {
+      responder.respondBadRequest("Cannot read upload: " + ex.getMessage());
+      return;
+    }
+    if (results.isEmpty()) {
       responder.respondBadRequest("No files uploaded.");
       return;
     }
 
     int numImported = 0;
-    for (RequestData.UploadFile file : files) {
-      if (addRpk(file, requestData)) {
+    StringBuilder details = new StringBuilder("<ul>");
+    for (RpkImporter.Result result : results) {
+      if (result.success) {
         numImported++;
       }
+      details.append(String.format("<li>%s: %s</li>",
+          HTML_ESCAPER.escape(result.filename),
+          HTML_ESCAPER.escape(result.success ? "Imported " + result.message : result.message)));
     }
-    responder.respond(String.format("Got %d files. Imported %d", files.size(), numImported),
+    details.append("</ul>");
+    responder.respond(
+        String.format("Got %d files. Imported %d%s", results.size(), numImported, details),
         Responder.ContentType.HTML);
   }
-
-  private boolean addRpk(RequestData.UploadFile file, RequestData requestData) {
-    try {
-      String json = new String(file.content, "UTF-8");
-      return storeRpk((new Gson()).fromJson(json, RpkData.class), requestData);
-    } catch (JsonSyntaxException | UnsupportedEncodingException ex) {
-      LOG.log(Level.WARNING, "Cannot parse JSON", ex);
-    }
-    return false;
-  }
-
-  private boolean storeRpk(RpkData data, RequestData requestData) {
-    if (!data.app.platform.equals("TRS-80")) {
-      LOG.warning("Unsupported platform. Cannot import.");
-      return false;
-    }
-    if (Strings.isNullOrEmpty(data.app.id)) {
-      LOG.warning("RpkData has no app ID.");
-      return false;
-    }
-
-    AppStoreItem app = new AppStoreItem(data.app.id);
-    Optional<AppStoreItem> appById = mAppManagement.getAppById(data.app.id);
-    if (appById.isPresent()) {
-      app = appById.get();
-    }
-
-    app.listing.name = data.app.name;
-    app.listing.versionString = data.app.version;
-    app.listing.description = data.app.description;
-    app.listing.releaseYear = Integer.parseInt(data.app.year_published);
-    app.listing.categories.clear();
-    app.listing.categories.add(AppStoreItem.ListingCategory.valueOf(data.app.categories));
-    app.listing.authorId = mAppManagement.ensureAuthorExists(data.app.author);
-    app.trs80Extension.model = AppStoreItem.Model.valueOf(data.trs.model);
-
-    // Handle publisher. If the user does not exist yet, add him to the database.
-    Optional<RetroStoreUser> userByEmail = mUserManagement.getUserByEmail(data.publisher.email);
-    if (!userByEmail.isPresent()) {
-      RetroStoreUser newUser = new RetroStoreUser();
-      newUser.email = data.publisher.email;
-      newUser.firstName = data.publisher.first_name;
-      newUser.lastName = data.publisher.last_name;
-      mUserManagement.addOrChangeUser(newUser);
-    }
-    app.listing.publisherEmail = data.publisher.email;
-
-    // Handle MediaImages.
-    for (int i = 0; i < data.trs.image.disk.length; ++i) {
-      RpkData.MediaImage rpkMedia = data.trs.image.disk[i];
-
-      Optional<byte[]> content = Base64Util.decode(rpkMedia.content);
-      if (!content.isPresent()) {
-        continue;
-      }
-
-      mAppManagement.deleteMediaImage(app.trs80Extension.disk[i]);
-      app.trs80Extension.disk[i] = mAppManagement.addMediaImage(
-          app.id, String.format("disk_%d.%s", i, rpkMedia.ext), content.get());
-    }
-
-    // TODO: No cassette support right now.
-
-    {
-      Optional<byte[]> content = Base64Util.decode(data.trs.image.cmd.content);
-      if (content.isPresent()) {
-        mAppManagement.deleteMediaImage(app.trs80Extension.command);
-        app.trs80Extension.command = mAppManagement.addMediaImage(
-            app.id, String.format("command.%s", data.trs.image.cmd.ext), content.get());
-      }
-    }
-    {
-      Optional<byte[]> content = Base64Util.decode(data.trs.image.cas.content);
-      if (content.isPresent()) {
-        mAppManagement.deleteMediaImage(app.trs80Extension.cassette);
-        app.trs80Extension.cassette = mAppManagement.addMediaImage(
-            app.id, String.format("casette.%s", data.trs.image.cas.ext), content.get());
-      }
-    }
-    {
-      Optional<byte[]> content = Base64Util.decode(data.trs.image.bas.content);
-      if (content.isPresent()) {
-        mAppManagement.deleteMediaImage(app.trs80Extension.basic);
-        app.trs80Extension.basic = mAppManagement.addMediaImage(
-            app.id, String.format("basic.%s", data.trs.image.bas.ext), content.get());
-      }
-    }
-
-
-    // Screenshots. If we are updating an existing item, delete the old screenshots first.
-    for (String blobKey : app.screenshotsBlobKeys) {
-      mBlobstore.deleteBlob(blobKey);
-    }
-    app.screenshotsBlobKeys.clear();
-
-    // Store the instance now. Once the screenshots are uploaded they will be added automatically.
-    mAppManagement.addOrChangeApp(app);
-
-    // Then add the new ones screenshots.
-    for (RpkData.MediaImage screenshot : data.app.screenshot) {
-      Optional<byte[]> screenshotContent = Base64Util.decode(screenshot.content);
-      if (!screenshotContent.isPresent()) {
-        continue;
-      }
-      mBlobstore.addScreenshot(app.id, screenshotContent.get(),
-          ContentType.fromFilename("." + screenshot.ext), requestData.getCookieRaw());
-    }
-    return true;
-  }
 }
@@ -65,9 +65,8 @@ public class LoginRequest implements Request {
     if (userService.getForCurrentUser() == UserAccountType.NOT_LOGGED_IN) {
       try {
         String thisUrl = requestData.getUrl();
-        String html = Template.fromFile("WEB-INF/html/login_forward.html")
-            .with("forwarding_url", userService.createLoginURL(thisUrl))
-            .render();
+        Template html = Template.fromFile("WEB-INF/html/login_forward.html")
+            .with("forwarding_url", userService.createLoginURL(thisUrl));
         responder.respond(html, Responder.ContentType.HTML);
       } catch (IOException ex) {
         responder.respondBadRequest("There was an internal error. " + ex.getMessage());
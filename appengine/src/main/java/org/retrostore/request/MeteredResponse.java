@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Counts what is written to the response, for the metrics.
+ *
+ * <p>Text written through the writer is counted in characters, which is the same as bytes for
+ * ASCII and close enough otherwise.
+ */
+class MeteredResponse extends HttpServletResponseWrapper {
+  private long mBytesWritten;
+  private ServletOutputStream mOutputStream;
+  private PrintWriter mWriter;
+
+  MeteredResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  /** The number of bytes written to the body of the response so far. */
+  long getBytesWritten() {
+    return mBytesWritten;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (mOutputStream == null) {
+      ServletOutputStream out = super.getOutputStream();
+      mOutputStream = new ServletOutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          mBytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          mBytesWritten += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+          out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+          return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          out.setWriteListener(writeListener);
+        }
+      };
+    }
+    return mOutputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (mWriter == null) {
+      mWriter = new PrintWriter(new FilterWriter(super.getWriter()) {
+        @Override
+        public void write(int c) throws IOException {
+          super.write(c);
+          mBytesWritten++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+          super.write(cbuf, off, len);
+          mBytesWritten += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+          super.write(str, off, len);
+          mBytesWritten += len;
+        }
+      });
+    }
+    return mWriter;
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import org.retrostore.data.user.UserService;
+import org.retrostore.metrics.Metrics;
+
+import java.io.IOException;
+
+import static org.retrostore.data.user.UserAccountType.ADMIN;
+
+/** Exposes the metrics of this instance in the Prometheus text format, for admins only. */
+public class MetricsRequest implements Request {
+  private static final String METRICS_PATH = "/admin/metrics";
+
+  @Override
+  public boolean serveUrl(RequestData requestData, Responder responder, UserService userService) {
+    if (!requestData.getUrl().equals(METRICS_PATH)) {
+      return false;
+    }
+    if (userService.getForCurrentUser() != ADMIN) {
+      responder.respondForbidden("You need to be an admin");
+      return true;
+    }
+    StringBuilder metrics = new StringBuilder();
+    try {
+      Metrics.writePrometheus(metrics);
+    } catch (IOException ex) {
+      // Appending to a StringBuilder does not throw.
+      throw new IllegalStateException(ex);
+    }
+    responder.respond(metrics.toString(), Responder.ContentType.PLAIN);
+    return true;
+  }
+}
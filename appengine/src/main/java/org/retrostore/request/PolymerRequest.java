@@ -20,7 +20,6 @@ import com.google.common.collect.Sets;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
 
-import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -31,14 +30,14 @@ public class PolymerRequest implements Request {
   private static final Logger LOG = Logger.getLogger("PolymerRequest");
 
   private static final String POLYMER_ROOT = "WEB-INF/polymer-app";
-  private static final Set<String> FORWARD = Sets.newHashSet("/bower_components", "/images",
+  static final Set<String> FORWARD = Sets.newHashSet("/bower_components", "/images",
       "/src", "/service-worker.js", "/manifest.json", "/user-management-view",
       "/app-management-view");
 
-  private final ResourceLoader mResourceLoader;
+  private final StaticAssets mStaticAssets;
 
   public PolymerRequest(ResourceLoader resourceLoader) {
-    mResourceLoader = resourceLoader;
+    mStaticAssets = new StaticAssets(resourceLoader);
   }
 
   @Override
@@ -55,10 +54,8 @@ public class PolymerRequest implements Request {
 
     for (String path : FORWARD) {
       if (url.startsWith(path)) {
-        Optional<byte[]> content = mResourceLoader.load(POLYMER_ROOT + rewriteUrl);
-        if (content.isPresent()) {
-          responder.respond(content.get(), ContentType.fromFilename(rewriteUrl));
-        }
+        mStaticAssets.serve(POLYMER_ROOT + rewriteUrl, ContentType.fromFilename(rewriteUrl),
+            requestData, responder);
         return true;
       }
     }
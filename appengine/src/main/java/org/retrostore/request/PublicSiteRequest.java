@@ -19,7 +19,6 @@ package org.retrostore.request;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
 
-import java.util.Optional;
 import java.util.logging.Logger;
 
 public class PublicSiteRequest implements Request {
@@ -27,10 +26,10 @@ public class PublicSiteRequest implements Request {
   private static final String PATH = "/public";
   private static final String WEB_ROOT = "WEB-INF";
 
-  private final ResourceLoader mResourceLoader;
+  private final StaticAssets mStaticAssets;
 
   public PublicSiteRequest(ResourceLoader resourceLoader) {
-    mResourceLoader = resourceLoader;
+    mStaticAssets = new StaticAssets(resourceLoader);
   }
 
   @Override
@@ -47,11 +46,7 @@ public class PublicSiteRequest implements Request {
     }
 
     String publicResource = PATH + url;
-    Optional<byte[]> data = mResourceLoader.load(WEB_ROOT + publicResource);
-    if (data.isPresent()) {
-      responder.respond(data.get(), ContentType.fromFilename(url));
-      return true;
-    }
-    return false;
+    return mStaticAssets.serve(
+        WEB_ROOT + publicResource, ContentType.fromFilename(url), requestData, responder);
   }
 }
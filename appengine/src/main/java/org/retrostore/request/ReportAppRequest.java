@@ -127,16 +127,16 @@ public class ReportAppRequest implements Request {
       screenshotUrl = servingUrl.orElse("");
     }
 
-    Optional<byte[]> html = mResourceLoader.load("WEB-INF/html/report_app.html.inc");
-    if (!html.isPresent()) {
+    Optional<Template> template =
+        Template.fromResource(mResourceLoader, "WEB-INF/html/report_app.html.inc");
+    if (!template.isPresent()) {
       responder.respondNotFound();
       return;
     }
 
-    responder.respond(new Template(new String(html.get()))
+    responder.respond(template.get()
         .with("appTitle", app.listing.name)
         .with("appId", app.id)
-        .with("screenshotUrl", screenshotUrl)
-        .render(), Responder.ContentType.HTML);
+        .with("screenshotUrl", screenshotUrl), Responder.ContentType.HTML);
   }
 }
@@ -18,6 +18,8 @@ package org.retrostore.request;
 
 import org.retrostore.data.user.UserService;
 
+import java.util.Optional;
+
 /**
  * Interface for serving requests of any kind.
  */
@@ -32,4 +34,16 @@ public interface Request {
    * serve this requestData, and serving is to be considered complete.
    */
   boolean serveUrl(RequestData requestData, Responder responder, UserService userService);
+
+  /**
+   * Whether the request should be served off the container thread, because serving it mostly
+   * waits for other services.
+   *
+   * @param requestData the request to serve.
+   * @return How long serving the request may take in milliseconds, or empty if it should be
+   * served synchronously.
+   */
+  default Optional<Long> getAsyncDeadlineMillis(RequestData requestData) {
+    return Optional.empty();
+  }
 }
@@ -16,6 +16,9 @@
 
 package org.retrostore.request;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -51,9 +54,27 @@ public interface RequestData {
   /** Gets the raw cookie string. */
   String getCookieRaw();
 
+  /** Returns the value of the request header with the given name, if it exists. */
+  Optional<String> getHeader(String name);
+
+  /** The IP address of the client that sent this request. */
+  String getRemoteAddr();
+
   /** For POST upload requests, this return the name of the uploaded file. */
   List<UploadFile> getFiles();
 
+  /**
+   * For POST upload requests, hands the uploaded files to the consumer one after the other, in the
+   * order they were sent. Unless the files were already loaded by {@link #getFiles()}, they are
+   * read straight from the request and never held in memory as a whole. The files can then not be
+   * read again.
+   */
+  default void streamFiles(FileConsumer consumer) throws IOException {
+    for (UploadFile file : getFiles()) {
+      consumer.accept(file.filename, new ByteArrayInputStream(file.content));
+    }
+  }
+
   /** If present, returns the blobkeys for this request. */
   Map<String, List<String>> getBlobKeys();
 
@@ -62,6 +83,15 @@ public interface RequestData {
     POST, GET
   }
 
+  /** Receives uploaded files, see {@link #streamFiles(FileConsumer)}. */
+  interface FileConsumer {
+    /**
+     * @param filename the name of the uploaded file.
+     * @param content  the content of the file. Only valid until this method returns.
+     */
+    void accept(String filename, InputStream content) throws IOException;
+  }
+
   class UploadFile {
     /** The original reuest field name of this file. */
     public final String fieldname;
@@ -32,6 +32,7 @@ import org.retrostore.util.NumUtil;
 import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -54,6 +55,11 @@ public class RequestDataImpl implements RequestData {
   private final BlobProvider mBlobInfos;
   private final List<UploadFile> mFileItems;
   private final Map<String, String> mFormParams;
+  /**
+   * Multipart content is only read when it is first needed, so that it can also be streamed. Calls
+   * of a batch request can read parameters concurrently, hence the lock.
+   */
+  private boolean mMultipartRead;
 
   public static RequestData create(final HttpServletRequest request,
                                    Type type,
@@ -72,7 +78,6 @@ public class RequestDataImpl implements RequestData {
     mBlobInfos = blobInfos;
     mFileItems = new ArrayList<>();
     mFormParams = new HashMap<>();
-    parseMultipartContent(request, mFormParams, mFileItems);
   }
 
   @Override
@@ -140,11 +145,30 @@ public class RequestDataImpl implements RequestData {
     return mRequest.getHeader("Cookie");
   }
 
+  @Override
+  public Optional<String> getHeader(String name) {
+    return Optional.ofNullable(mRequest.getHeader(name));
+  }
+
+  @Override
+  public String getRemoteAddr() {
+    return mRequest.getRemoteAddr();
+  }
+
   @Override
   public List<UploadFile> getFiles() {
+    loadMultipartContent();
     return mFileItems;
   }
 
+  @Override
+  public void streamFiles(FileConsumer consumer) throws IOException {
+    if (!readMultipartContent(consumer)) {
+      // Already read, so the files are in memory.
+      RequestData.super.streamFiles(consumer);
+    }
+  }
+
   @Override
   public Map<String, List<String>> getBlobKeys() {
     Map<String, List<String>> blobKeys = new HashMap<>();
@@ -162,6 +186,7 @@ public class RequestDataImpl implements RequestData {
   private String getParameter(String name) {
     // If this was a multi-part request, the parameter will be hidden as a 'file'. So check that
     // first.
+    loadMultipartContent();
     if (mFormParams.containsKey(name)) {
       return mFormParams.get(name);
     }
@@ -169,37 +194,63 @@ public class RequestDataImpl implements RequestData {
     return mRequest.getParameter(name);
   }
 
+  /** Loads files and parameters of a multipart request into memory. */
+  private void loadMultipartContent() {
+    try {
+      readMultipartContent(null);
+    } catch (IOException e) {
+      // Only thrown when streaming to a consumer.
+      throw new IllegalStateException(e);
+    }
+  }
+
   /**
-   * Parses a multipart request and gets its files and parameters.
+   * Parses a multipart request and gets its files and parameters, unless that already happened.
+   *
+   * @param fileConsumer receives the files instead of them being loaded into memory, if not null.
+   *                     Errors reading the request are passed on to it.
+   * @return Whether the request was read by this call.
    */
-  private static void parseMultipartContent(HttpServletRequest request,
-                                            Map<String, String> formParams,
-                                            List<UploadFile> uploadFiles) {
-    if (!ServletFileUpload.isMultipartContent(request)) {
-      return;
+  private synchronized boolean readMultipartContent(FileConsumer fileConsumer) throws IOException {
+    if (mMultipartRead) {
+      return false;
+    }
+    mMultipartRead = true;
+    if (!ServletFileUpload.isMultipartContent(mRequest)) {
+      return true;
     }
 
     ServletFileUpload upload = new ServletFileUpload();
     try {
-      FileItemIterator itemIterator = upload.getItemIterator(request);
+      FileItemIterator itemIterator = upload.getItemIterator(mRequest);
       while (itemIterator.hasNext()) {
         FileItemStream file = itemIterator.next();
+        // If an item has a name, we think it's a file, otherwise we treat it as a regular string
+        // parameter.
+        boolean isFile = !Strings.isNullOrEmpty(file.getName());
+        if (isFile && fileConsumer != null) {
+          try (InputStream content = file.openStream()) {
+            fileConsumer.accept(file.getName(), content);
+          }
+          continue;
+        }
         ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
         ByteStreams.copy(file.openStream(), bytesOut);
         byte[] bytes = bytesOut.toByteArray();
-
-        // If an item has a name, we think it's a file, otherwise we treat it as a regular string
-        // parameter.
-        if (!Strings.isNullOrEmpty(file.getName())) {
-          uploadFiles.add(new UploadFile(file.getFieldName(), file.getName(), bytes));
+        if (isFile) {
+          mFileItems.add(new UploadFile(file.getFieldName(), file.getName(), bytes));
         } else {
           String str = new String(bytes, StandardCharsets.UTF_8);
-          formParams.put(file.getFieldName(), str);
+          mFormParams.put(file.getFieldName(), str);
         }
       }
     } catch (FileUploadException | IOException e) {
       LOG.log(Level.WARNING, "Cannot parse request for filename.", e);
+      if (fileConsumer != null) {
+        throw e instanceof IOException ? (IOException) e : new IOException(e);
+      }
     }
+    return true;
   }
 
   interface BlobProvider {
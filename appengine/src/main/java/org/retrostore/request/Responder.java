@@ -18,10 +18,17 @@ package org.retrostore.request;
 
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreService;
-import com.google.gson.Gson;
+import org.retrostore.data.BlobstoreWrapper;
+import org.retrostore.ui.Template;
+import org.retrostore.util.FileStreaming;
+import org.retrostore.util.Json;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,31 +39,73 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class Responder {
   public enum ContentType {
-    PLAIN("text/plain"),
-    BYTES("application/octet-stream"),
-    HTML("text/html"),
-    CSS("text/css"),
-    JS("application/javascript"),
-    JSON("application/json"),
-    PNG("image/png"),
-    JPEG("image/jpeg"),
-    SVG("image/svg+xml"),
-    ZIP("application/zip");
+    PLAIN("text/plain", true),
+    BYTES("application/octet-stream", true),
+    HTML("text/html", true),
+    CSS("text/css", true),
+    JS("application/javascript", true),
+    JSON("application/json", true),
+    PNG("image/png", false),
+    JPEG("image/jpeg", false),
+    GIF("image/gif", false),
+    WEBP("image/webp", false),
+    SVG("image/svg+xml", true),
+    ZIP("application/zip", false);
 
     public String str;
+    /**
+     * Whether content of this type gets smaller when compressed. False for formats that are
+     * compressed already, for which compressing again only costs time.
+     */
+    public final boolean compressible;
 
-    ContentType(String str) {
+    ContentType(String str, boolean compressible) {
       this.str = str;
+      this.compressible = compressible;
     }
   }
 
   private static final Logger LOG = Logger.getLogger("Responder");
-  private final HttpServletResponse mResponse;
+  /** Not part of the Servlet 3.1 constants. */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  /** Smaller responses are not compressed, as there is little to gain. */
+  private static final int MIN_COMPRESSION_SIZE = 1024;
+  /** For static files with a fingerprint in their URL, which never change. */
+  private static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+  /** For other static files, which may be cached but need to be revalidated. */
+  private static final String CACHE_REVALIDATE = "no-cache";
+  private final MeteredResponse mResponse;
   private final BlobstoreService mBlobstoreService;
+  private final Optional<ContentEncoding> mEncoding;
 
-  public Responder(HttpServletResponse response, BlobstoreService blobstoreService) {
-    mResponse = checkNotNull(response);
+  /**
+   * @param response         the response to write to.
+   * @param blobstoreService used to serve blobs.
+   * @param acceptEncoding   the Accept-Encoding header of the request, if it has one.
+   */
+  public Responder(HttpServletResponse response, BlobstoreService blobstoreService,
+                   Optional<String> acceptEncoding) {
+    mResponse = new MeteredResponse(checkNotNull(response));
     mBlobstoreService = blobstoreService;
+    mEncoding = acceptEncoding.flatMap(ContentEncoding::negotiate);
+  }
+
+  /** The status code of the response so far. */
+  public int getStatus() {
+    return mResponse.getStatus();
+  }
+
+  /** The number of bytes of the response body written so far. */
+  public long getBytesWritten() {
+    return mResponse.getBytesWritten();
+  }
+
+  /**
+   * Creates a response whose status and body are kept in memory instead of being sent, e.g. to
+   * embed them into this response.
+   */
+  public CapturingResponse capture() {
+    return new CapturingResponse(mResponse, mBlobstoreService);
   }
 
   /** Respond with the given content text and type. */
@@ -69,17 +118,133 @@ public class Responder {
     }
   }
 
-  /** Respond with the given content text and type. */
+  /** Renders the template directly into the response. */
+  public void respond(Template template, ContentType contentType) {
+    try {
+      mResponse.setContentType(contentType.str);
+      mResponse.setCharacterEncoding("UTF-8");
+      template.renderTo(mResponse.getWriter());
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, "Cannot serve data", ex);
+    }
+  }
+
+  /**
+   * Respond with the given content and type. If the client supports it, the content is sent
+   * compressed.
+   */
   public void respond(byte[] content, ContentType contentType) {
+    respond(content, contentType, false);
+  }
+
+  /**
+   * Like {@link #respond(byte[], ContentType)}, for content that is kept in a cache and served
+   * again as the same array. The compressed variant is kept for as long as the array is, so the
+   * content is only compressed once.
+   */
+  public void respondShared(byte[] content, ContentType contentType) {
+    respond(content, contentType, true);
+  }
+
+  private void respond(byte[] content, ContentType contentType, boolean shared) {
     try {
       mResponse.setContentType(contentType.str);
       mResponse.addHeader("Access-Control-Allow-Origin", "*");
-      mResponse.getOutputStream().write(content);
+      writeBody(content, contentType, shared);
     } catch (IOException ex) {
       LOG.log(Level.SEVERE, "Cannot serve data", ex);
     }
   }
 
+  /**
+   * Respond with the content of a static file. If the client supports it, the compressed variant
+   * of the content is sent, which is only created once for the same content array.
+   *
+   * @param content     the content of the file. Should be the same array for the same file.
+   * @param contentType the type of the file.
+   * @param etag        the entity tag of the content, for revalidation.
+   * @param immutable   whether the URL has a fingerprint, so that the content never changes.
+   */
+  public void respondStatic(byte[] content, ContentType contentType, String etag,
+                            boolean immutable) {
+    try {
+      mResponse.setContentType(contentType.str);
+      mResponse.addHeader("Access-Control-Allow-Origin", "*");
+      setCacheHeaders(etag, immutable);
+      writeBody(content, contentType, true);
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, "Cannot serve data", ex);
+    }
+  }
+
+  /**
+   * Like {@link #respondStatic(byte[], ContentType, String, boolean)}, but for a file that is too
+   * large to be kept in memory. It is streamed from disk, unless the compressed variant is sent.
+   */
+  public void respondStaticFile(Path file, ContentType contentType, String etag,
+                                boolean immutable) {
+    try {
+      mResponse.setContentType(contentType.str);
+      mResponse.addHeader("Access-Control-Allow-Origin", "*");
+      setCacheHeaders(etag, immutable);
+      if (contentType.compressible) {
+        mResponse.addHeader("Vary", "Accept-Encoding");
+        if (mEncoding.isPresent()) {
+          byte[] body = mEncoding.get().encode(file);
+          mResponse.setHeader("Content-Encoding", mEncoding.get().str);
+          mResponse.setContentLength(body.length);
+          mResponse.getOutputStream().write(body);
+          return;
+        }
+      }
+      mResponse.setContentLengthLong(Files.size(file));
+      FileStreaming.transfer(file, mResponse.getOutputStream());
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, "Cannot serve file", ex);
+    }
+  }
+
+  /**
+   * Respond with a 304, telling the client that its cached copy of a static file is still valid.
+   * See {@link #respondStatic(byte[], ContentType, String, boolean)}.
+   */
+  public void respondNotModified(String etag, boolean immutable) {
+    mResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    setCacheHeaders(etag, immutable);
+  }
+
+  private void setCacheHeaders(String etag, boolean immutable) {
+    mResponse.setHeader("ETag", etag);
+    mResponse.setHeader("Cache-Control", immutable ? CACHE_IMMUTABLE : CACHE_REVALIDATE);
+  }
+
+  /**
+   * Writes the content, compressed if the client and the type of the content allow it.
+   *
+   * @param cache whether to keep the compressed variant for as long as the content array.
+   */
+  private void writeBody(byte[] content, ContentType contentType, boolean cache)
+      throws IOException {
+    byte[] body = content;
+    if (shouldCompress(content.length, contentType)) {
+      ContentEncoding encoding = mEncoding.get();
+      body = cache ? encoding.encode(content) : encoding.compress(content);
+      mResponse.setHeader("Content-Encoding", encoding.str);
+    }
+    mResponse.setContentLength(body.length);
+    mResponse.getOutputStream().write(body);
+  }
+
+  /** Whether content of the given size and type is compressed for this client. */
+  private boolean shouldCompress(int length, ContentType contentType) {
+    if (!contentType.compressible || length < MIN_COMPRESSION_SIZE) {
+      return false;
+    }
+    // Caches must not serve a compressed variant to clients that did not ask for it.
+    mResponse.addHeader("Vary", "Accept-Encoding");
+    return mEncoding.isPresent();
+  }
+
   /** Respond with the given content text and type. */
   public void respondDownload(byte[] content, String filename, ContentType contentType) {
     try {
@@ -95,11 +260,30 @@ public class Responder {
 
   // Content-Disposition: attachment; filename="fname.ext"
 
-  /** Converts the given object into JSON and sends it. */
+  /**
+   * Converts the given object into JSON and sends it. The JSON is written straight to the
+   * response, and through the compressor once it is large enough.
+   */
   public void respondJson(Object object) {
     try {
       mResponse.setContentType(ContentType.JSON.str);
-      mResponse.getWriter().write((new Gson()).toJson(object));
+      mResponse.setCharacterEncoding("UTF-8");
+      Json.write(object, new DeferredCompressionStream(mResponse, mEncoding, MIN_COMPRESSION_SIZE));
+    } catch (IOException ex) {
+      LOG.log(Level.SEVERE, "Cannot serve data", ex);
+    }
+  }
+
+  /**
+   * Sends JSON that was serialized before, e.g. because it is cached. Like {@link
+   * #respondShared(byte[], ContentType)}, the compressed variant is kept for as long as the array
+   * is.
+   */
+  public void respondSerializedJson(byte[] json) {
+    try {
+      mResponse.setContentType(ContentType.JSON.str);
+      mResponse.setCharacterEncoding("UTF-8");
+      writeBody(json, ContentType.JSON, true);
     } catch (IOException ex) {
       LOG.log(Level.SEVERE, "Cannot serve data", ex);
     }
@@ -110,8 +294,17 @@ public class Responder {
     try {
       mResponse.setContentType(ContentType.BYTES.str);
       mResponse.addHeader("Access-Control-Allow-Origin", "*");
-      object.writeTo(mResponse.getOutputStream());
-      mResponse.getOutputStream().close();
+      int size = object.getSerializedSize();
+      OutputStream out = mResponse.getOutputStream();
+      if (shouldCompress(size, ContentType.BYTES)) {
+        // The message is serialized straight into the compressor, without a copy in between.
+        mResponse.setHeader("Content-Encoding", mEncoding.get().str);
+        out = mEncoding.get().wrap(out);
+      } else {
+        mResponse.setContentLength(size);
+      }
+      object.writeTo(out);
+      out.close();
     } catch (IOException ex) {
       LOG.log(Level.SEVERE, "Cannot serve data", ex);
     }
@@ -132,6 +325,16 @@ public class Responder {
     respond("", ContentType.PLAIN, HttpServletResponse.SC_NOT_FOUND);
   }
 
+  /**
+   * Respond with a 429 error code, telling the client to slow down.
+   *
+   * @param retryAfterSeconds after how many seconds the client may try again.
+   */
+  public void respondTooManyRequests(long retryAfterSeconds) {
+    mResponse.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+    respond("Too many requests.", ContentType.PLAIN, SC_TOO_MANY_REQUESTS);
+  }
+
   private void respond(String content, ContentType contentType, int statusCode) {
     try {
       mResponse.setStatus(statusCode);
@@ -149,7 +352,9 @@ public class Responder {
    * @return Whether serving the blob was successful.
    */
   public boolean respondBlob(String key) {
-    BlobKey blobKey = new BlobKey(checkNotNull(key));
+    BlobKey blobKey = BlobstoreWrapper.isGcsKey(checkNotNull(key))
+        ? mBlobstoreService.createGsBlobKey(key)
+        : new BlobKey(key);
     try {
       mBlobstoreService.serve(blobKey, mResponse);
       return true;
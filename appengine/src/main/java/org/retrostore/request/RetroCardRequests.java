@@ -16,10 +16,12 @@
 
 package org.retrostore.request;
 
+import org.retrostore.data.card.FirmwareImage;
 import org.retrostore.data.card.FirmwareManagement;
 import org.retrostore.data.user.UserAccountType;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
+import org.retrostore.ui.Template;
 import org.retrostore.util.NumUtil;
 
 import java.util.Optional;
@@ -27,8 +29,11 @@ import java.util.Optional;
 /**
  * Handles a variety of requests: - GET to /trs-io will return the HTML interface to upload new
  * firmware. - GET to /trs-io/[revision]/version returns the latest version for this revision. - GET
- * to /trs-io/[revision]/firmware return the latest firmware data for the revision. - POST to
- * /trs-io?revision=[...] will upload a new firmware and increment the version.
+ * to /trs-io/[revision]/firmware return the latest firmware data for the revision. - GET to
+ * /trs-io/[revision]/patch?from=[version] returns a delta from the given to the latest version. -
+ * GET to /trs-io/[revision]/manifest returns the block manifest of the latest firmware. - GET to
+ * /trs-io/[revision]/block?version=[version]&index=[index] returns a single firmware block. - POST
+ * to /trs-io?revision=[...] will upload a new firmware and increment the version.
  *
  * <p>To support requests for the older RetroCard, al requests will be serves through /card.
  */
@@ -37,7 +42,13 @@ public final class RetroCardRequests {
   private static final String PATH_SERVE_TRSIO = "/trs-io";
   private static final String REQ_VERSION = "version";
   private static final String REQ_FIRMWARE = "firmware";
+  private static final String REQ_PATCH = "patch";
+  private static final String REQ_MANIFEST = "manifest";
+  private static final String REQ_BLOCK = "block";
   private static final String PARAM_REVISION = "revision";
+  private static final String PARAM_FROM = "from";
+  private static final String PARAM_VERSION = "version";
+  private static final String PARAM_INDEX = "index";
   private static final String HTML_PATH = "WEB-INF/html/retrocard.html.inc";
 
   public static class AdminFrontendRequest implements Request {
@@ -97,13 +108,12 @@ public final class RetroCardRequests {
         }
       } else {
         // Serve the HTML interface to upload new firmware.
-        Optional<byte[]> htmlBytes = mResourceLoader.load(HTML_PATH);
-        if (!htmlBytes.isPresent()) {
+        Optional<Template> template = Template.fromResource(mResourceLoader, HTML_PATH);
+        if (!template.isPresent()) {
           responder.respondNotFound();
         } else {
-          String html =
-              new String(htmlBytes.get()).replace("<!--PRODUCT-->", management.getProductName());
-          responder.respond(html, Responder.ContentType.HTML);
+          responder.respond(template.get().with("product", management.getProductName()),
+              Responder.ContentType.HTML);
         }
       }
     }
@@ -137,9 +147,9 @@ public final class RetroCardRequests {
               ? mManagementCreator.createRetrocardManagement()
               : mManagementCreator.createTrsIoManagement();
 
-      // Other than the main /card request, the other two are getting the latest version and
-      // firmware for a revision. The URL is in the form of /card/[revision]/{version/firmware}
-      // so it must have three parts to it.
+      // Other than the main /card request, the others are getting the latest version, firmware,
+      // patch or firmware blocks for a revision. The URL is in the form of
+      // /card/[revision]/{version/firmware/patch/manifest/block} so it must have three parts to it.
       // Remove leading '/' to do a clean split.
       String[] urlParts = url.substring(1).split("/");
       if (urlParts.length != 3) {
@@ -154,6 +164,28 @@ public final class RetroCardRequests {
       }
       final int revision = revisionOpt.get();
       String request = urlParts[2];
+      if (REQ_BLOCK.equals(request)) {
+        // The version is explicit so that a download that is resumed after a new firmware was
+        // uploaded does not end up mixing blocks of two versions.
+        Optional<Integer> version = requestData.getInt(PARAM_VERSION);
+        Optional<Integer> index = requestData.getInt(PARAM_INDEX);
+        if (!version.isPresent() || !index.isPresent()) {
+          responder.respondBadRequest("Block request needs 'version' and 'index' parameters.");
+          return true;
+        }
+        Optional<FirmwareImage> image = management.getFirmwareImage(revision, version.get());
+        if (!image.isPresent()
+            || index.get() < 0
+            || index.get() >= image.get().getNumBlocks()) {
+          responder.respondNotFound();
+        } else {
+          // Blocks are kept with the cached image, so their compressed variants can be too.
+          responder.respondShared(image.get().getBlock(index.get()), Responder.ContentType.BYTES);
+        }
+        return true;
+      }
+
+      // All other requests are for the latest version.
       int latestVersion = management.getLatestVersionOf(revision);
       if (REQ_VERSION.equals(request)) {
         responder.respond(String.valueOf(latestVersion), Responder.ContentType.PLAIN);
@@ -164,6 +196,26 @@ public final class RetroCardRequests {
         } else {
           responder.respond(firmware.get(), Responder.ContentType.BYTES);
         }
+      } else if (REQ_PATCH.equals(request)) {
+        Optional<Integer> fromVersion = requestData.getInt(PARAM_FROM);
+        if (!fromVersion.isPresent()) {
+          responder.respondBadRequest("Patch request is missing 'from' parameter.");
+          return true;
+        }
+        Optional<byte[]> patch = management.getPatch(revision, fromVersion.get(), latestVersion);
+        if (!patch.isPresent()) {
+          // No patch for this version exists. Devices fall back to downloading the full firmware.
+          responder.respondNotFound();
+        } else {
+          responder.respond(patch.get(), Responder.ContentType.BYTES);
+        }
+      } else if (REQ_MANIFEST.equals(request)) {
+        Optional<FirmwareImage> image = management.getFirmwareImage(revision, latestVersion);
+        if (!image.isPresent()) {
+          responder.respondBadRequest("Cannot find firmware data.");
+        } else {
+          responder.respond(image.get().toManifest(), Responder.ContentType.PLAIN);
+        }
       } else {
         responder.respondBadRequest(String.format("Unknown request: '%s'.", request));
       }
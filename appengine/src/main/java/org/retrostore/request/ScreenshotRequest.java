@@ -16,12 +16,10 @@
 
 package org.retrostore.request;
 
-import com.google.appengine.api.images.Image;
-import com.google.appengine.api.images.ImagesServiceFactory;
 import org.retrostore.data.BlobstoreWrapper;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.user.UserService;
-import org.retrostore.resources.ImageServiceWrapper;
+import org.retrostore.resources.ScreenshotValidator;
 
 import java.util.List;
 import java.util.Map;
@@ -32,41 +30,30 @@ import java.util.logging.Logger;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * Serves screenshots and receives uploaded screenshots to store them.
+ * Receives uploaded screenshots to store them. Screenshots are served by
+ * {@link ScreenshotServeRequest}.
  */
 public class ScreenshotRequest implements Request {
   private static final Logger LOG = Logger.getLogger("ScrnshtReq");
-  private static final String PATH_SERVE = "/screenshotServe";
   private static final String PATH_UPLOAD = "/screenshotUpload";
   private static final String PATH_UPLOAD_URL = "/screenshotUrlForUpload";
-  private static final String PARAM_KEY = "key";
-  private static final int SCREENSHOT_SIZE = 800;
   private final BlobstoreWrapper mBlobStore;
   private final AppManagement mAppManagement;
-  private final ImageServiceWrapper mImageService;
 
-  public ScreenshotRequest(BlobstoreWrapper blobStore,
-                           AppManagement appManagement,
-                           ImageServiceWrapper imageService) {
+  public ScreenshotRequest(BlobstoreWrapper blobStore, AppManagement appManagement) {
     mBlobStore = checkNotNull(blobStore);
     mAppManagement = checkNotNull(appManagement);
-    mImageService = imageService;
   }
 
   @Override
   public boolean serveUrl(RequestData requestData, Responder responder, UserService userService) {
     String url = requestData.getUrl();
-    if (!url.startsWith(PATH_SERVE) &&
-        !url.startsWith(PATH_UPLOAD) &&
-        !url.startsWith(PATH_UPLOAD_URL)) {
+    if (!url.startsWith(PATH_UPLOAD) && !url.startsWith(PATH_UPLOAD_URL)) {
       return false;
     }
 
-    // Depending on the request URL, we either serve the screenshot or handle an upload and
-    // store request.
-    if (url.startsWith(PATH_SERVE)) {
-      serveScreenshot(requestData, responder);
-    } else if (url.startsWith(PATH_UPLOAD)) {
+    // Depending on the request URL, we either hand out an upload URL or store the upload.
+    if (url.startsWith(PATH_UPLOAD)) {
       uploadScreenshot(requestData, responder);
     } else if (url.startsWith(PATH_UPLOAD_URL)) {
       uploadScreenshotUrl(requestData, responder);
@@ -74,19 +61,6 @@ public class ScreenshotRequest implements Request {
     return true;
   }
 
-  private void serveScreenshot(RequestData requestData, Responder responder) {
-    Optional<String> blobKeyOpt = requestData.getString(PARAM_KEY);
-    if (!blobKeyOpt.isPresent()) {
-      LOG.warning("No 'key' present for serving screenshot.");
-      return;
-    }
-    Optional<String> servingUrl = mImageService.getServingUrl(blobKeyOpt.get(), SCREENSHOT_SIZE);
-    if (!servingUrl.isPresent()) {
-      return;
-    }
-    responder.respondRedirect(servingUrl.get());
-  }
-
   private void uploadScreenshotUrl(RequestData requestData, Responder responder) {
     Optional<String> appIdOpt = requestData.getString("appId");
     if (!appIdOpt.isPresent()) {
@@ -118,30 +92,30 @@ public class ScreenshotRequest implements Request {
       String key = blobKeys.get(filename).get(0);
       LOG.info(String.format(
           "Found key '%s' for filename '%s' and appId '%s'.", key, filename, appIdOpt.get()));
-      if (isValidImage(key)) {
-        mAppManagement.addScreenshot(appId, key);
-      } else {
+      if (!isValidImage(key)) {
         // Delete the blob if it's not a valid image.
         mBlobStore.deleteBlob(key);
+        continue;
       }
+      // Renditions are rendered from the whole image, which is only loaded after the header
+      // check and never in part.
+      Optional<byte[]> data = mBlobStore.loadBlob(key, ScreenshotValidator.MAX_FILE_SIZE);
+      if (!data.isPresent()) {
+        LOG.warning(String.format("Screenshot '%s' is too large, deleting it.", key));
+        mBlobStore.deleteBlob(key);
+        responder.respondBadRequest("Screenshot is too large.");
+        continue;
+      }
+      mBlobStore.writeRenditions(key, data.get());
+      mAppManagement.addScreenshot(appId, key);
     }
   }
 
-  /** Check of the blob with the given key is a valid image. */
+  /** Check of the blob with the given key is a valid image. Only its header is loaded. */
   private boolean isValidImage(String key) {
-    byte[] imageData = mBlobStore.loadBlob(key);
-    LOG.info("Uploaded data size: " + imageData.length);
-    if (imageData.length == 0) {
-      return false;
-    }
-    Image image = ImagesServiceFactory.makeImage(imageData);
-    try {
-      if (image == null || image.getWidth() == 0 || image.getHeight() == 0) {
-        LOG.warning("No valid image found for blob key: " + key);
-        return false;
-      }
-    } catch (IllegalArgumentException ex) {
-      LOG.warning("Not an image: " + key);
+    if (!ScreenshotValidator.getImageInfo(
+        length -> mBlobStore.loadBlobPrefix(key, length)).isPresent()) {
+      LOG.warning("No valid image found for blob key: " + key);
       return false;
     }
     return true;
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import org.retrostore.data.BlobstoreWrapper;
+import org.retrostore.data.app.AppManagement;
+import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.data.user.UserService;
+import org.retrostore.resources.ImageServiceWrapper;
+import org.retrostore.resources.ScreenshotRenditions;
+import org.retrostore.resources.ScreenshotValidator;
+
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serves screenshots. This does not require a logged in user, since API clients link to it for
+ * the screenshots of apps.
+ */
+public class ScreenshotServeRequest implements Request {
+  private static final Logger LOG = Logger.getLogger("ScrnshtServeReq");
+  /** Used in the screenshot URLs handed out by the API. */
+  public static final String PATH_PUBLIC = "/public/screenshot";
+  /** Used by the admin frontend. */
+  private static final String PATH_SERVE = "/screenshotServe";
+  private static final String PARAM_KEY = "key";
+  private static final String PARAM_SIZE = "size";
+  private static final String PARAM_FORMAT = "format";
+  private final BlobstoreWrapper mBlobStore;
+  private final AppManagement mAppManagement;
+  private final ImageServiceWrapper mImageService;
+
+  public ScreenshotServeRequest(BlobstoreWrapper blobStore,
+                                AppManagement appManagement,
+                                ImageServiceWrapper imageService) {
+    mBlobStore = checkNotNull(blobStore);
+    mAppManagement = checkNotNull(appManagement);
+    mImageService = checkNotNull(imageService);
+  }
+
+  @Override
+  public boolean serveUrl(RequestData requestData, Responder responder, UserService userService) {
+    String url = requestData.getUrl();
+    if (!url.startsWith(PATH_PUBLIC) && !url.startsWith(PATH_SERVE)) {
+      return false;
+    }
+    Optional<String> blobKeyOpt = requestData.getString(PARAM_KEY);
+    if (!blobKeyOpt.isPresent()) {
+      LOG.warning("No 'key' present for serving screenshot.");
+      responder.respondBadRequest("Parameter 'key' missing.");
+      return true;
+    }
+    String key = blobKeyOpt.get();
+    int size = requestData.getInt(PARAM_SIZE)
+        .orElse(ImageServiceWrapper.DEFAULT_SCREENSHOT_SIZE);
+    ScreenshotRenditions.Format format = requestData.getString(PARAM_FORMAT)
+        .flatMap(ScreenshotRenditions.Format::fromString)
+        .orElse(ScreenshotRenditions.Format.PNG);
+
+    // Serve a stored rendition directly if there is one. Without, e.g. for formats that could not
+    // be rendered, the Images service resizes the original.
+    Optional<String> renditionKey = mBlobStore.getRenditionKey(key, size, format);
+    if (renditionKey.isPresent()) {
+      responder.respondBlob(renditionKey.get());
+      return true;
+    }
+    Optional<String> servingUrl = mImageService.getServingUrl(key, size);
+    if (servingUrl.isPresent()) {
+      responder.respondRedirect(servingUrl.get());
+      return true;
+    }
+    // The key comes from the caller, so only originals known to be screenshots are handed out.
+    if (!isScreenshot(key)) {
+      LOG.warning(String.format("Refusing to serve '%s', it is not a screenshot.", key));
+      responder.respondNotFound();
+      return true;
+    }
+    LOG.warning(String.format("No rendition or serving URL for '%s', serving original.", key));
+    responder.respondBlob(key);
+    return true;
+  }
+
+  private boolean isScreenshot(String key) {
+    if (mBlobStore.isInScreenshotFolder(key)) {
+      return ScreenshotValidator.getImageInfo(
+          length -> mBlobStore.loadBlobPrefix(key, length)).isPresent();
+    }
+    for (AppStoreItem app : mAppManagement.getAllApps()) {
+      if (app.screenshotsBlobKeys.contains(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.request;
+
+import org.retrostore.resources.ResourceLoader;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves static files so that browsers can cache them.
+ *
+ * <p>Every file is served with an ETag derived from its content, so that cached copies can be
+ * revalidated with a cheap 304. HTML pages are rewritten so that the scripts, styles and images
+ * they reference carry the fingerprint of their content in a 'v' parameter. Requests for such a
+ * URL are served as immutable, which means that repeat visitors do not request them again until
+ * the file changes.
+ */
+class StaticAssets {
+  private static final Logger LOG = Logger.getLogger("StaticAssets");
+  private static final String WEB_ROOT = "WEB-INF";
+  private static final String POLYMER_ROOT = "WEB-INF/polymer-app";
+  private static final String PUBLIC_ROOT = "WEB-INF/public";
+  /** Static URLs with this parameter carry a fingerprint and can be cached forever. */
+  private static final String PARAM_VERSION = "v";
+  private static final Pattern REFERENCE = Pattern.compile("(src|href)=\"([^\"]+)\"");
+
+  /**
+   * HTML pages with fingerprinted references, keyed by their original content and then the
+   * directory of their URL, which relative references are resolved against. Arrays are compared
+   * by identity, and pages go away together with their original content.
+   */
+  private static final Map<byte[], Map<String, Page>> sPages =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private final ResourceLoader mResourceLoader;
+
+  StaticAssets(ResourceLoader resourceLoader) {
+    mResourceLoader = resourceLoader;
+  }
+
+  /** A rewritten HTML page. */
+  private static class Page {
+    final byte[] content;
+    final String fingerprint;
+
+    Page(byte[] content) {
+      this.content = content;
+      this.fingerprint = ResourceLoader.fingerprint(content);
+    }
+  }
+
+  /**
+   * Serves the file with the given name, if it exists.
+   *
+   * @param filename    the name of the file to serve.
+   * @param contentType the type of the file.
+   * @param requestData the request for the file.
+   * @param responder   used to send the file.
+   * @return Whether the file exists and was served.
+   */
+  boolean serve(String filename, Responder.ContentType contentType, RequestData requestData,
+                Responder responder) {
+    // Pages are always kept in memory, as they are rewritten.
+    if (contentType != Responder.ContentType.HTML) {
+      Optional<Path> largeFile = mResourceLoader.getLargeFile(filename);
+      Optional<String> fingerprint = mResourceLoader.getFingerprint(filename);
+      if (largeFile.isPresent() && fingerprint.isPresent()) {
+        if (!respondNotModified(fingerprint.get(), requestData, responder)) {
+          responder.respondStaticFile(largeFile.get(), contentType, etag(fingerprint.get()),
+              isImmutable(fingerprint.get(), requestData));
+        }
+        return true;
+      }
+    }
+
+    Optional<byte[]> loaded = mResourceLoader.load(filename);
+    if (!loaded.isPresent()) {
+      return false;
+    }
+    byte[] content = loaded.get();
+    String fingerprint;
+    if (contentType == Responder.ContentType.HTML) {
+      Page page = getPage(content, requestData.getUrl());
+      content = page.content;
+      fingerprint = page.fingerprint;
+    } else {
+      fingerprint = mResourceLoader.getFingerprint(filename)
+          .orElseGet(() -> ResourceLoader.fingerprint(loaded.get()));
+    }
+
+    if (!respondNotModified(fingerprint, requestData, responder)) {
+      responder.respondStatic(
+          content, contentType, etag(fingerprint), isImmutable(fingerprint, requestData));
+    }
+    return true;
+  }
+
+  /** Sends a 304 if the client has the current version cached. Returns whether it did. */
+  private static boolean respondNotModified(String fingerprint, RequestData requestData,
+                                            Responder responder) {
+    String etag = etag(fingerprint);
+    Optional<String> ifNoneMatch = requestData.getHeader("If-None-Match");
+    if (ifNoneMatch.isPresent() && matchesAny(ifNoneMatch.get(), fingerprint)) {
+      responder.respondNotModified(etag, isImmutable(fingerprint, requestData));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Whether the value of an If-None-Match header matches the fingerprint. The header lists the
+   * tags the client has cached, or is '*'. Tags are compared weakly, so their 'W/' is ignored.
+   */
+  private static boolean matchesAny(String ifNoneMatch, String fingerprint) {
+    String opaqueTag = String.format("\"%s\"", fingerprint);
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(opaqueTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A weak tag, as the same tag is used for the compressed and the uncompressed content. */
+  private static String etag(String fingerprint) {
+    return String.format("W/\"%s\"", fingerprint);
+  }
+
+  /** Whether the request carries the current fingerprint, so the response never changes. */
+  private static boolean isImmutable(String fingerprint, RequestData requestData) {
+    return requestData.getString(PARAM_VERSION).map(fingerprint::equals).orElse(false);
+  }
+
+  private Page getPage(byte[] original, String url) {
+    String directory = url.substring(0, url.lastIndexOf('/') + 1);
+    Map<String, Page> byDirectory =
+        sPages.computeIfAbsent(original, k -> Collections.synchronizedMap(new HashMap<>()));
+    return byDirectory.computeIfAbsent(directory, dir -> new Page(rewrite(original, dir)));
+  }
+
+  /** Adds the fingerprint to all references of the page to local files. */
+  private byte[] rewrite(byte[] page, String directory) {
+    String html = new String(page, StandardCharsets.UTF_8);
+    Matcher matcher = REFERENCE.matcher(html);
+    StringBuffer result = new StringBuffer(html.length() + 256);
+    int numRewritten = 0;
+    while (matcher.find()) {
+      String reference = matcher.group(2);
+      Optional<String> fingerprint = getFingerprintForReference(reference, directory);
+      String replacement = matcher.group();
+      if (fingerprint.isPresent()) {
+        replacement = String.format("%s=\"%s?%s=%s\"",
+            matcher.group(1), reference, PARAM_VERSION, fingerprint.get());
+        numRewritten++;
+      }
+      matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+    }
+    matcher.appendTail(result);
+    LOG.info(String.format("Added fingerprints to %d references of a page in '%s'.",
+        numRewritten, directory));
+    return result.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Returns the fingerprint for a referenced file, if it is a local file that is not a page. */
+  private Optional<String> getFingerprintForReference(String reference, String directory) {
+    if (reference.startsWith("//") || reference.contains(":") || reference.contains("?") ||
+        reference.contains("#") || reference.contains("'") || reference.contains("<") ||
+        reference.endsWith("/") ||
+        ContentType.fromFilename(reference) == Responder.ContentType.HTML) {
+      return Optional.empty();
+    }
+    try {
+      String url = URI.create(directory).resolve(reference).normalize().getPath();
+      return toFilename(url).flatMap(mResourceLoader::getFingerprint);
+    } catch (IllegalArgumentException ex) {
+      return Optional.empty();
+    }
+  }
+
+  /** Maps a URL to the file that is served for it. */
+  private static Optional<String> toFilename(String url) {
+    if (url == null || !url.startsWith("/") || url.contains("..")) {
+      return Optional.empty();
+    }
+    for (String path : StaticFileRequest.FILTER) {
+      if (url.startsWith(path)) {
+        return Optional.of(WEB_ROOT + url);
+      }
+    }
+    for (String path : PolymerRequest.FORWARD) {
+      if (url.startsWith(path)) {
+        return Optional.of(POLYMER_ROOT + url);
+      }
+    }
+    return Optional.of(PUBLIC_ROOT + url);
+  }
+}
@@ -20,7 +20,6 @@ import com.google.common.collect.Sets;
 import org.retrostore.data.user.UserService;
 import org.retrostore.resources.ResourceLoader;
 
-import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -31,14 +30,13 @@ public class StaticFileRequest implements Request {
   private static final Logger LOG = Logger.getLogger("StaticFileRequest");
   private static final String WEB_ROOT = "WEB-INF";
 
-
-  private static final Set<String> FILTER = Sets.newHashSet(
+  static final Set<String> FILTER = Sets.newHashSet(
       "/gfx", "/public", "/static", "/favicon", "/bootstrap", "/.well-known");
 
-  private final ResourceLoader mResourceLoader;
+  private final StaticAssets mStaticAssets;
 
   public StaticFileRequest(ResourceLoader resourceLoader) {
-    mResourceLoader = resourceLoader;
+    mStaticAssets = new StaticAssets(resourceLoader);
   }
 
   @Override
@@ -56,9 +54,8 @@ public class StaticFileRequest implements Request {
 
     for (String path : FILTER) {
       if (url.startsWith(path)) {
-        Optional<byte[]> content = mResourceLoader.load(WEB_ROOT + url);
-        if (content.isPresent()) {
-          responder.respond(content.get(), ContentType.fromFilename(url));
+        if (mStaticAssets.serve(
+            WEB_ROOT + url, ContentType.fromFilename(url), requestData, responder)) {
           return true;
         }
       }
@@ -17,6 +17,8 @@
 package org.retrostore.request;
 
 import com.google.common.base.Preconditions;
+import org.retrostore.metrics.Counter;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.resources.MemcacheWrapper;
 
 import java.util.HashMap;
@@ -33,9 +35,9 @@ public class TwoLayerCacheImpl implements Cache {
 
   private static Map<String, byte[]> sFirstLevel = new HashMap<>(100);
   private final MemcacheWrapper mMemcache;
-  private static int mNumServedFirstLevel = 0;
-  private static int mNumServedMemcache = 0;
-  private static int mNumCacheMisses = 0;
+  private static final Counter sNumServedFirstLevel = Metrics.cacheLookups("resources", "memory");
+  private static final Counter sNumServedMemcache = Metrics.cacheLookups("resources", "memcache");
+  private static final Counter sNumCacheMisses = Metrics.cacheLookups("resources", "miss");
 
   public TwoLayerCacheImpl(MemcacheWrapper memcache) {
     mMemcache = memcache;
@@ -46,21 +48,19 @@ public class TwoLayerCacheImpl implements Cache {
     Preconditions.checkNotNull(resourceName);
     Preconditions.checkNotNull(fallback);
 
-    LOG.info("Current cache stats: " + toString());
-
     if (sFirstLevel.containsKey(resourceName) && sFirstLevel.get(resourceName) != null) {
-      mNumServedFirstLevel++;
+      sNumServedFirstLevel.inc();
       return Optional.of(sFirstLevel.get(resourceName));
     }
 
     Optional<byte[]> dataOpt = mMemcache.get(resourceName);
     if (dataOpt.isPresent()) {
-      mNumServedMemcache++;
+      sNumServedMemcache.inc();
       sFirstLevel.put(resourceName, dataOpt.get());
       return dataOpt;
     }
 
-    mNumCacheMisses++;
+    sNumCacheMisses.inc();
     byte[] data = fallback.provide();
     if (data != null && data.length > 0) {
       sFirstLevel.put(resourceName, data);
@@ -72,6 +72,6 @@ public class TwoLayerCacheImpl implements Cache {
   @Override
   public String toString() {
     return String.format("Cache, served %d first-level and %d from memcache. Missed %d.",
-        mNumServedFirstLevel, mNumServedMemcache, mNumCacheMisses);
+        sNumServedFirstLevel.get(), sNumServedMemcache.get(), sNumCacheMisses.get());
   }
 }
@@ -18,8 +18,11 @@ package org.retrostore.request;
 
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppSearch;
+import org.retrostore.data.app.AppStoreItem;
 import org.retrostore.data.user.UserService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -59,6 +62,19 @@ public class UpdateDataRequest implements Request {
       mAppSearch.refreshIndex(mAppManagement.getAllApps());
       long end = System.currentTimeMillis();
       LOG.info(String.format("Updating search index took %dms.", (end - start)));
+    } else if ("updateMediaFormats".equalsIgnoreCase(action)) {
+      // Derives the media formats for apps that have not been saved since they were added.
+      List<AppStoreItem> apps = new ArrayList<>();
+      for (AppStoreItem app : mAppManagement.getAllApps()) {
+        if (app.mediaFormats == null) {
+          apps.add(app);
+        }
+      }
+      long start = System.currentTimeMillis();
+      mAppManagement.updateMediaFormats(apps);
+      long end = System.currentTimeMillis();
+      LOG.info(String.format("Updating media formats of %d apps took %dms.",
+          apps.size(), (end - start)));
     }
     return true;
   }
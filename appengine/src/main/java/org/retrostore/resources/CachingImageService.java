@@ -16,15 +16,27 @@
 
 package org.retrostore.resources;
 
+import org.retrostore.metrics.Counter;
+import org.retrostore.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Image service caching layer around an actual image service.
  */
 public class CachingImageService implements ImageServiceWrapper {
+  private static final Counter sMemoryHits = Metrics.cacheLookups("screenshot_urls", "memory");
+  private static final Counter sMemcacheHits =
+      Metrics.cacheLookups("screenshot_urls", "memcache");
+  private static final Counter sMisses = Metrics.cacheLookups("screenshot_urls", "miss");
+
   private final ImageServiceWrapper mImageService;
   private final MemcacheWrapper mMemcacheService;
   private final Map<String, String> mMemoryCache;
@@ -32,23 +44,28 @@ public class CachingImageService implements ImageServiceWrapper {
   public CachingImageService(ImageServiceWrapper imageService, MemcacheWrapper memcacheService) {
     mImageService = imageService;
     mMemcacheService = memcacheService;
-    mMemoryCache = new HashMap<>();
+    // Shared by all concurrent requests.
+    mMemoryCache = new ConcurrentHashMap<>();
   }
 
   @Override
   public Optional<String> getServingUrl(String blobKey, int imageSize) {
     String key = key(blobKey, imageSize);
-    if (mMemoryCache.containsKey(key)) {
-      return Optional.of(mMemoryCache.get(key));
+    String cachedUrl = mMemoryCache.get(key);
+    if (cachedUrl != null) {
+      sMemoryHits.inc();
+      return Optional.of(cachedUrl);
     }
 
     Optional<String> urlOpt = mMemcacheService.getString(key);
     if (urlOpt.isPresent()) {
+      sMemcacheHits.inc();
       mMemoryCache.put(key, urlOpt.get());
       return urlOpt;
     }
 
     // It's not in any cache.
+    sMisses.inc();
     Optional<String> servingUrl = mImageService.getServingUrl(blobKey, imageSize);
     if (!servingUrl.isPresent()) {
       return Optional.empty();
@@ -63,6 +80,55 @@ public class CachingImageService implements ImageServiceWrapper {
     return getServingUrl(blobKey, DEFAULT_SCREENSHOT_SIZE);
   }
 
+  @Override
+  public Map<String, String> getServingUrls(Collection<String> blobKeys, int imageSize) {
+    Map<String, String> urls = new HashMap<>();
+    Map<String, String> missingKeys = new HashMap<>();
+    for (String blobKey : blobKeys) {
+      String key = key(blobKey, imageSize);
+      String cachedUrl = mMemoryCache.get(key);
+      if (cachedUrl != null) {
+        urls.put(blobKey, cachedUrl);
+      } else {
+        missingKeys.put(key, blobKey);
+      }
+    }
+    sMemoryHits.add(urls.size());
+    if (missingKeys.isEmpty()) {
+      return urls;
+    }
+
+    // Everything that is not in memory is looked up with a single memcache call.
+    Map<String, Object> fromMemcache = mMemcacheService.getAll(missingKeys.keySet());
+    List<String> uncached = new ArrayList<>();
+    for (Map.Entry<String, String> missing : missingKeys.entrySet()) {
+      Object url = fromMemcache.get(missing.getKey());
+      if (url instanceof String) {
+        mMemoryCache.put(missing.getKey(), (String) url);
+        urls.put(missing.getValue(), (String) url);
+      } else {
+        uncached.add(missing.getValue());
+      }
+    }
+    sMemcacheHits.add(missingKeys.size() - uncached.size());
+    sMisses.add(uncached.size());
+    if (uncached.isEmpty()) {
+      return urls;
+    }
+
+    // It's not in any cache.
+    Map<String, String> servingUrls = mImageService.getServingUrls(uncached, imageSize);
+    Map<String, String> toCache = new HashMap<>();
+    for (Map.Entry<String, String> servingUrl : servingUrls.entrySet()) {
+      String key = key(servingUrl.getKey(), imageSize);
+      toCache.put(key, servingUrl.getValue());
+      mMemoryCache.put(key, servingUrl.getValue());
+    }
+    mMemcacheService.putAll(toCache);
+    urls.putAll(servingUrls);
+    return urls;
+  }
+
   private static String key(String blobKey, int imageSize) {
     return String.format(Locale.US, "screenshot_url_%s-%d", blobKey, imageSize);
   }
@@ -16,7 +16,9 @@
 
 package org.retrostore.resources;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import org.retrostore.request.Cache;
 
 import java.io.ByteArrayOutputStream;
@@ -26,7 +28,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,7 +41,15 @@ import java.util.logging.Logger;
 public class DefaultResourceLoader implements ResourceLoader {
   private static final Logger LOG = Logger.getLogger("DefaultResourceLoader");
 
+  /**
+   * Files larger than this are not kept in memory. They are streamed from disk when served, see
+   * {@link #getLargeFile(String)}.
+   */
+  private static final long LARGE_FILE_SIZE = 256 * 1024;
+
   private final Cache mCache;
+  /** Deployed files never change, so their fingerprint only needs to be computed once. */
+  private final Map<String, String> mFingerprints = new ConcurrentHashMap<>();
 
   public DefaultResourceLoader(Cache cache) {
     mCache = cache;
@@ -47,6 +60,38 @@ public class DefaultResourceLoader implements ResourceLoader {
     return mCache.get(filename, () -> loadFile(filename));
   }
 
+  @Override
+  public Optional<String> getFingerprint(String filename) {
+    String fingerprint = mFingerprints.get(filename);
+    if (fingerprint != null) {
+      return Optional.of(fingerprint);
+    }
+    Optional<String> computed;
+    Optional<Path> largeFile = getLargeFile(filename);
+    if (largeFile.isPresent()) {
+      // Do not pull large files into the cache just to compute their fingerprint.
+      try {
+        computed = Optional.of(ResourceLoader.toFingerprint(
+            Files.asByteSource(largeFile.get().toFile()).hash(Hashing.sha256())));
+      } catch (IOException ex) {
+        LOG.log(Level.WARNING, String.format("Cannot read '%s'.", filename), ex);
+        computed = Optional.empty();
+      }
+    } else {
+      computed = load(filename).map(ResourceLoader::fingerprint);
+    }
+    computed.ifPresent(value -> mFingerprints.put(filename, value));
+    return computed;
+  }
+
+  @Override
+  public Optional<Path> getLargeFile(String filename) {
+    File file = new File(filename);
+    return file.isFile() && file.length() > LARGE_FILE_SIZE
+        ? Optional.of(file.toPath())
+        : Optional.empty();
+  }
+
   private byte[] loadFile(String filename) {
     // TODO: Debug mode for local reloading
     try {
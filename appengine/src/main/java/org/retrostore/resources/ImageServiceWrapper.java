@@ -16,6 +16,8 @@
 
 package org.retrostore.resources;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -37,4 +39,15 @@ public interface ImageServiceWrapper {
    * Like {@link #getServingUrl(String, int)} but with a default size.
    */
   Optional<String> getServingUrl(String blobKey);
+
+  /**
+   * Like {@link #getServingUrl(String, int)} but for many images at once. Use this when URLs for
+   * a whole list of images are needed, so that they can be resolved in as few round trips as
+   * possible.
+   *
+   * @param blobKeys  the blob keys of the images to serve.
+   * @param imageSize the maximum size of the longest side.
+   * @return The serving URLs by blob key. Images without a URL are missing from the map.
+   */
+  Map<String, String> getServingUrls(Collection<String> blobKeys, int imageSize);
 }
@@ -19,7 +19,16 @@ package org.retrostore.resources;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.images.ImagesService;
 import com.google.appengine.api.images.ServingUrlOptions;
+import com.google.common.collect.Lists;
+import org.retrostore.data.BlobstoreWrapper;
+import org.retrostore.metrics.Trace;
+import org.retrostore.util.ParallelTasks;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -28,6 +37,7 @@ import java.util.logging.Logger;
  */
 public class ImageServiceWrapperImpl implements ImageServiceWrapper {
   private static final Logger LOG = Logger.getLogger("ImageServiceImpl");
+  private static final int MAX_THREADS = 8;
 
   private final ImagesService mImagesService;
 
@@ -37,11 +47,12 @@ public class ImageServiceWrapperImpl implements ImageServiceWrapper {
 
   @Override
   public Optional<String> getServingUrl(String blobKey, int imageSize) {
-    ServingUrlOptions options = ServingUrlOptions.Builder
-        .withBlobKey(new BlobKey(blobKey))
+    ServingUrlOptions options = (BlobstoreWrapper.isGcsKey(blobKey)
+        ? ServingUrlOptions.Builder.withGoogleStorageFileName(blobKey)
+        : ServingUrlOptions.Builder.withBlobKey(new BlobKey(blobKey)))
         .secureUrl(true)
         .imageSize(imageSize);
-    try {
+    try (Trace.Span ignored = Trace.span(Trace.IMAGES, "getServingUrl")) {
       return Optional.of(mImagesService.getServingUrl(options));
     } catch (IllegalArgumentException ex) {
       LOG.warning("Cannot get image serving URL: " + ex.getMessage());
@@ -53,4 +64,21 @@ public class ImageServiceWrapperImpl implements ImageServiceWrapper {
   public Optional<String> getServingUrl(String blobKey) {
     return getServingUrl(blobKey, DEFAULT_SCREENSHOT_SIZE);
   }
+
+  @Override
+  public Map<String, String> getServingUrls(Collection<String> blobKeys, int imageSize) {
+    // The Images service has no batch call, so the calls are made concurrently instead. This way
+    // a page of apps takes about as long as a single screenshot. Results are cached by the caching
+    // layer above.
+    List<String> keys = new ArrayList<>(blobKeys);
+    List<Optional<String>> servingUrls = keys.size() > 1
+        ? ParallelTasks.map(keys, MAX_THREADS, blobKey -> getServingUrl(blobKey, imageSize))
+        : Lists.transform(keys, blobKey -> getServingUrl(blobKey, imageSize));
+    Map<String, String> urls = new HashMap<>();
+    for (int i = 0; i < keys.size(); ++i) {
+      String blobKey = keys.get(i);
+      servingUrls.get(i).ifPresent(url -> urls.put(blobKey, url));
+    }
+    return urls;
+  }
 }
@@ -16,6 +16,8 @@
 
 package org.retrostore.resources;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -46,6 +48,14 @@ public interface MemcacheWrapper {
    */
   Optional<Object> getObject(String key);
 
+  /**
+   * Gets all items with the given keys that are available, in a single round trip.
+   *
+   * @param keys the keys of the items.
+   * @return The available items, by their key.
+   */
+  Map<String, Object> getAll(Collection<String> keys);
+
   /**
    * Adds or updates an item in memcache.
    *
@@ -53,4 +63,21 @@ public interface MemcacheWrapper {
    * @param data the data to put into the cache.
    */
   void put(String key, Object data);
+
+  /**
+   * Adds or updates all the given items in memcache, in a single round trip.
+   *
+   * @param items the items to put into the cache, by their key.
+   */
+  void putAll(Map<String, ?> items);
+
+  /**
+   * Atomically increments the counter with the given key. This is atomic across all instances.
+   *
+   * @param key          the key of the counter.
+   * @param delta        how much to add to the counter.
+   * @param initialValue the value to start from if the counter does not exist yet.
+   * @return The new value of the counter, if memcache is available.
+   */
+  Optional<Long> increment(String key, long delta, long initialValue);
 }
@@ -18,7 +18,11 @@ package org.retrostore.resources;
 
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.common.base.Preconditions;
+import org.retrostore.metrics.Trace;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -33,21 +37,55 @@ public class MemcacheWrapperImpl implements MemcacheWrapper {
 
   @Override
   public Optional<byte[]> get(String key) {
-    return Optional.ofNullable((byte[]) mMemcacheService.get(key));
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "get")) {
+      return Optional.ofNullable((byte[]) mMemcacheService.get(key));
+    }
+  }
+
+  @Override
+  public Map<String, Object> getAll(Collection<String> keys) {
+    if (keys.isEmpty()) {
+      return new HashMap<>();
+    }
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "getAll")) {
+      return mMemcacheService.getAll(keys);
+    }
   }
 
   @Override
   public void put(String key, Object data) {
-    mMemcacheService.put(key, data);
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "put")) {
+      mMemcacheService.put(key, data);
+    }
+  }
+
+  @Override
+  public void putAll(Map<String, ?> items) {
+    if (!items.isEmpty()) {
+      try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "putAll")) {
+        mMemcacheService.putAll(items);
+      }
+    }
+  }
+
+  @Override
+  public Optional<Long> increment(String key, long delta, long initialValue) {
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "increment")) {
+      return Optional.ofNullable(mMemcacheService.increment(key, delta, initialValue));
+    }
   }
 
   @Override
   public Optional<String> getString(String key) {
-    return Optional.ofNullable((String) mMemcacheService.get(key));
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "get")) {
+      return Optional.ofNullable((String) mMemcacheService.get(key));
+    }
   }
 
   @Override
   public Optional<Object> getObject(String key) {
-    return Optional.ofNullable(mMemcacheService.get(key));
+    try (Trace.Span ignored = Trace.span(Trace.MEMCACHE, "get")) {
+      return Optional.ofNullable(mMemcacheService.get(key));
+    }
   }
 }
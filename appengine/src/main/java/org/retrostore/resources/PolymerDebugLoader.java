@@ -16,6 +16,7 @@
 
 package org.retrostore.resources;
 
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.logging.Logger;
 
@@ -57,6 +58,23 @@ public class PolymerDebugLoader implements ResourceLoader {
     return resource;
   }
 
+  @Override
+  public Optional<Path> getLargeFile(String filename) {
+    // Files from the debug server are always loaded into memory.
+    return filename.startsWith(POLYMER_ROOT)
+        ? Optional.empty()
+        : mFallbackResourceLoader.getLargeFile(filename);
+  }
+
+  @Override
+  public Optional<String> getFingerprint(String filename) {
+    if (!filename.startsWith(POLYMER_ROOT)) {
+      return mFallbackResourceLoader.getFingerprint(filename);
+    }
+    // Files from the debug server can change at any time.
+    return load(filename).map(ResourceLoader::fingerprint);
+  }
+
   @Override
   public Optional<byte[]> loadUrl(String url) {
     return mFallbackResourceLoader.loadUrl(url);
@@ -16,6 +16,10 @@
 
 package org.retrostore.resources;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import java.nio.file.Path;
 import java.util.Optional;
 
 /**
@@ -27,4 +31,26 @@ public interface ResourceLoader {
 
   /** Loads the given URL. */
   Optional<byte[]> loadUrl(String url);
+
+  /**
+   * Returns the file with the given name, if it is so large that it should be streamed from disk
+   * instead of being loaded with {@link #load(String)}.
+   */
+  Optional<Path> getLargeFile(String filename);
+
+  /**
+   * Returns a fingerprint of the file with the given name, which changes whenever its content
+   * changes.
+   */
+  Optional<String> getFingerprint(String filename);
+
+  /** Computes the fingerprint of the given content. */
+  static String fingerprint(byte[] content) {
+    return toFingerprint(Hashing.sha256().hashBytes(content));
+  }
+
+  /** Turns the hash of some content into its fingerprint. */
+  static String toFingerprint(HashCode hash) {
+    return hash.toString().substring(0, 16);
+  }
 }
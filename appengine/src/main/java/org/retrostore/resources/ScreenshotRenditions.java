@@ -0,0 +1,248 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.resources;
+
+import com.google.common.collect.ImmutableList;
+import org.retrostore.request.Responder.ContentType;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the renditions of a screenshot that are stored next to it.
+ *
+ * <p>Renditions are scaled down so that their longer side matches one of the configured sizes.
+ * They are written when the screenshot is stored, so clients can fetch the size they need
+ * without the screenshot being resized on first view. Small sizes are also rendered as 1-bit
+ * images for the monochrome screens of devices.
+ *
+ * <p>The sizes are configured through a system property (see appengine-web.xml).
+ */
+public final class ScreenshotRenditions {
+  private static final Logger LOG = Logger.getLogger("ScreenshotRenditions");
+  private static final String PROP_SIZES = "retrostore.screenshot.sizes";
+  private static final String DEFAULT_SIZES = "64,200,800";
+  /** Monochrome renditions are only created up to this size. */
+  private static final int MAX_MONO_SIZE = 200;
+
+  private static final List<Integer> sSizes = parseSizes(System.getProperty(PROP_SIZES));
+
+  /** The formats renditions are stored in. */
+  public enum Format {
+    /** A full color PNG. */
+    PNG("png"),
+    /** A dithered black and white PNG with one bit per pixel. */
+    MONO("mono");
+
+    public final String str;
+
+    Format(String str) {
+      this.str = str;
+    }
+
+    /** Returns the format with the given name, if it exists. */
+    public static Optional<Format> fromString(String str) {
+      for (Format format : values()) {
+        if (format.str.equalsIgnoreCase(str)) {
+          return Optional.of(format);
+        }
+      }
+      return Optional.empty();
+    }
+  }
+
+  /** A single rendition of a screenshot, always PNG encoded. */
+  public static class Rendition {
+    public final int size;
+    public final Format format;
+    public final byte[] data;
+
+    private Rendition(int size, Format format, byte[] data) {
+      this.size = size;
+      this.format = format;
+      this.data = data;
+    }
+  }
+
+  private ScreenshotRenditions() {}
+
+  /** Whether a rendition in the given size and format is rendered. */
+  private static boolean exists(int size, Format format) {
+    return sSizes.contains(size) && (format == Format.PNG || size <= MAX_MONO_SIZE);
+  }
+
+  /**
+   * Picks the rendition size to serve for the requested size, which is the smallest one that is
+   * at least as large. If the requested size is larger than all renditions, the largest is used.
+   */
+  public static int pickSize(int requestedSize) {
+    for (int size : sSizes) {
+      if (size >= requestedSize) {
+        return size;
+      }
+    }
+    return sSizes.get(sSizes.size() - 1);
+  }
+
+  /**
+   * Returns the storage key of a rendition. The keys of the renditions that were actually written
+   * are recorded with the screenshot, since the configured sizes may change later.
+   *
+   * @param prefix the key of the screenshot, or another prefix in Cloud Storage.
+   */
+  public static String getKey(String prefix, int size, Format format) {
+    return String.format("%s_%d_%s.png", prefix, size, format.str);
+  }
+
+  /**
+   * Renders all configured renditions of the given image.
+   *
+   * @return The renditions, or an empty list if the image could not be decoded or is a WebP.
+   */
+  public static List<Rendition> render(byte[] imageData) {
+    List<Rendition> renditions = new ArrayList<>();
+    // ImageIO has no WebP decoder. Such screenshots are served through the Images service.
+    if (ScreenshotValidator.getImageInfo(length -> imageData)
+        .map(info -> info.contentType == ContentType.WEBP).orElse(false)) {
+      LOG.info("Not rendering WebP screenshot, it is resized by the Images service.");
+      return renditions;
+    }
+    BufferedImage image;
+    try {
+      image = ImageIO.read(new ByteArrayInputStream(imageData));
+    } catch (IOException ex) {
+      LOG.log(Level.WARNING, "Cannot decode screenshot.", ex);
+      return renditions;
+    }
+    if (image == null) {
+      LOG.warning("Screenshot has a format that cannot be decoded.");
+      return renditions;
+    }
+
+    try {
+      for (int size : sSizes) {
+        BufferedImage scaled = scale(image, size);
+        renditions.add(new Rendition(size, Format.PNG, encodePng(scaled)));
+        if (exists(size, Format.MONO)) {
+          renditions.add(new Rendition(size, Format.MONO, encodePng(dither(scaled))));
+        }
+      }
+    } catch (IOException ex) {
+      LOG.log(Level.WARNING, "Cannot encode screenshot rendition.", ex);
+      renditions.clear();
+    }
+    return renditions;
+  }
+
+  /** Scales the image so that its longer side has the given size. Images are never enlarged. */
+  private static BufferedImage scale(BufferedImage image, int size) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    double factor = Math.min(1.0, (double) size / Math.max(width, height));
+    int scaledWidth = Math.max(1, (int) Math.round(width * factor));
+    int scaledHeight = Math.max(1, (int) Math.round(height * factor));
+
+    // Area averaging keeps thin lines of pixel art visible when scaling down by large factors.
+    Image scaled = image.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_AREA_AVERAGING);
+    BufferedImage result =
+        new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = result.createGraphics();
+    try {
+      graphics.drawImage(scaled, 0, 0, null);
+    } finally {
+      graphics.dispose();
+    }
+    return result;
+  }
+
+  /** Turns the image into black and white using Floyd-Steinberg error diffusion. */
+  private static BufferedImage dither(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    float[] luma = new float[width * height];
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        int rgb = image.getRGB(x, y);
+        luma[y * width + x] = 0.299f * ((rgb >> 16) & 0xff) +
+            0.587f * ((rgb >> 8) & 0xff) +
+            0.114f * (rgb & 0xff);
+      }
+    }
+
+    BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        int i = y * width + x;
+        boolean white = luma[i] >= 128;
+        float error = luma[i] - (white ? 255 : 0);
+        result.setRGB(x, y, white ? 0xffffff : 0);
+        if (x + 1 < width) {
+          luma[i + 1] += error * 7 / 16;
+        }
+        if (y + 1 < height) {
+          if (x > 0) {
+            luma[i + width - 1] += error * 3 / 16;
+          }
+          luma[i + width] += error * 5 / 16;
+          if (x + 1 < width) {
+            luma[i + width + 1] += error / 16;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private static byte[] encodePng(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (!ImageIO.write(image, "png", out)) {
+      throw new IOException("No PNG writer available.");
+    }
+    return out.toByteArray();
+  }
+
+  private static List<Integer> parseSizes(String config) {
+    TreeSet<Integer> sizes = new TreeSet<>();
+    try {
+      for (String size : (config != null ? config : DEFAULT_SIZES).split(",")) {
+        int value = Integer.parseInt(size.trim());
+        if (value > 0) {
+          sizes.add(value);
+        }
+      }
+    } catch (NumberFormatException ex) {
+      LOG.warning("Invalid screenshot sizes, using defaults: " + ex.getMessage());
+      return parseSizes(DEFAULT_SIZES);
+    }
+    if (sizes.isEmpty()) {
+      return parseSizes(DEFAULT_SIZES);
+    }
+    LOG.info("Screenshot rendition sizes: " + sizes);
+    return ImmutableList.copyOf(sizes);
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.resources;
+
+import org.retrostore.request.Responder.ContentType;
+
+import java.util.Optional;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * Checks whether uploaded screenshot data is an image we can serve.
+ *
+ * <p>Only the header of the image is parsed, to get its format and dimensions. The image is never
+ * decoded, so images that would take up too much memory once decoded are rejected before they
+ * can do any harm. PNG, JPEG, GIF and WebP images are supported.
+ *
+ * <p>WebP images cannot be decoded on the server, so they get no renditions (see
+ * {@link ScreenshotRenditions}). They are always resized by the Images service instead.
+ */
+public final class ScreenshotValidator {
+  private static final Logger LOG = Logger.getLogger("ScreenshotValidator");
+
+  /** Enough for the headers of all supported formats, unless a JPEG has large metadata. */
+  public static final int HEADER_SIZE = 512;
+  /** JPEG metadata segments can push the frame header back by up to this many bytes. */
+  public static final int MAX_HEADER_SIZE = 128 * 1024;
+  /** Larger screenshot files are rejected, they are loaded whole to create renditions. */
+  public static final int MAX_FILE_SIZE = 8 * 1024 * 1024;
+  private static final int MAX_DIMENSION = 4096;
+  private static final long MAX_PIXELS = 4096L * 4096L;
+
+  private static final byte[] PNG_SIGNATURE =
+      {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+  /** The format and dimensions of an image, as read from its header. */
+  public static class ImageInfo {
+    public final ContentType contentType;
+    public final int width;
+    public final int height;
+
+    private ImageInfo(ContentType contentType, int width, int height) {
+      this.contentType = contentType;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  private ScreenshotValidator() {}
+
+  /** Check whether the given data is a valid image. */
+  public static boolean isValidImage(byte[] imageData) {
+    return getImageInfo(length -> imageData).isPresent();
+  }
+
+  /**
+   * Reads the header of an image and checks whether it is a valid image.
+   *
+   * @param prefixLoader loads up to the given number of bytes from the start of the image.
+   *                     Usually only {@link #HEADER_SIZE} bytes are requested.
+   * @return The format and size of the image, if it is a supported image within the limits.
+   */
+  public static Optional<ImageInfo> getImageInfo(IntFunction<byte[]> prefixLoader) {
+    byte[] header = prefixLoader.apply(HEADER_SIZE);
+    if (header == null || header.length == 0) {
+      LOG.warning("Screenshot data is empty.");
+      return Optional.empty();
+    }
+    Optional<ImageInfo> info = parseHeader(header);
+    if (!info.isPresent() && isJpeg(header) && header.length == HEADER_SIZE) {
+      info = parseHeader(prefixLoader.apply(MAX_HEADER_SIZE));
+    }
+    if (!info.isPresent()) {
+      LOG.warning("Screenshot data is not a supported image.");
+      return Optional.empty();
+    }
+
+    ImageInfo image = info.get();
+    if (image.width <= 0 || image.height <= 0 ||
+        image.width > MAX_DIMENSION || image.height > MAX_DIMENSION ||
+        (long) image.width * image.height > MAX_PIXELS) {
+      LOG.warning(String.format("Screenshot has invalid dimensions: %dx%d.",
+          image.width, image.height));
+      return Optional.empty();
+    }
+    return info;
+  }
+
+  private static Optional<ImageInfo> parseHeader(byte[] data) {
+    if (startsWith(data, PNG_SIGNATURE)) {
+      return parsePng(data);
+    } else if (isJpeg(data)) {
+      return parseJpeg(data);
+    } else if (startsWith(data, "GIF87a") || startsWith(data, "GIF89a")) {
+      return parseGif(data);
+    } else if (startsWith(data, "RIFF") && matches(data, 8, "WEBP")) {
+      return parseWebp(data);
+    }
+    return Optional.empty();
+  }
+
+  /** The first chunk of a PNG is always IHDR, which starts with the dimensions. */
+  private static Optional<ImageInfo> parsePng(byte[] data) {
+    if (data.length < 24 || !matches(data, 12, "IHDR")) {
+      return Optional.empty();
+    }
+    return Optional.of(new ImageInfo(ContentType.PNG, int32Be(data, 16), int32Be(data, 20)));
+  }
+
+  /** The dimensions are in the frame header (SOFn), which comes after the metadata segments. */
+  private static Optional<ImageInfo> parseJpeg(byte[] data) {
+    int pos = 2;
+    while (pos + 3 < data.length) {
+      if ((data[pos] & 0xff) != 0xff) {
+        return Optional.empty();
+      }
+      int marker = data[pos + 1] & 0xff;
+      if (marker == 0xff) {
+        // Fill byte.
+        pos++;
+        continue;
+      }
+      if (marker == 0xd9 || marker == 0xda) {
+        // End of image or start of scan, without a frame header.
+        return Optional.empty();
+      }
+      if ((marker >= 0xd0 && marker <= 0xd7) || marker == 0x01) {
+        // Markers without a segment.
+        pos += 2;
+        continue;
+      }
+      boolean isFrameHeader = marker >= 0xc0 && marker <= 0xcf &&
+          marker != 0xc4 && marker != 0xc8 && marker != 0xcc;
+      if (isFrameHeader) {
+        if (pos + 9 > data.length) {
+          return Optional.empty();
+        }
+        return Optional.of(
+            new ImageInfo(ContentType.JPEG, int16Be(data, pos + 7), int16Be(data, pos + 5)));
+      }
+      pos += 2 + int16Be(data, pos + 2);
+    }
+    return Optional.empty();
+  }
+
+  private static Optional<ImageInfo> parseGif(byte[] data) {
+    if (data.length < 10) {
+      return Optional.empty();
+    }
+    return Optional.of(new ImageInfo(ContentType.GIF, int16Le(data, 6), int16Le(data, 8)));
+  }
+
+  /** WebP has a different header for lossy, lossless and extended images. */
+  private static Optional<ImageInfo> parseWebp(byte[] data) {
+    if (data.length < 30) {
+      return Optional.empty();
+    }
+    if (matches(data, 12, "VP8 ")) {
+      // Lossy: Key frame start code, then 14 bit dimensions.
+      if ((data[23] & 0xff) != 0x9d || (data[24] & 0xff) != 0x01 || (data[25] & 0xff) != 0x2a) {
+        return Optional.empty();
+      }
+      return Optional.of(new ImageInfo(ContentType.WEBP,
+          int16Le(data, 26) & 0x3fff, int16Le(data, 28) & 0x3fff));
+    } else if (matches(data, 12, "VP8L")) {
+      // Lossless: Signature byte, then two 14 bit values of the dimensions minus one.
+      if ((data[20] & 0xff) != 0x2f) {
+        return Optional.empty();
+      }
+      int bits = (data[21] & 0xff) | (data[22] & 0xff) << 8 |
+          (data[23] & 0xff) << 16 | (data[24] & 0xff) << 24;
+      return Optional.of(new ImageInfo(ContentType.WEBP,
+          (bits & 0x3fff) + 1, ((bits >> 14) & 0x3fff) + 1));
+    } else if (matches(data, 12, "VP8X")) {
+      // Extended: 24 bit canvas dimensions minus one.
+      return Optional.of(new ImageInfo(ContentType.WEBP,
+          int24Le(data, 24) + 1, int24Le(data, 27) + 1));
+    }
+    return Optional.empty();
+  }
+
+  private static boolean isJpeg(byte[] data) {
+    return data.length >= 3 &&
+        (data[0] & 0xff) == 0xff && (data[1] & 0xff) == 0xd8 && (data[2] & 0xff) == 0xff;
+  }
+
+  private static boolean startsWith(byte[] data, byte[] prefix) {
+    if (data.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (data[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean startsWith(byte[] data, String prefix) {
+    return matches(data, 0, prefix);
+  }
+
+  private static boolean matches(byte[] data, int offset, String ascii) {
+    if (data.length < offset + ascii.length()) {
+      return false;
+    }
+    for (int i = 0; i < ascii.length(); ++i) {
+      if (data[offset + i] != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int int32Be(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 |
+        (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+  }
+
+  private static int int16Be(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 8 | (data[offset + 1] & 0xff);
+  }
+
+  private static int int16Le(byte[] data, int offset) {
+    return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8;
+  }
+
+  private static int int24Le(byte[] data, int offset) {
+    return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 |
+        (data[offset + 2] & 0xff) << 16;
+  }
+}
@@ -17,7 +17,6 @@
 package org.retrostore.rpc;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppStoreItem;
@@ -29,6 +28,7 @@ import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
 import org.retrostore.rpc.internal.RpcResponse;
+import org.retrostore.util.Json;
 
 import java.util.Optional;
 import java.util.logging.Logger;
@@ -79,7 +79,7 @@ public class AddEditAppRpcCall implements RpcCall<RpcParameters> {
     }
 
     try {
-      Data data = (new Gson()).fromJson(body, Data.class);
+      Data data = Json.fromJson(body, Data.class);
       if (checkNullEmpty(data.appName, "App name missing", responder) ||
           checkNullEmpty(data.appVersion, "App version missing", responder) ||
           checkNullEmpty(data.description, "Description missing", responder) ||
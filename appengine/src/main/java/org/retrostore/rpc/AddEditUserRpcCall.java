@@ -17,7 +17,6 @@
 package org.retrostore.rpc;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.retrostore.data.user.RetroStoreUser;
 import org.retrostore.data.user.UserAccountType;
@@ -26,6 +25,7 @@ import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
 import org.retrostore.rpc.internal.RpcResponse;
+import org.retrostore.util.Json;
 
 import java.util.logging.Logger;
 
@@ -67,7 +67,7 @@ public class AddEditUserRpcCall implements RpcCall<RpcParameters> {
     }
 
     try {
-      Data data = (new Gson()).fromJson(body, Data.class);
+      Data data = Json.fromJson(body, Data.class);
       if (Strings.isNullOrEmpty(data.email)) {
         RpcResponse.respond(false, "E-Mail missing", responder);
         return;
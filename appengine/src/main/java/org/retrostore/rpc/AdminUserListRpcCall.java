@@ -22,12 +22,19 @@ import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
 
+import java.util.Optional;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Return a list of RetroStore users.
+ *
+ * <p>Without parameters, all users are returned. With a 'num' parameter, at most that many users
+ * are returned together with a cursor, which can be passed as the 'cursor' parameter to get the
+ * next page.
  */
 public class AdminUserListRpcCall implements RpcCall<RpcParameters> {
+  private static final int MAX_PAGE_SIZE = 500;
   private final UserManagement mUserManagement;
 
   public AdminUserListRpcCall(UserManagement userManagement) {
@@ -46,6 +53,20 @@ public class AdminUserListRpcCall implements RpcCall<RpcParameters> {
 
   @Override
   public void call(RpcParameters params, Responder responder) {
-    responder.respondJson(mUserManagement.getAllUsers());
+    Optional<Integer> num = params.getInt("num");
+    if (!num.isPresent()) {
+      responder.respondJson(mUserManagement.getAllUsers());
+      return;
+    }
+    if (num.get() <= 0 || num.get() > MAX_PAGE_SIZE) {
+      responder.respondBadRequest(
+          String.format("'num' must be between 1 and %d.", MAX_PAGE_SIZE));
+      return;
+    }
+    try {
+      responder.respondJson(mUserManagement.getUsers(num.get(), params.getString("cursor")));
+    } catch (IllegalArgumentException ex) {
+      responder.respondBadRequest("Invalid cursor.");
+    }
   }
 }
@@ -22,6 +22,7 @@ import org.retrostore.data.user.UserAccountType;
 import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
+import org.retrostore.util.Json;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,6 +37,7 @@ public class AppListRpcCall implements RpcCall<RpcParameters> {
 
   public AppListRpcCall(AppManagement appManagement) {
     mAppManagement = appManagement;
+    Json.prepare(AppStoreItem.class);
   }
 
   @Override
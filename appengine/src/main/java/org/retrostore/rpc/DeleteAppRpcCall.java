@@ -17,7 +17,6 @@
 package org.retrostore.rpc;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.user.UserAccountType;
@@ -25,6 +24,7 @@ import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
 import org.retrostore.rpc.internal.RpcResponse;
+import org.retrostore.util.Json;
 
 /**
  * Deletes the app with the given ID.
@@ -60,7 +60,7 @@ public class DeleteAppRpcCall implements RpcCall<RpcParameters> {
     }
 
     try {
-      Data data = (new Gson()).fromJson(body, Data.class);
+      Data data = Json.fromJson(body, Data.class);
       if (Strings.isNullOrEmpty(data.id)) {
         RpcResponse.respond(false, "No email address given.", responder);
         return;
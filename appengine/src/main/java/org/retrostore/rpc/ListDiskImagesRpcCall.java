@@ -23,6 +23,7 @@ import org.retrostore.data.user.UserAccountType;
 import org.retrostore.request.Responder;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
+import org.retrostore.util.Json;
 
 import java.util.Map;
 import java.util.Optional;
@@ -51,6 +52,7 @@ public class ListDiskImagesRpcCall implements RpcCall<RpcParameters> {
 
   public ListDiskImagesRpcCall(AppManagement appManagement) {
     mAppManagement = appManagement;
+    Json.prepare(DiskImageInfo.class);
   }
 
 
@@ -25,11 +25,13 @@ import org.retrostore.request.Responder;
 import org.retrostore.resources.ImageServiceWrapper;
 import org.retrostore.rpc.internal.RpcCall;
 import org.retrostore.rpc.internal.RpcParameters;
+import org.retrostore.util.Json;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 
 /**
  * Returns a list of apps from the datastore that is used to show on the public website.
@@ -37,12 +39,17 @@ import java.util.Optional;
 public class PublicAppListRpcCall implements RpcCall<RpcParameters> {
   private static final int SCREENSHOT_SIZE = 800;
   private static final String FALLBACK_SCREENSHOT_URL = "/gfx/loading_failed.png";
+  /** The media format the JS-TRS emulator supports. */
+  private static final String EMULATOR_FORMAT = "dmk";
   private final AppManagement mAppManagement;
   private final ImageServiceWrapper mImageService;
+  /** The last list that was sent, which is valid for as long as the catalog does not change. */
+  private volatile SerializedList mSerializedList;
 
   public PublicAppListRpcCall(AppManagement appManagement, ImageServiceWrapper imageService) {
     mAppManagement = appManagement;
     mImageService = imageService;
+    Json.prepare(PubAppListItem.class);
   }
 
   @Override
@@ -56,9 +63,35 @@ public class PublicAppListRpcCall implements RpcCall<RpcParameters> {
     return true;
   }
 
+  /** The JSON of the list, for the catalog generation it was created from. */
+  private static class SerializedList {
+    final long catalogGeneration;
+    final byte[] json;
+
+    SerializedList(long catalogGeneration, byte[] json) {
+      this.catalogGeneration = catalogGeneration;
+      this.json = json;
+    }
+  }
+
   @Override
   public void call(RpcParameters params, Responder responder) {
+    // Read before the apps, so that a change while the list is created invalidates it.
+    long generation = mAppManagement.getCatalogGeneration();
+    SerializedList list = mSerializedList;
+    if (list == null || list.catalogGeneration != generation) {
+      byte[] json = Json.toJsonBytes(createList());
+      list = new SerializedList(generation, json);
+      mSerializedList = list;
+    }
+    // The same array is sent until the catalog changes, so it is only compressed once.
+    responder.respondSerializedJson(list.json);
+  }
+
+  private List<PubAppListItem> createList() {
     List<AppStoreItem> allApps = mAppManagement.getAllApps();
+    Map<String, String> screenshotUrls = getScreenshotUrls(allApps);
+    Map<Long, Author> authors = getAuthors(allApps);
 
     List<PubAppListItem> listingApps = new ArrayList<>(allApps.size());
     // We should probably add a new class here which contains only the stuff we need. For now we
@@ -67,15 +100,15 @@ public class PublicAppListRpcCall implements RpcCall<RpcParameters> {
       PubAppListItem listingApp = new PubAppListItem();
       listingApp.name = app.listing.name;
       listingApp.version = app.listing.versionString;
-      listingApp.author = getAuthorString(app.listing.authorId);
+      listingApp.author = getAuthorString(authors.get(app.listing.authorId));
       listingApp.description = app.listing.description;
-      listingApp.screenshots = getScreenshotUrls(app.screenshotsBlobKeys);
+      listingApp.screenshots = getScreenshotUrls(app.screenshotsBlobKeys, screenshotUrls);
       listingApp.reportUrl = "/reportapp?appId=" + app.id;
       listingApp.downloadUrl = "/downloadapp?appId=" + app.id;
 
       // Only set this if the app contains an image in a format which JS-TRS supports.
       // Note: CMD is supported, but some apps which then access a disk fail.
-      if (hasDmkImage(app.id)) {
+      if (isEmulatorCompatible(app)) {
         listingApp.emulatorAppId = app.id;
       }
       listingApps.add(listingApp);
@@ -87,27 +120,44 @@ public class PublicAppListRpcCall implements RpcCall<RpcParameters> {
       }
       return o1.name.compareTo(o2.name);
     });
-    responder.respondJson(listingApps);
+    return listingApps;
   }
 
-  private String getAuthorString(long id) {
-    Optional<Author> author = mAppManagement.getAuthorById(id);
-    if (author.isPresent()) {
-      return author.get().name;
+  private static String getAuthorString(Author author) {
+    if (author != null) {
+      return author.name;
     }
     return "Unknown author";
   }
 
-  private String[] getScreenshotUrls(List<String> blobkeys) {
+  /** Loads the authors of all apps at once, by ID. */
+  private Map<Long, Author> getAuthors(List<AppStoreItem> apps) {
+    Set<Long> authorIds = new HashSet<>();
+    for (AppStoreItem app : apps) {
+      authorIds.add(app.listing.authorId);
+    }
+    return mAppManagement.getAuthorsById(authorIds);
+  }
+
+  /** Resolves the screenshot URLs of all apps at once, by blob key. */
+  private Map<String, String> getScreenshotUrls(List<AppStoreItem> apps) {
+    List<String> blobKeys = new ArrayList<>();
+    for (AppStoreItem app : apps) {
+      blobKeys.addAll(app.screenshotsBlobKeys);
+    }
+    return mImageService.getServingUrls(blobKeys, SCREENSHOT_SIZE);
+  }
+
+  private static String[] getScreenshotUrls(List<String> blobkeys,
+                                            Map<String, String> screenshotUrls) {
     String[] urls = new String[blobkeys.size()];
     for (int i = 0; i < blobkeys.size(); ++i) {
-      Optional<String> servingUrl = mImageService.getServingUrl(blobkeys.get(i), SCREENSHOT_SIZE);
-      urls[i] = servingUrl.orElse(FALLBACK_SCREENSHOT_URL);
+      urls[i] = screenshotUrls.getOrDefault(blobkeys.get(i), FALLBACK_SCREENSHOT_URL);
     }
     return urls;
   }
 
-  class PubAppListItem {
+  static class PubAppListItem {
     public String name;
     public String version;
     public String author;
@@ -119,10 +169,14 @@ public class PublicAppListRpcCall implements RpcCall<RpcParameters> {
     public String emulatorAppId;
   }
 
-  private boolean hasDmkImage(String appId) {
-    Map<Long, MediaImage> mediaImages = mAppManagement.getMediaImagesForApp(appId);
+  private boolean isEmulatorCompatible(AppStoreItem app) {
+    if (app.mediaFormats != null) {
+      return app.mediaFormats.contains(EMULATOR_FORMAT);
+    }
+    // Not derived yet for this app, see UpdateDataRequest.
+    Map<Long, MediaImage> mediaImages = mAppManagement.getMediaImagesForApp(app.id);
     for (MediaImage media : mediaImages.values()) {
-      if (media.filename.toLowerCase().endsWith(".dmk")) {
+      if (MediaImage.getFormat(media.filename).map(EMULATOR_FORMAT::equals).orElse(false)) {
         return true;
       }
     }
@@ -23,11 +23,55 @@ import org.retrostore.client.common.proto.Trs80Model;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppStoreItem;
 import org.retrostore.data.app.Author;
+import org.retrostore.request.RequestData;
+import org.retrostore.request.ScreenshotServeRequest;
 import org.retrostore.resources.ImageServiceWrapper;
+import org.retrostore.resources.ScreenshotRenditions;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 class ApiHelper {
+  /**
+   * API parameters are part of the protos shared with the clients. The screenshot rendition is
+   * therefore requested through query parameters, which older clients simply do not send.
+   */
+  private static final String PARAM_SCREENSHOT_SIZE = "screenshotSize";
+  private static final String PARAM_SCREENSHOT_FORMAT = "screenshotFormat";
+
+  /** The screenshot rendition a client asked for. */
+  static class ScreenshotSpec {
+    final String rootUrl;
+    final int size;
+    final ScreenshotRenditions.Format format;
+
+    private ScreenshotSpec(String rootUrl, int size, ScreenshotRenditions.Format format) {
+      this.rootUrl = rootUrl;
+      this.size = size;
+      this.format = format;
+    }
+
+    /** Returns the rendition requested with the given API request, if any. */
+    static Optional<ScreenshotSpec> fromRequest(RequestData requestData) {
+      Optional<Integer> size = requestData.getInt(PARAM_SCREENSHOT_SIZE);
+      if (!size.isPresent() || size.get() <= 0) {
+        return Optional.empty();
+      }
+      ScreenshotRenditions.Format format = requestData.getString(PARAM_SCREENSHOT_FORMAT)
+          .flatMap(ScreenshotRenditions.Format::fromString)
+          .orElse(ScreenshotRenditions.Format.PNG);
+      return Optional.of(new ScreenshotSpec(requestData.getRootUrl(), size.get(), format));
+    }
+  }
+
   private final AppManagement mAppManagement;
   private final ImageServiceWrapper mImageService;
 
@@ -37,38 +81,108 @@ class ApiHelper {
   }
 
   App.Builder convert(AppStoreItem app) {
-    App.Builder appBuilder = App.newBuilder();
-    appBuilder.setId(app.id);
-    appBuilder.setName(app.listing.name);
-    appBuilder.setVersion(app.listing.versionString);
-    appBuilder.setDescription(app.listing.description);
-    appBuilder.setReleaseYear(app.listing.releaseYear);
-    Optional<Author> authorOpt = mAppManagement.getAuthorById(app.listing.authorId);
-    authorOpt.ifPresent(author -> appBuilder.setAuthor(author.name));
-    // Set the TRS80 related parameters.
-    Trs80Extension.Builder trsExtension = Trs80Extension.newBuilder();
-    trsExtension.setModel(getTrs80Model(app));
-    appBuilder.setExtTrs80(trsExtension);
-
-    for (String blobKey : app.screenshotsBlobKeys) {
-      appBuilder.addScreenshotUrl(mImageService.getServingUrl(blobKey).orElse(""));
+    return convert(app, Optional.empty());
+  }
+
+  /**
+   * Converts the app, with screenshot URLs for the given rendition. Without one, the screenshots
+   * are served in their default size.
+   */
+  App.Builder convert(AppStoreItem app, Optional<ScreenshotSpec> screenshotSpec) {
+    return convert(Collections.singletonList(app), screenshotSpec).get(0);
+  }
+
+  /**
+   * Like {@link #convert(AppStoreItem, Optional)}, but for a list of apps. The authors and
+   * screenshot URLs of all apps are fetched together up front, which is a lot faster than doing
+   * it app by app. The apps are then converted in memory, in the same order.
+   */
+  List<App.Builder> convert(List<AppStoreItem> apps, Optional<ScreenshotSpec> screenshotSpec) {
+    Map<Long, Author> authors = getAuthors(apps);
+    Map<String, String> screenshotUrls = getScreenshotUrls(apps, screenshotSpec);
+    List<App.Builder> builders = new ArrayList<>(apps.size());
+    for (AppStoreItem app : apps) {
+      App.Builder appBuilder = App.newBuilder();
+      appBuilder.setId(app.id);
+      appBuilder.setName(app.listing.name);
+      appBuilder.setVersion(app.listing.versionString);
+      appBuilder.setDescription(app.listing.description);
+      appBuilder.setReleaseYear(app.listing.releaseYear);
+      Author author = authors.get(app.listing.authorId);
+      if (author != null) {
+        appBuilder.setAuthor(author.name);
+      }
+      // Set the TRS80 related parameters.
+      Trs80Extension.Builder trsExtension = Trs80Extension.newBuilder();
+      trsExtension.setModel(getTrs80Model(app));
+      appBuilder.setExtTrs80(trsExtension);
+
+      for (String blobKey : app.screenshotsBlobKeys) {
+        appBuilder.addScreenshotUrl(screenshotUrls.getOrDefault(blobKey, ""));
+      }
+      builders.add(appBuilder);
+    }
+    return builders;
+  }
+
+  /** Loads the authors of all the given apps, by ID. */
+  private Map<Long, Author> getAuthors(List<AppStoreItem> apps) {
+    Set<Long> authorIds = new HashSet<>();
+    for (AppStoreItem app : apps) {
+      authorIds.add(app.listing.authorId);
+    }
+    return mAppManagement.getAuthorsById(authorIds);
+  }
+
+  /** Resolves the screenshot URLs of all the given apps, by blob key. */
+  private Map<String, String> getScreenshotUrls(List<AppStoreItem> apps,
+                                                Optional<ScreenshotSpec> specOpt) {
+    Map<String, String> urls = new HashMap<>();
+    List<String> servedByImageService = new ArrayList<>();
+    for (AppStoreItem app : apps) {
+      for (String blobKey : app.screenshotsBlobKeys) {
+        // Renditions are served by the public screenshot request, which falls back to the Images
+        // service for screenshots without them.
+        if (specOpt.isPresent()) {
+          urls.put(blobKey, getRenditionUrl(blobKey, specOpt.get()));
+        } else {
+          servedByImageService.add(blobKey);
+        }
+      }
     }
-    return appBuilder;
+    int size = specOpt.map(spec -> spec.size).orElse(ImageServiceWrapper.DEFAULT_SCREENSHOT_SIZE);
+    urls.putAll(mImageService.getServingUrls(servedByImageService, size));
+    return urls;
   }
 
-  AppNano.Builder convertToNano(AppStoreItem app) {
-    AppNano.Builder appBuilder = AppNano.newBuilder();
-    appBuilder.setId(app.id);
-    appBuilder.setName(app.listing.name);
-    appBuilder.setVersion(app.listing.versionString);
-    appBuilder.setReleaseYear(app.listing.releaseYear);
-    Optional<Author> authorOpt = mAppManagement.getAuthorById(app.listing.authorId);
-    authorOpt.ifPresent(author -> appBuilder.setAuthor(author.name));
-    // Set the TRS80 related parameters.
-    Trs80Extension.Builder trsExtension = Trs80Extension.newBuilder();
-    trsExtension.setModel(getTrs80Model(app));
-    appBuilder.setExtTrs80(trsExtension);
-    return appBuilder;
+  private static String getRenditionUrl(String blobKey, ScreenshotSpec spec) {
+    return String.format("%s%s?key=%s&size=%d&format=%s",
+        spec.rootUrl, ScreenshotServeRequest.PATH_PUBLIC,
+        URLEncoder.encode(blobKey, StandardCharsets.UTF_8),
+        ScreenshotRenditions.pickSize(spec.size), spec.format.str);
+  }
+
+  /** Converts the apps in the same order, with the authors of all apps loaded together. */
+  List<AppNano.Builder> convertToNano(List<AppStoreItem> apps) {
+    Map<Long, Author> authors = getAuthors(apps);
+    List<AppNano.Builder> builders = new ArrayList<>(apps.size());
+    for (AppStoreItem app : apps) {
+      AppNano.Builder appBuilder = AppNano.newBuilder();
+      appBuilder.setId(app.id);
+      appBuilder.setName(app.listing.name);
+      appBuilder.setVersion(app.listing.versionString);
+      appBuilder.setReleaseYear(app.listing.releaseYear);
+      Author author = authors.get(app.listing.authorId);
+      if (author != null) {
+        appBuilder.setAuthor(author.name);
+      }
+      // Set the TRS80 related parameters.
+      Trs80Extension.Builder trsExtension = Trs80Extension.newBuilder();
+      trsExtension.setModel(getTrs80Model(app));
+      appBuilder.setExtTrs80(trsExtension);
+      builders.add(appBuilder);
+    }
+    return builders;
   }
 
   Trs80Model getTrs80Model(AppStoreItem app) {
@@ -11,20 +11,24 @@ import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppStoreItem;
 import org.retrostore.data.xray.StateManagement;
 import org.retrostore.data.xray.SystemState;
+import org.retrostore.metrics.Counter;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Responder;
 import org.retrostore.request.Response;
 import org.retrostore.rpc.internal.ApiCall;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 public class FetchMediaImageRegionApiCall implements ApiCall {
   private static final Logger log = Logger.getLogger("DownloadStateApiCall");
-  private static final Map<String, byte[]> CACHE = new HashMap<>();
+  private static final Map<String, byte[]> CACHE = new ConcurrentHashMap<>();
+  private static final Counter sCacheHits = Metrics.cacheLookups("media_image_regions", "memory");
+  private static final Counter sCacheMisses = Metrics.cacheLookups("media_image_regions", "miss");
 
   private final FetchMediaImagesApiCall mediaImageCall;
 
@@ -47,19 +51,23 @@ public class FetchMediaImageRegionApiCall implements ApiCall {
       log.warning(errMsg);
       return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
     }
+    byte[] result = callInternal(apiParams);
+    return responder -> responder.respond(result, Responder.ContentType.BYTES);
+  }
 
-
+  /** Returns the requested region of the media image, or no data if the request is invalid. */
+  byte[] callInternal(FetchMediaImageRegionParams apiParams) {
     if (apiParams == null || apiParams.getToken().isBlank()) {
       String errMsg = "Illegal params. Ensure 'token' is set.";
       log.warning(errMsg);
-      return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
+      return new byte[0];
     }
     String[] tokenSplit = apiParams.getToken().split("/");
 
     if (tokenSplit.length != 2 || tokenSplit[0].isBlank() || tokenSplit[1].isBlank()) {
       String errMsg = "Illegal params. Ensure 'token' has the right format.";
       log.warning(errMsg);
-      return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
+      return new byte[0];
     }
     String paramAppId = tokenSplit[0];
     String paramFileName = tokenSplit[1];
@@ -67,15 +75,17 @@ public class FetchMediaImageRegionApiCall implements ApiCall {
 
     if (apiParams.getStart() < 0) {
       log.warning("Illegal params. Ensure 'start' is > 0.");
-      return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
+      return new byte[0];
     }
     if (apiParams.getLength() <= 0 || apiParams.getLength() > 10 << 18) {
       log.warning("Illegal params. Ensure 'length' is > 0 and not too large.");
-      return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
+      return new byte[0];
     }
 
     // Check if the image is already in the runtime cache. If not, load it.
-    if (!CACHE.containsKey(apiParams.getToken())) {
+    boolean cached = CACHE.containsKey(apiParams.getToken());
+    (cached ? sCacheHits : sCacheMisses).inc();
+    if (!cached) {
       FetchMediaImagesApiCall.Params mediaImageParams =
           new FetchMediaImagesApiCall.Params(paramAppId, Set.of());
 
@@ -86,7 +96,7 @@ public class FetchMediaImageRegionApiCall implements ApiCall {
       // Return error if fetching the media images failed.
       if (!mediaImages.getSuccess()) {
         log.warning("Could not obtain media images.");
-        return responder -> responder.respond(new byte[0], Responder.ContentType.BYTES);
+        return new byte[0];
       }
 
       // Convert all media images to references.
@@ -111,6 +121,6 @@ public class FetchMediaImageRegionApiCall implements ApiCall {
     if (apiParams.getStart() <= mediaImageBytes.length) {
       System.arraycopy(mediaImageBytes, apiParams.getStart(), result, 0, len);
     }
-    return responder -> responder.respond(result, Responder.ContentType.BYTES);
+    return result;
   }
 }
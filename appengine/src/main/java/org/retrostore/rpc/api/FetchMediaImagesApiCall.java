@@ -17,7 +17,6 @@
 package org.retrostore.rpc.api;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.retrostore.client.common.FetchMediaImagesApiParams;
@@ -30,6 +29,7 @@ import org.retrostore.data.app.AppStoreItem;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Response;
 import org.retrostore.rpc.internal.ApiCall;
+import org.retrostore.util.Json;
 
 import java.util.HashSet;
 import java.util.Map;
@@ -156,7 +156,7 @@ public class FetchMediaImagesApiCall implements ApiCall {
 
   private FetchMediaImagesApiParams parseLegacyParams(String params) {
     try {
-      return (new Gson()).fromJson(params, FetchMediaImagesApiParams.class);
+      return Json.fromJson(params, FetchMediaImagesApiParams.class);
     } catch (Exception ex) {
       LOG.log(Level.WARNING, "Cannot parse params", ex);
       return null;
@@ -17,7 +17,6 @@
 package org.retrostore.rpc.api;
 
 import com.google.common.base.Strings;
-import com.google.gson.Gson;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.retrostore.client.common.GetAppApiParams;
 import org.retrostore.client.common.proto.ApiResponseApps;
@@ -28,7 +27,9 @@ import org.retrostore.request.RequestData;
 import org.retrostore.request.Response;
 import org.retrostore.resources.ImageServiceWrapper;
 import org.retrostore.rpc.internal.ApiCall;
+import org.retrostore.util.Json;
 
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,21 +55,23 @@ public class GetAppApiCall implements ApiCall {
   @Override
   public Response call(RequestData params) {
     String appId = getAppIdFromParams(params.getRawBody());
-    final ApiResponseApps responseApp = callInternal(appId);
+    final ApiResponseApps responseApp =
+        callInternal(appId, ApiHelper.ScreenshotSpec.fromRequest(params));
     return responder -> responder.respondProto(responseApp);
   }
 
-  private ApiResponseApps callInternal(String appId) {
+  private ApiResponseApps callInternal(String appId,
+                                       Optional<ApiHelper.ScreenshotSpec> screenshotSpec) {
     ApiResponseApps.Builder response = ApiResponseApps.newBuilder();
     if (Strings.isNullOrEmpty(appId)) {
       return response.setSuccess(false).setMessage("Invalid request, appId missing.").build();
     }
 
-    java.util.Optional<AppStoreItem> appById = mAppManagement.getAppById(appId);
+    Optional<AppStoreItem> appById = mAppManagement.getAppById(appId);
     if (!appById.isPresent()) {
       return response.setSuccess(false).setMessage("App not found.").build();
     }
-    response.addApp(mApiHelper.convert(appById.get()));
+    response.addApp(mApiHelper.convert(appById.get(), screenshotSpec));
     return response.setSuccess(true).setMessage("All good :-)").build();
   }
 
@@ -94,7 +97,7 @@ public class GetAppApiCall implements ApiCall {
 
   private GetAppApiParams parseLegacyParams(String params) {
     try {
-      return (new Gson()).fromJson(params, GetAppApiParams.class);
+      return Json.fromJson(params, GetAppApiParams.class);
     } catch (Exception ex) {
       LOG.log(Level.WARNING, "Cannot parse params", ex);
       return null;
@@ -17,7 +17,6 @@
 package org.retrostore.rpc.api;
 
 import com.google.common.collect.Sets;
-import com.google.gson.Gson;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.retrostore.client.common.ListAppsApiParams;
 import org.retrostore.client.common.proto.ApiResponseApps;
@@ -26,13 +25,17 @@ import org.retrostore.client.common.proto.ListAppsParams;
 import org.retrostore.client.common.proto.MediaType;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.metrics.Histogram;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Response;
 import org.retrostore.resources.ImageServiceWrapper;
 import org.retrostore.rpc.internal.ApiCall;
+import org.retrostore.util.Json;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,6 +45,8 @@ import java.util.logging.Logger;
  */
 public class ListAppsApiCall implements ApiCall {
   private static final Logger LOG = Logger.getLogger("ListAppsApiCall");
+  private static final Histogram sBuildTime = Metrics.timer("retrostore_list_build_seconds",
+      "Time to build the apps of a list response.", "call", "listApps");
   private final AppManagement mAppManagement;
   protected final ApiHelper mApiHelper;
 
@@ -58,7 +63,8 @@ public class ListAppsApiCall implements ApiCall {
   @Override
   public Response call(final RequestData data) {
     ListAppsParams params = getAppIdFromParams(data.getRawBody());
-    return responder -> responder.respondProto(callInternal(params));
+    Optional<ApiHelper.ScreenshotSpec> screenshotSpec = ApiHelper.ScreenshotSpec.fromRequest(data);
+    return responder -> responder.respondProto(callInternal(params, screenshotSpec));
   }
 
   // Works with the old (JSON) and new (PB) parameter API.
@@ -95,7 +101,8 @@ public class ListAppsApiCall implements ApiCall {
     }
   }
 
-  private ApiResponseApps callInternal(ListAppsParams params) {
+  ApiResponseApps callInternal(ListAppsParams params,
+                               Optional<ApiHelper.ScreenshotSpec> screenshotSpec) {
     ApiResponseApps.Builder response = ApiResponseApps.newBuilder();
     List<AppStoreItem> filteredApps = null;
     try {
@@ -104,14 +111,13 @@ public class ListAppsApiCall implements ApiCall {
       return response.setSuccess(false).setMessage(e.getMessage()).build();
     }
 
-    long tPreBuilding = System.currentTimeMillis();
-    List<App.Builder> apps = new ArrayList<>();
-    for (int i = params.getStart(); i < params.getStart() + params.getNum() && i < filteredApps.size(); ++i) {
-      AppStoreItem appStoreItem = filteredApps.get(i);
-      apps.add(mApiHelper.convert(appStoreItem));
-    }
-    LOG.info(String.format("[Perf] Building list took %d ms.", (System
-        .currentTimeMillis() - tPreBuilding)));
+    long startNanos = System.nanoTime();
+    int end = Math.min(params.getStart() + params.getNum(), filteredApps.size());
+    List<AppStoreItem> page = params.getStart() < end
+        ? filteredApps.subList(params.getStart(), end)
+        : new ArrayList<>();
+    List<App.Builder> apps = mApiHelper.convert(page, screenshotSpec);
+    sBuildTime.recordSince(startNanos);
 
     for (App.Builder app : apps) {
       response.addApp(app.build());
@@ -145,7 +151,7 @@ public class ListAppsApiCall implements ApiCall {
     return filterApps(allApps, params);
   }
 
-  private List<AppStoreItem> filterApps(List<AppStoreItem> apps, ListAppsParams params) {
+  List<AppStoreItem> filterApps(List<AppStoreItem> apps, ListAppsParams params) {
     // Get all IDs that match the search query. Keep the set null if no search query was given.
     Set<String> appIdsFromSearch = null;
     if (params.getQuery() != null && !params.getQuery().trim().isEmpty()) {
@@ -169,7 +175,7 @@ public class ListAppsApiCall implements ApiCall {
 
   private ListAppsApiParams parseLegacyParams(String params) {
     try {
-      return (new Gson()).fromJson(params, ListAppsApiParams.class);
+      return Json.fromJson(params, ListAppsApiParams.class);
     } catch (Exception ex) {
       LOG.log(Level.WARNING, "Cannot parse params", ex);
       return null;
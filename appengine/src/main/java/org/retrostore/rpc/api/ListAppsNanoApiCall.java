@@ -22,6 +22,8 @@ import org.retrostore.client.common.proto.AppNano;
 import org.retrostore.client.common.proto.ListAppsParams;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.app.AppStoreItem;
+import org.retrostore.metrics.Histogram;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Response;
 import org.retrostore.resources.ImageServiceWrapper;
@@ -36,6 +38,8 @@ import java.util.logging.Logger;
  */
 public class ListAppsNanoApiCall extends ListAppsApiCall {
   private static final Logger LOG = Logger.getLogger("ListAppsNanoApiCall");
+  private static final Histogram sBuildTime = Metrics.timer("retrostore_list_build_seconds",
+      "Time to build the apps of a list response.", "call", "listAppsNano");
 
   public ListAppsNanoApiCall(AppManagement appManagement, ImageServiceWrapper imageService) {
     super(appManagement, imageService);
@@ -62,7 +66,7 @@ public class ListAppsNanoApiCall extends ListAppsApiCall {
     }
   }
 
-  private ApiResponseAppsNano callInternal(ListAppsParams params) {
+  ApiResponseAppsNano callInternal(ListAppsParams params) {
     ApiResponseAppsNano.Builder response = ApiResponseAppsNano.newBuilder();
     List<AppStoreItem> filteredApps = null;
     try {
@@ -71,14 +75,13 @@ public class ListAppsNanoApiCall extends ListAppsApiCall {
       return response.setSuccess(false).setMessage(e.getMessage()).build();
     }
 
-    long tPreBuilding = System.currentTimeMillis();
-    List<AppNano.Builder> apps = new ArrayList<>();
-    for (int i = params.getStart(); i < params.getStart() + params.getNum() && i < filteredApps.size(); ++i) {
-      AppStoreItem appStoreItem = filteredApps.get(i);
-      apps.add(mApiHelper.convertToNano(appStoreItem));
-    }
-    LOG.info(String.format("[Perf] Building list took %d ms.", (System
-        .currentTimeMillis() - tPreBuilding)));
+    long startNanos = System.nanoTime();
+    int end = Math.min(params.getStart() + params.getNum(), filteredApps.size());
+    List<AppStoreItem> page = params.getStart() < end
+        ? filteredApps.subList(params.getStart(), end)
+        : new ArrayList<>();
+    List<AppNano.Builder> apps = mApiHelper.convertToNano(page);
+    sBuildTime.recordSince(startNanos);
 
     for (AppNano.Builder app : apps) {
       response.addApp(app.build());
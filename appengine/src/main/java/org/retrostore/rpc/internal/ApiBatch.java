@@ -0,0 +1,286 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.rpc.internal;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.retrostore.metrics.Metrics;
+import org.retrostore.request.CapturingResponse;
+import org.retrostore.request.RequestData;
+import org.retrostore.request.Responder;
+import org.retrostore.util.ParallelTasks;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes several API calls sent in a single request, to save clients the round trips.
+ *
+ * <p>The request body is a sequence of calls, each being the length of the method name (2 bytes),
+ * the UTF-8 method name, the length of the parameters (4 bytes) and the parameters, which are the
+ * same as the body of a single call to that method. The response contains the result of each call
+ * in the same order, as the status code (2 bytes), the length of the result (4 bytes) and the
+ * result. All numbers are big-endian.
+ *
+ * <p>Calls without side effects run concurrently. A call that changes data waits for all calls
+ * before it and runs before any calls after it, so clients can rely on the order.
+ */
+class ApiBatch {
+  private static final Logger LOG = Logger.getLogger("ApiBatch");
+  static final String METHOD = "batch";
+
+  private static final int MAX_CALLS = 32;
+  private static final int MAX_THREADS = 8;
+  private static final int MAX_PARAMS_SIZE = 1 << 20;
+  /** Not part of the Servlet 3.1 constants. */
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  /** These calls change data, so they are not run concurrently with other calls. */
+  private static final Set<String> MUTATING_CALLS = ImmutableSet.of("uploadState");
+
+  private final Map<String, ApiCall> mApiCalls;
+  private final ApiRateLimiter mRateLimiter;
+
+  ApiBatch(Map<String, ApiCall> apiCalls, ApiRateLimiter rateLimiter) {
+    mApiCalls = apiCalls;
+    mRateLimiter = rateLimiter;
+  }
+
+  /** A single call within the batch. */
+  private static class Entry {
+    final String method;
+    final byte[] params;
+
+    Entry(String method, byte[] params) {
+      this.method = method;
+      this.params = params;
+    }
+  }
+
+  /** The outcome of a single call. */
+  private static class Result {
+    final int status;
+    final byte[] content;
+
+    Result(int status, byte[] content) {
+      this.status = status;
+      this.content = content;
+    }
+  }
+
+  /**
+   * The request of a single call. Its body is the parameters of the call, everything else is taken
+   * from the batch request.
+   */
+  private static class EntryRequestData implements RequestData {
+    private final RequestData mBatch;
+    private final Entry mEntry;
+
+    EntryRequestData(RequestData batch, Entry entry) {
+      mBatch = batch;
+      mEntry = entry;
+    }
+
+    @Override
+    public Type getType() {
+      return Type.POST;
+    }
+
+    @Override
+    public String getUrl() {
+      return "/api/" + mEntry.method;
+    }
+
+    @Override
+    public String getRootUrl() {
+      return mBatch.getRootUrl();
+    }
+
+    @Override
+    public Optional<Integer> getInt(String name) {
+      return mBatch.getInt(name);
+    }
+
+    @Override
+    public Optional<Long> getLong(String name) {
+      return mBatch.getLong(name);
+    }
+
+    @Override
+    public Optional<String> getString(String name) {
+      return mBatch.getString(name);
+    }
+
+    @Override
+    public String getBody() {
+      return new String(mEntry.params, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getRawBody() {
+      return mEntry.params;
+    }
+
+    @Override
+    public String getCookieRaw() {
+      return mBatch.getCookieRaw();
+    }
+
+    @Override
+    public Optional<String> getHeader(String name) {
+      return mBatch.getHeader(name);
+    }
+
+    @Override
+    public String getRemoteAddr() {
+      return mBatch.getRemoteAddr();
+    }
+
+    @Override
+    public List<UploadFile> getFiles() {
+      return ImmutableList.of();
+    }
+
+    @Override
+    public Map<String, List<String>> getBlobKeys() {
+      return ImmutableMap.of();
+    }
+  }
+
+  /** Executes all calls of the batch request and responds with their results. */
+  void serve(RequestData requestData, Responder responder) {
+    if (requestData.getType() != RequestData.Type.POST) {
+      responder.respondBadRequest("Batch requests must be sent as POST.");
+      return;
+    }
+    Optional<List<Entry>> entries = parse(requestData.getRawBody());
+    if (!entries.isPresent()) {
+      responder.respondBadRequest("Cannot parse batch request.");
+      return;
+    }
+    LOG.info(String.format("Batch with %d calls.", entries.get().size()));
+
+    List<Result> results = new ArrayList<>(entries.get().size());
+    List<Entry> concurrent = new ArrayList<>();
+    for (Entry entry : entries.get()) {
+      if (MUTATING_CALLS.contains(entry.method)) {
+        results.addAll(execute(concurrent, requestData, responder));
+        concurrent.clear();
+        results.add(execute(entry, requestData, responder));
+      } else {
+        concurrent.add(entry);
+      }
+    }
+    results.addAll(execute(concurrent, requestData, responder));
+    responder.respond(serialize(results), Responder.ContentType.BYTES);
+  }
+
+  private List<Result> execute(List<Entry> entries, RequestData requestData,
+                               Responder responder) {
+    if (entries.size() == 1) {
+      List<Result> results = new ArrayList<>();
+      results.add(execute(entries.get(0), requestData, responder));
+      return results;
+    }
+    return ParallelTasks.map(
+        entries, MAX_THREADS, entry -> execute(entry, requestData, responder));
+  }
+
+  private Result execute(Entry entry, RequestData requestData, Responder responder) {
+    ApiCall apiCall = mApiCalls.get(entry.method);
+    if (apiCall == null) {
+      return new Result(HttpServletResponse.SC_BAD_REQUEST, new byte[0]);
+    }
+    long startNanos = System.nanoTime();
+    if (mRateLimiter.tryAcquire(requestData.getRemoteAddr(), entry.method) > 0) {
+      Metrics.API_CALLS.record(entry.method, startNanos, 0, SC_TOO_MANY_REQUESTS);
+      return new Result(SC_TOO_MANY_REQUESTS, new byte[0]);
+    }
+    Result result;
+    try {
+      CapturingResponse response = responder.capture();
+      apiCall.call(new EntryRequestData(requestData, entry)).respond(response.getResponder());
+      result = new Result(response.getStatus(), response.getContent());
+    } catch (RuntimeException ex) {
+      LOG.log(Level.SEVERE, String.format("Batched call '%s' failed.", entry.method), ex);
+      result = new Result(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, new byte[0]);
+    }
+    Metrics.API_CALLS.record(entry.method, startNanos, result.content.length, result.status);
+    return result;
+  }
+
+  private static Optional<List<Entry>> parse(byte[] body) {
+    if (body == null) {
+      return Optional.empty();
+    }
+    List<Entry> entries = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+      while (in.available() > 0) {
+        if (entries.size() == MAX_CALLS) {
+          LOG.warning("Too many calls in batch.");
+          return Optional.empty();
+        }
+        byte[] method = new byte[in.readUnsignedShort()];
+        in.readFully(method);
+        int paramsSize = in.readInt();
+        if (paramsSize < 0 || paramsSize > MAX_PARAMS_SIZE) {
+          LOG.warning("Invalid parameter size in batch: " + paramsSize);
+          return Optional.empty();
+        }
+        byte[] params = new byte[paramsSize];
+        in.readFully(params);
+        String methodName = new String(method, StandardCharsets.UTF_8);
+        if (METHOD.equals(methodName)) {
+          LOG.warning("Batches cannot be nested.");
+          return Optional.empty();
+        }
+        entries.add(new Entry(methodName, params));
+      }
+    } catch (IOException ex) {
+      LOG.warning("Truncated batch request: " + ex.getMessage());
+      return Optional.empty();
+    }
+    return Optional.of(entries);
+  }
+
+  private static byte[] serialize(List<Result> results) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      for (Result result : results) {
+        out.writeShort(result.status);
+        out.writeInt(result.content.length);
+        out.write(result.content);
+      }
+    } catch (IOException ex) {
+      // Writing to memory does not throw.
+      throw new IllegalStateException(ex);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.rpc.internal;
+
+import com.google.common.collect.ImmutableMap;
+import org.retrostore.resources.MemcacheWrapper;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token bucket rate limiter for the public API, keyed by client.
+ *
+ * <p>Each client has a bucket holding up to 'burst' tokens, which refills at 'rate' tokens per
+ * second. Every API call takes a number of tokens depending on how expensive it is to serve. The
+ * state of a bucket is a single timestamp (the time at which it will be full again), which is
+ * updated with a compare-and-set, so no locks are taken. The buckets live in a concurrent map,
+ * which spreads contention across its internal stripes.
+ *
+ * <p>Buckets are per instance. Optionally, a coarse per-minute counter in memcache is kept in
+ * addition, to also limit clients that spread their requests over many instances.
+ */
+public class ApiRateLimiter {
+  private static final Logger LOG = Logger.getLogger("ApiRateLimiter");
+
+  private static final String PROP_RATE = "retrostore.api.ratelimit.rate";
+  private static final String PROP_BURST = "retrostore.api.ratelimit.burst";
+  private static final String PROP_GLOBAL = "retrostore.api.ratelimit.global";
+  private static final double DEFAULT_RATE = 20;
+  private static final int DEFAULT_BURST = 200;
+
+  /** The cost of each API call in tokens. Calls not listed here cost a single token. */
+  private static final Map<String, Integer> CALL_COSTS = ImmutableMap.<String, Integer>builder()
+      .put("listAppsNano", 1)
+      .put("getApp", 2)
+      .put("fetchMediaImageRefs", 2)
+      .put("downloadStateMemoryRegion", 2)
+      .put("listApps", 5)
+      .put("fetchMediaImageRegion", 5)
+      .put("downloadState", 5)
+      .put("fetchMediaImages", 10)
+      .put("uploadState", 10)
+      .build();
+
+  /** When more clients are tracked, buckets that are full again get dropped. */
+  private static final int MAX_TRACKED_CLIENTS = 10000;
+  private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final String GLOBAL_KEY_PREFIX = "api-rate-";
+
+  private final boolean mEnabled;
+  private final long mNanosPerToken;
+  private final long mBurstNanos;
+  private final long mGlobalLimitPerMinute;
+  private final Optional<MemcacheWrapper> mGlobalCounters;
+  private final Map<String, AtomicLong> mBuckets = new ConcurrentHashMap<>();
+  private final AtomicLong mLastCleanupNanos = new AtomicLong(System.nanoTime());
+
+  /**
+   * @param tokensPerSecond how many tokens are added to each bucket per second. Zero or less
+   *                        disables rate limiting.
+   * @param burst           the maximum number of tokens in a bucket.
+   * @param globalCounters  if present, memcache is used to also limit clients across instances.
+   */
+  public ApiRateLimiter(
+      double tokensPerSecond, int burst, Optional<MemcacheWrapper> globalCounters) {
+    mEnabled = tokensPerSecond > 0;
+    checkArgument(!mEnabled || burst >= maxCost(), "Burst must allow for the most expensive call.");
+    mNanosPerToken = mEnabled ? (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond) : 0;
+    mBurstNanos = mNanosPerToken * burst;
+    mGlobalLimitPerMinute = (long) (tokensPerSecond * 60) + burst;
+    mGlobalCounters = globalCounters;
+  }
+
+  /**
+   * Creates a limiter configured through system properties (see appengine-web.xml), or with the
+   * defaults if they are not set.
+   */
+  public static ApiRateLimiter fromSystemProperties(MemcacheWrapper memcache) {
+    double rate = DEFAULT_RATE;
+    int burst = DEFAULT_BURST;
+    try {
+      rate = Double.parseDouble(System.getProperty(PROP_RATE, String.valueOf(DEFAULT_RATE)));
+      burst = Integer.parseInt(System.getProperty(PROP_BURST, String.valueOf(DEFAULT_BURST)));
+    } catch (NumberFormatException ex) {
+      LOG.warning("Invalid rate limit configuration, using defaults: " + ex.getMessage());
+    }
+    if (burst < maxCost()) {
+      LOG.warning(String.format("Rate limit burst %d does not allow for the most expensive " +
+          "call, using %d.", burst, maxCost()));
+      burst = maxCost();
+    }
+    boolean global = Boolean.parseBoolean(System.getProperty(PROP_GLOBAL, "false"));
+    LOG.info(String.format("API rate limit: %.1f tokens/s, burst %d, global: %b",
+        rate, burst, global));
+    return new ApiRateLimiter(rate, burst, global ? Optional.of(memcache) : Optional.empty());
+  }
+
+  /**
+   * Takes the tokens for the given API call from the client's bucket.
+   *
+   * @param client   identifies the client, e.g. its IP address.
+   * @param callName the name of the API call the client wants to make.
+   * @return Zero, if the call is permitted. Otherwise the number of seconds after which the client
+   * should try again.
+   */
+  public long tryAcquire(String client, String callName) {
+    if (!mEnabled) {
+      return 0;
+    }
+    int cost = CALL_COSTS.getOrDefault(callName, 1);
+    long costNanos = cost * mNanosPerToken;
+    maybeCleanup();
+
+    AtomicLong fullAt = mBuckets.computeIfAbsent(client, c -> new AtomicLong(Long.MIN_VALUE));
+    while (true) {
+      long now = System.nanoTime();
+      long current = fullAt.get();
+      long next = Math.max(current, now) + costNanos;
+      long overdraft = next - now - mBurstNanos;
+      if (overdraft > 0) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(overdraft + mNanosPerToken));
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        break;
+      }
+    }
+    return acquireGlobal(client, cost);
+  }
+
+  private long acquireGlobal(String client, int cost) {
+    if (!mGlobalCounters.isPresent()) {
+      return 0;
+    }
+    long nowMillis = System.currentTimeMillis();
+    long minute = TimeUnit.MILLISECONDS.toMinutes(nowMillis);
+    String key = GLOBAL_KEY_PREFIX + client + "-" + minute;
+    Optional<Long> count = mGlobalCounters.get().increment(key, cost, 0);
+    // If memcache is unavailable, the local limit has to do.
+    if (count.isPresent() && count.get() > mGlobalLimitPerMinute) {
+      return Math.max(1, TimeUnit.MINUTES.toSeconds(minute + 1) -
+          TimeUnit.MILLISECONDS.toSeconds(nowMillis));
+    }
+    return 0;
+  }
+
+  /** Drops buckets that are full again, which is the same state as a fresh bucket. */
+  private void maybeCleanup() {
+    if (mBuckets.size() <= MAX_TRACKED_CLIENTS) {
+      return;
+    }
+    long now = System.nanoTime();
+    long last = mLastCleanupNanos.get();
+    if (now - last < CLEANUP_INTERVAL_NANOS || !mLastCleanupNanos.compareAndSet(last, now)) {
+      return;
+    }
+    mBuckets.values().removeIf(fullAt -> fullAt.get() <= now);
+    LOG.info(String.format("Rate limiter now tracks %d clients.", mBuckets.size()));
+  }
+
+  private static int maxCost() {
+    int max = 1;
+    for (int cost : CALL_COSTS.values()) {
+      max = Math.max(max, cost);
+    }
+    return max;
+  }
+}
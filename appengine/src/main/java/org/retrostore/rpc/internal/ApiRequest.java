@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableMap;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.user.UserService;
 import org.retrostore.data.xray.StateManagement;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.request.Request;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Responder;
@@ -39,6 +40,7 @@ import org.retrostore.rpc.api.UploadStateApiCall;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 /**
@@ -48,10 +50,19 @@ public class ApiRequest implements Request {
   private static final Logger LOG = Logger.getLogger("ApiRequest");
 
   private static final String API_PREFIX = "/api";
+  private static final long DEFAULT_DEADLINE_MILLIS = 15000;
+  /** Calls that may take longer than the default deadline. */
+  private static final Map<String, Long> DEADLINES_MILLIS = ImmutableMap.of(
+      ApiBatch.METHOD, 60000L,
+      "fetchMediaImages", 30000L,
+      "uploadState", 30000L);
   private final Map<String, ApiCall> mApiCalls;
+  private final ApiRateLimiter mRateLimiter;
+  private final ApiBatch mBatch;
 
   public ApiRequest(AppManagement appManagement, ImageServiceWrapper imageService,
-                    StateManagement stateManagement) {
+                    StateManagement stateManagement, ApiRateLimiter rateLimiter) {
+    mRateLimiter = rateLimiter;
     List<ApiCall> calls = ImmutableList.of(
         new GetAppApiCall(appManagement, imageService),
         new ListAppsApiCall(appManagement, imageService),
@@ -71,9 +82,21 @@ public class ApiRequest implements Request {
       callsMapped.put(call.getName(), call);
     }
     mApiCalls = ImmutableMap.copyOf(callsMapped);
+    mBatch = new ApiBatch(mApiCalls, rateLimiter);
   }
 
 
+  @Override
+  public Optional<Long> getAsyncDeadlineMillis(RequestData requestData) {
+    String url = requestData.getUrl();
+    if (!url.startsWith(API_PREFIX)) {
+      return Optional.empty();
+    }
+    String[] urlParts = url.substring(1).split("/");
+    String method = urlParts.length < 2 ? "" : urlParts[1];
+    return Optional.of(DEADLINES_MILLIS.getOrDefault(method, DEFAULT_DEADLINE_MILLIS));
+  }
+
   @Override
   public boolean serveUrl(RequestData requestData, Responder responder, UserService userService) {
     String url = requestData.getUrl();
@@ -91,11 +114,25 @@ public class ApiRequest implements Request {
 
     if (Strings.isNullOrEmpty(method)) {
       responder.respondBadRequest("No method name specified.");
+    } else if (ApiBatch.METHOD.equals(method)) {
+      // Each call of the batch is rate limited and recorded on its own.
+      mBatch.serve(requestData, responder);
     } else if (!mApiCalls.containsKey(method)) {
       responder.respondBadRequest(String.format("RPC method '%s' not found.", method));
     } else {
+      long startNanos = System.nanoTime();
+      String client = requestData.getRemoteAddr();
+      long retryAfterSeconds = mRateLimiter.tryAcquire(client, method);
+      if (retryAfterSeconds > 0) {
+        LOG.warning(String.format("Rate limiting '%s' for '%s'.", client, method));
+        responder.respondTooManyRequests(retryAfterSeconds);
+        Metrics.API_CALLS.record(method, startNanos, 0, responder.getStatus());
+        return true;
+      }
       ApiCall apiCall = mApiCalls.get(method);
       apiCall.call(requestData).respond(responder);
+      Metrics.API_CALLS.record(
+          method, startNanos, responder.getBytesWritten(), responder.getStatus());
     }
     return true;
   }
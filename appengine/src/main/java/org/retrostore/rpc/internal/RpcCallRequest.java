@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import org.retrostore.data.app.AppManagement;
 import org.retrostore.data.user.UserManagement;
 import org.retrostore.data.user.UserService;
+import org.retrostore.metrics.Metrics;
 import org.retrostore.request.Request;
 import org.retrostore.request.RequestData;
 import org.retrostore.request.Responder;
@@ -54,6 +55,7 @@ public class RpcCallRequest implements Request {
 
   private static final String RPC_PREFIX = "/rpc";
   private static final String RPC_METHOD_PARAM = "m";
+  private static final long DEADLINE_MILLIS = 30000;
 
   private final Map<String, RpcCall<RpcParameters>> mRpcCalls;
 
@@ -88,6 +90,12 @@ public class RpcCallRequest implements Request {
     mRpcCalls = ImmutableMap.copyOf(callsMapped);
   }
 
+  @Override
+  public Optional<Long> getAsyncDeadlineMillis(RequestData requestData) {
+    return requestData.getUrl().startsWith(RPC_PREFIX)
+        ? Optional.of(DEADLINE_MILLIS) : Optional.empty();
+  }
+
   @Override
   public boolean serveUrl(RequestData requestData, Responder responder,
                           UserService accountTypeProvider) {
@@ -106,8 +114,11 @@ public class RpcCallRequest implements Request {
       if (!rpcCall.isPermitted(accountTypeProvider.getForCurrentUser())) {
         responder.respondBadRequest("Current user not permitted.");
       } else {
+        long startNanos = System.nanoTime();
         RpcParameters params = new RpcParametersImpl(requestData);
         rpcCall.call(params, responder);
+        Metrics.RPC_CALLS.record(
+            method.get(), startNanos, responder.getBytesWritten(), responder.getStatus());
       }
     }
     return true;
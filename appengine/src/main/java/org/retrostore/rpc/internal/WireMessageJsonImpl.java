@@ -16,7 +16,7 @@
 
 package org.retrostore.rpc.internal;
 
-import com.google.gson.Gson;
+import org.retrostore.util.Json;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -36,7 +36,7 @@ public class WireMessageJsonImpl implements WireMessage {
 
   @Override
   public byte[] toWireFormat(boolean gzip) throws IOException {
-    byte[] serialized = (new Gson()).toJson(mObject).getBytes();
+    byte[] serialized = Json.toJsonBytes(mObject);
     if (gzip) {
       ByteArrayOutputStream bos = new ByteArrayOutputStream();
       GZIPOutputStream gos = new GZIPOutputStream(bos);
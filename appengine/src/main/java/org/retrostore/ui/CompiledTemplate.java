@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.ui;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template that has been parsed into literal text and the slots between them.
+ *
+ * <p>Parsing happens once, after which rendering is a single pass over the segments. Instances
+ * are immutable and can be shared between threads.
+ */
+class CompiledTemplate {
+  private static final String SLOT_START = "<!--RS ";
+  private static final String SLOT_END = " RS-->";
+
+  /** The literal text. There is always one more literal than there are slots. */
+  private final List<String> mLiterals;
+  /** The keys of the slots, each following the literal with the same index. */
+  private final List<String> mSlots;
+  private final int mLiteralLength;
+
+  private CompiledTemplate(List<String> literals, List<String> slots) {
+    mLiterals = ImmutableList.copyOf(literals);
+    mSlots = ImmutableList.copyOf(slots);
+    int length = 0;
+    for (String literal : literals) {
+      length += literal.length();
+    }
+    mLiteralLength = length;
+  }
+
+  /** Parses the given template content. Slots have the form {@code <!--RS key RS-->}. */
+  static CompiledTemplate compile(String content) {
+    List<String> literals = new ArrayList<>();
+    List<String> slots = new ArrayList<>();
+    int pos = 0;
+    while (true) {
+      int start = content.indexOf(SLOT_START, pos);
+      int end = start < 0 ? -1 : content.indexOf(SLOT_END, start + SLOT_START.length());
+      if (end < 0) {
+        break;
+      }
+      literals.add(content.substring(pos, start));
+      slots.add(content.substring(start + SLOT_START.length(), end));
+      pos = end + SLOT_END.length();
+    }
+    literals.add(content.substring(pos));
+    return new CompiledTemplate(literals, slots);
+  }
+
+  /**
+   * Writes the template to the given output, with the slots filled in. Slots without a value are
+   * left in as they are.
+   */
+  void renderTo(Appendable out, Map<String, String> values) throws IOException {
+    for (int i = 0; i < mSlots.size(); ++i) {
+      out.append(mLiterals.get(i));
+      String key = mSlots.get(i);
+      String value = values.get(key);
+      if (value != null) {
+        out.append(value);
+      } else {
+        out.append(SLOT_START).append(key).append(SLOT_END);
+      }
+    }
+    out.append(mLiterals.get(mSlots.size()));
+  }
+
+  /** Renders the template into a string. */
+  String render(Map<String, String> values) {
+    int valuesLength = 0;
+    for (String value : values.values()) {
+      valuesLength += value.length();
+    }
+    StringBuilder builder = new StringBuilder(mLiteralLength + valuesLength);
+    try {
+      renderTo(builder, values);
+    } catch (IOException ex) {
+      // Appending to a StringBuilder does not throw.
+      throw new IllegalStateException(ex);
+    }
+    return builder.toString();
+  }
+}
@@ -19,25 +19,42 @@ package org.retrostore.ui;
 import com.google.common.base.Charsets;
 import com.google.common.html.HtmlEscapers;
 import com.google.common.io.CharStreams;
+import org.retrostore.resources.ResourceLoader;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A simple string/replace based templating mechanism.
+ * A simple templating mechanism, replacing keys of the form {@code <!--RS key RS-->}.
+ *
+ * <p>Templates are parsed once and cached by their file name, so only the values are filled in
+ * on every request.
  */
 public class Template {
-  private static final String KEY_FORMAT = "<!--RS %s RS-->";
-  private final String content;
+  /** Templates loaded from files, by file name. */
+  private static final Map<String, CompiledTemplate> sFileTemplates = new ConcurrentHashMap<>();
+  /** Templates loaded through a resource loader, by file name. */
+  private static final Map<String, ResourceTemplate> sResourceTemplates =
+      new ConcurrentHashMap<>();
+
+  private final CompiledTemplate compiled;
   private final Map<String, String> values = new HashMap<>();
 
   public Template(String content) {
-    this.content = content;
+    this(CompiledTemplate.compile(content));
+  }
+
+  private Template(CompiledTemplate compiled) {
+    this.compiled = compiled;
   }
 
   public static Template empty() {
@@ -45,9 +62,31 @@ public class Template {
   }
 
   public static Template fromFile(String filename) throws IOException {
-    // TODO: need to cache file contents.
-    InputStream fileStream = new FileInputStream(new File(filename));
-    return new Template(CharStreams.toString(new InputStreamReader(fileStream, Charsets.UTF_8)));
+    try {
+      return new Template(sFileTemplates.computeIfAbsent(filename, Template::compileFile));
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Loads a template through the given resource loader.
+   *
+   * @return The template, if the resource exists.
+   */
+  public static Optional<Template> fromResource(ResourceLoader loader, String filename) {
+    Optional<byte[]> content = loader.load(filename);
+    if (!content.isPresent()) {
+      return Optional.empty();
+    }
+    // Resource loaders cache the content, so the template only needs to be parsed again if the
+    // loader returned different content, e.g. because the file was reloaded for debugging.
+    ResourceTemplate cached = sResourceTemplates.get(filename);
+    if (cached == null || cached.source != content.get()) {
+      cached = new ResourceTemplate(content.get());
+      sResourceTemplates.put(filename, cached);
+    }
+    return Optional.of(new Template(cached.compiled));
   }
 
   public Template with(String key, String value) {
@@ -68,10 +107,31 @@ public class Template {
   }
 
   public String render() {
-    String result = content;
-    for (Map.Entry<String, String> entry : values.entrySet()) {
-      result = result.replace(String.format(KEY_FORMAT, entry.getKey()), entry.getValue());
+    return compiled.render(values);
+  }
+
+  /** Renders the template directly to the given writer. */
+  public void renderTo(Writer writer) throws IOException {
+    compiled.renderTo(writer, values);
+  }
+
+  private static CompiledTemplate compileFile(String filename) {
+    try (InputStream fileStream = new FileInputStream(new File(filename))) {
+      return CompiledTemplate.compile(
+          CharStreams.toString(new InputStreamReader(fileStream, Charsets.UTF_8)));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /** A parsed template, together with the content it was parsed from. */
+  private static class ResourceTemplate {
+    final byte[] source;
+    final CompiledTemplate compiled;
+
+    ResourceTemplate(byte[] source) {
+      this.source = source;
+      this.compiled = CompiledTemplate.compile(new String(source, Charsets.UTF_8));
     }
-    return result;
   }
-}
\ No newline at end of file
+}
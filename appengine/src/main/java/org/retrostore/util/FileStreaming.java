@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams files to an output without reading them into the heap as a whole.
+ */
+public final class FileStreaming {
+  private FileStreaming() {}
+
+  /**
+   * Writes the whole file to the given output. The file is transferred by its channel in chunks.
+   * Since the output is a plain stream, each chunk is still copied through a small heap buffer,
+   * but never more than that. The output is not closed.
+   *
+   * @return The number of bytes written.
+   */
+  public static long transfer(Path file, OutputStream out) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      WritableByteChannel target = Channels.newChannel(out);
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        long transferred = channel.transferTo(position, size - position, target);
+        if (transferred <= 0) {
+          // The file got shorter while it was being sent.
+          break;
+        }
+        position += transferred;
+      }
+      return position;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts objects to and from JSON, using a single Gson instance for the whole app.
+ *
+ * <p>Gson inspects a class through reflection the first time it sees it and keeps the resulting
+ * type adapter for as long as the instance lives. Sharing the instance, which is thread-safe,
+ * means that this happens once per class instead of on every call. Types that are sent often are
+ * prepared up front, so that the first request does not pay for it either.
+ */
+public final class Json {
+  private static final Gson sGson = new Gson();
+
+  private Json() {}
+
+  /** Creates the type adapters of the given types now, rather than when they are first used. */
+  public static void prepare(Type... types) {
+    for (Type type : types) {
+      sGson.getAdapter(TypeToken.get(type));
+    }
+  }
+
+  /** Returns the JSON for the object. */
+  public static String toJson(Object object) {
+    return sGson.toJson(object);
+  }
+
+  /** Returns the JSON for the object, encoded as UTF-8. */
+  public static byte[] toJsonBytes(Object object) {
+    return sGson.toJson(object).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes the JSON for the object to the stream as UTF-8, without creating it in memory first.
+   * The stream is closed afterwards.
+   */
+  public static void write(Object object, OutputStream out) throws IOException {
+    try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      sGson.toJson(object, writer);
+    } catch (JsonIOException ex) {
+      // Gson wraps the errors of the writer, e.g. when the client went away.
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Parses the JSON into an object of the given class.
+   *
+   * @throws JsonSyntaxException if the JSON is invalid or does not match the class.
+   */
+  public static <T> T fromJson(String json, Class<T> clazz) {
+    return sGson.fromJson(json, clazz);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.util;
+
+import com.google.appengine.api.ThreadManager;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.util.Closeable;
+import org.retrostore.metrics.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Runs work for a single request concurrently.
+ *
+ * <p>Tasks run on request threads created through the {@link ThreadManager}, so they can use the
+ * App Engine APIs just like the request thread itself. Every task gets its own Objectify context,
+ * as the session cache of the request is not thread-safe. Backend calls of the tasks are added to
+ * the trace of the request.
+ */
+public final class ParallelTasks {
+  private ParallelTasks() {}
+
+  /**
+   * Applies the function to all inputs, using up to the given number of threads, and waits for
+   * all of them to finish.
+   *
+   * @param inputs     the inputs to process.
+   * @param maxThreads the maximum number of inputs that are processed at the same time.
+   * @param function   the function to apply. Should handle its own errors.
+   * @return The results, in the same order as the inputs.
+   * @throws IllegalStateException if the function threw or the request thread was interrupted.
+   */
+  public static <I, O> List<O> map(List<I> inputs, int maxThreads, Function<I, O> function) {
+    if (inputs.isEmpty()) {
+      return new ArrayList<>();
+    }
+    int numThreads = Math.max(1, Math.min(maxThreads, inputs.size()));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(numThreads, ThreadManager.currentRequestThreadFactory());
+    try {
+      Trace.Context trace = Trace.capture();
+      List<Future<O>> futures = new ArrayList<>(inputs.size());
+      for (I input : inputs) {
+        futures.add(executor.submit(() -> {
+          try (Closeable ignored = ObjectifyService.begin(); Trace.Scope scope = trace.attach()) {
+            return function.apply(input);
+          }
+        }));
+      }
+      List<O> results = new ArrayList<>(inputs.size());
+      for (Future<O> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Parallel task failed.", ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for parallel tasks.", ex);
+    } finally {
+      // Request threads may not outlive the request.
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2026, Sascha Häberling
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.retrostore.data.card;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/** Round-trip tests for {@link FirmwareDelta}. */
+public class FirmwareDeltaTest {
+  private static final int IMAGE_SIZE = 64 * 1024;
+
+  private final Random mRandom = new Random(42);
+
+  @Test
+  public void identicalImages() {
+    byte[] image = randomBytes(IMAGE_SIZE);
+    byte[] delta = assertRoundTrip(image, image.clone());
+    // A single COPY of everything.
+    assertTrue("Delta has " + delta.length + " bytes", delta.length < 64);
+  }
+
+  @Test
+  public void totallyDifferentImages() {
+    byte[] delta = assertRoundTrip(randomBytes(IMAGE_SIZE), randomBytes(IMAGE_SIZE));
+    // Nothing to copy, so the delta carries the whole target.
+    assertTrue(delta.length > IMAGE_SIZE);
+  }
+
+  @Test
+  public void emptyImages() {
+    assertRoundTrip(new byte[0], new byte[0]);
+    assertRoundTrip(new byte[0], randomBytes(100));
+    assertRoundTrip(randomBytes(100), new byte[0]);
+  }
+
+  @Test
+  public void imagesShorterThanABlock() {
+    assertRoundTrip(randomBytes(5), randomBytes(7));
+    byte[] image = randomBytes(15);
+    assertRoundTrip(image, image.clone());
+  }
+
+  @Test
+  public void smallChanges() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    byte[] target = source.clone();
+    for (int i = 0; i < 10; ++i) {
+      target[mRandom.nextInt(target.length)] ^= 0x5A;
+    }
+    byte[] delta = assertRoundTrip(source, target);
+    assertTrue("Delta has " + delta.length + " bytes", delta.length < IMAGE_SIZE / 10);
+  }
+
+  @Test
+  public void targetLonger() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    byte[] appended = concat(source, randomBytes(1000));
+    assertRoundTrip(source, appended);
+    byte[] prepended = concat(randomBytes(1000), source);
+    assertRoundTrip(source, prepended);
+  }
+
+  @Test
+  public void targetShorter() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    assertRoundTrip(source, Arrays.copyOf(source, IMAGE_SIZE - 1000));
+    assertRoundTrip(source, Arrays.copyOfRange(source, 1000, IMAGE_SIZE));
+  }
+
+  @Test
+  public void insertionShiftsTheRest() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    byte[] target = concat(Arrays.copyOf(source, IMAGE_SIZE / 2), randomBytes(3),
+        Arrays.copyOfRange(source, IMAGE_SIZE / 2, IMAGE_SIZE));
+    byte[] delta = assertRoundTrip(source, target);
+    assertTrue("Delta has " + delta.length + " bytes", delta.length < 100);
+  }
+
+  @Test
+  public void repetitiveImages() {
+    byte[] source = new byte[IMAGE_SIZE];
+    byte[] target = new byte[IMAGE_SIZE + 100];
+    Arrays.fill(target, IMAGE_SIZE / 2, IMAGE_SIZE / 2 + 100, (byte) 0xFF);
+    assertRoundTrip(source, target);
+  }
+
+  @Test
+  public void rejectsDeltaForOtherSource() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    byte[] target = source.clone();
+    target[100] ^= 1;
+    byte[] delta = FirmwareDelta.create(source, target);
+    byte[] otherSource = source.clone();
+    otherSource[IMAGE_SIZE / 2] ^= 1;
+    assertThrows(IllegalArgumentException.class, () -> FirmwareDelta.apply(otherSource, delta));
+    assertThrows(IllegalArgumentException.class,
+        () -> FirmwareDelta.apply(Arrays.copyOf(source, 100), delta));
+  }
+
+  @Test
+  public void rejectsTruncatedDeltas() {
+    byte[] source = randomBytes(IMAGE_SIZE);
+    byte[] target = source.clone();
+    target[IMAGE_SIZE / 2] ^= 1;
+    byte[] delta = FirmwareDelta.create(source, target);
+    for (int length = 0; length < delta.length; ++length) {
+      byte[] truncated = Arrays.copyOf(delta, length);
+      assertThrows("Truncated to " + length, IllegalArgumentException.class,
+          () -> FirmwareDelta.apply(source, truncated));
+    }
+  }
+
+  @Test
+  public void rejectsCorruptDeltas() {
+    byte[] source = randomBytes(4096);
+    byte[] target = concat(Arrays.copyOf(source, 2048), randomBytes(50),
+        Arrays.copyOfRange(source, 2048, 4096));
+    byte[] delta = FirmwareDelta.create(source, target);
+    for (int i = 0; i < delta.length; ++i) {
+      byte[] corrupt = delta.clone();
+      corrupt[i] ^= 0xFF;
+      assertThrows("Corrupted at " + i, IllegalArgumentException.class,
+          () -> FirmwareDelta.apply(source, corrupt));
+    }
+  }
+
+  @Test
+  public void rejectsTrailingData() {
+    byte[] source = randomBytes(1000);
+    byte[] delta = FirmwareDelta.create(source, source.clone());
+    assertThrows(IllegalArgumentException.class,
+        () -> FirmwareDelta.apply(source, concat(delta, new byte[]{0x02, 0, 0, 0, 1, 7})));
+  }
+
+  @Test
+  public void rejectsTooLargeTargets() {
+    byte[] delta = FirmwareDelta.create(new byte[0], new byte[0]);
+    // Claim a target of 2 GB.
+    delta[5] = 0x7F;
+    assertThrows(IllegalArgumentException.class, () -> FirmwareDelta.apply(new byte[0], delta));
+  }
+
+  /** Checks that the delta reproduces the target, and returns it. */
+  private static byte[] assertRoundTrip(byte[] source, byte[] target) {
+    byte[] delta = FirmwareDelta.create(source, target);
+    assertArrayEquals(target, FirmwareDelta.apply(source, delta));
+    return delta;
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    mRandom.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    int length = 0;
+    for (byte[] array : arrays) {
+      length += array.length;
+    }
+    byte[] result = new byte[length];
+    int pos = 0;
+    for (byte[] array : arrays) {
+      System.arraycopy(array, 0, result, pos, array.length);
+      pos += array.length;
+    }
+    return result;
+  }
+}